@@ -0,0 +1,3 @@
+# OkHttp is an optional dependency, only required by `Http2Transport`.
+-dontwarn okhttp3.**
+-dontwarn okio.**
@@ -2,15 +2,15 @@ package com.snoopyo.search.saas;
 
 import android.support.annotation.NonNull;
 
-import org.json.JSONObject;
-
 /**
- * Encapsulates the two possible outcomes of an API request: either a JSON object (success), or an error (failure).
+ * Encapsulates the two possible outcomes of an API request: either some content (success), or an error (failure).
  * One and only one is guaranteed to be non-null.
+ *
+ * @param <T> Type of the content; usually a JSON object.
  */
-class APIResult {
+class APIResult<T> {
     /** The content returned (in case of success). */
-    public final JSONObject content;
+    public final T content;
 
     /** The error encountered (in case of failure). */
     public final SnoopyoException error;
@@ -20,7 +20,7 @@ class APIResult {
      *
      * @param content The content returned.
      */
-    public APIResult(@NonNull JSONObject content) {
+    public APIResult(@NonNull T content) {
         this.content = content;
         this.error = null;
     }
@@ -14,24 +14,34 @@ import org.json.JSONObject;
 import org.json.JSONTokener;
 
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.lang.ref.WeakReference;
-import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Date;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * An abstract API client.
@@ -69,14 +79,35 @@ public abstract class AbstractClient {
         }
     }
 
-    private static class HostStatus {
-        boolean isUp = true;
-        long lastTryTimestamp;
+    /**
+     * Reads the body of a successful response directly off the network stream.
+     */
+    protected interface ResponseReader<T> {
+        /**
+         * Read a response body.
+         *
+         * @param stream The body of the response, already decompressed. It will be closed by the caller.
+         * @return The decoded response.
+         * @throws SnoopyoException If the body could not be read or decoded.
+         */
+        T read(@NonNull InputStream stream) throws SnoopyoException;
+    }
 
-        HostStatus(boolean isUp) {
-            this.isUp = isUp;
-            lastTryTimestamp = new Date().getTime();
-        }
+    /**
+     * Strategy used to order read hosts before trying them.
+     */
+    public enum HostSelection {
+        /** Try hosts in the order they were specified. */
+        STATIC,
+        /** Try hosts by increasing expected response time. */
+        LATENCY,
+        /**
+         * Pick two random hosts and try the one with the lowest expected response time first. Spreads the load
+         * while avoiding slow hosts.
+         */
+        POWER_OF_TWO_CHOICES,
+        /** Try hosts by increasing number of outstanding requests, then by expected response time. */
+        LEAST_OUTSTANDING_REQUESTS
     }
 
     // ----------------------------------------------------------------------
@@ -89,6 +120,14 @@ public abstract class AbstractClient {
     /** Maximum size for an API key to be sent in the HTTP headers. Bigger keys will go inside the body. */
     private final static int MAX_API_KEY_LENGTH = 500;
 
+    /** Reader buffering the whole response body. */
+    private final static ResponseReader<byte[]> BYTE_ARRAY_READER = new ResponseReader<byte[]>() {
+        @Override
+        public byte[] read(@NonNull InputStream stream) throws SnoopyoException {
+            return _toByteArray(stream);
+        }
+    };
+
     // ----------------------------------------------------------------------
     // Fields
     // ----------------------------------------------------------------------
@@ -114,18 +153,68 @@ public abstract class AbstractClient {
     /** Delay to wait when a host is down before retrying it (ms). */
     private int hostDownDelay = 5000;
 
+    /** Minimum size of a request body to be compressed (bytes). 0 disables compression. */
+    private int compressionThreshold = 0;
+
+    /** Delay after which a read request is hedged to the next host (ms). 0 disables hedging. */
+    private int hedgingDelay = 0;
+
+    /** Percentile of observed read latencies after which a read request is hedged. 0 uses the fixed delay only. */
+    private int hedgingPercentile = 0;
+
+    /** Number of latency samples kept to compute the hedging percentile. */
+    private final static int LATENCY_SAMPLE_COUNT = 100;
+
+    /** Minimum number of latency samples before the hedging percentile is used. */
+    private final static int MIN_LATENCY_SAMPLE_COUNT = 10;
+
+    /** Latest observed read latencies (ms), as a ring buffer. Guarded by `latencySamples`. */
+    private final long[] latencySamples = new long[LATENCY_SAMPLE_COUNT];
+
+    /** Number of valid latency samples. Guarded by `latencySamples`. */
+    private int latencySampleCount = 0;
+
+    /** Position of the next latency sample in the ring buffer. Guarded by `latencySamples`. */
+    private int latencySampleIndex = 0;
+
+    /** Thread pool used to run hedged attempts and other background work. Lazily created. */
+    private ExecutorService backgroundExecutorService;
+
+    /** Timer scheduling delayed work, e.g. task polling. Lazily created. */
+    private ScheduledExecutorService timer;
+
     private final String applicationID;
     private final String apiKey;
     private List<String> readHosts;
     private List<String> writeHosts;
-    private HashMap<String, HostStatus> hostStatuses = new HashMap<>();
+
+    /** Health of the hosts, as observed by this client. */
+    private final HostHealthRegistry hostRegistry = new HostHealthRegistry();
+
+    /** Strategy used to order read hosts. */
+    private @NonNull HostSelection hostSelection = HostSelection.STATIC;
+
+    /** Random generator used to select hosts. */
+    private final Random random = new Random();
 
     /**
      * HTTP headers that will be sent with every request.
      */
     private HashMap<String, String> headers = new HashMap<String, String>();
 
-    /** Thread pool used to run asynchronous requests. */
+    /** Transport used to perform HTTP calls. */
+    private @NonNull Transport transport = new URLConnectionTransport();
+
+    /** Scheduler running asynchronous requests. */
+    protected final @NonNull RequestScheduler scheduler = new RequestScheduler();
+
+    /**
+     * Executor that used to run asynchronous searches. The client no longer uses it; its threads are only started
+     * if a subclass submits work to it.
+     *
+     * @deprecated Asynchronous requests now run on the lanes of the {@link #getScheduler() scheduler}.
+     */
+    @Deprecated
     protected ExecutorService searchExecutorService = Executors.newFixedThreadPool(4);
 
     /** Executor used to run completion handlers. By default, runs on the main thread. */
@@ -181,6 +270,21 @@ public abstract class AbstractClient {
         }
     }
 
+    /**
+     * Describe what identifies the caller to the server, and may therefore change responses: the API key and the
+     * client-level headers. The description is unambiguous, and independent of the order of headers.
+     * <p>
+     * WARNING: The description contains secrets. It must never be stored as is.
+     * </p>
+     */
+    @NonNull String describeCredentials() {
+        StringBuilder builder = new StringBuilder(JSONObject.quote(apiKey != null ? apiKey : ""));
+        for (Map.Entry<String, String> header : new TreeMap<>(headers).entrySet()) {
+            builder.append(',').append(JSONObject.quote(header.getKey().toLowerCase())).append(':').append(JSONObject.quote(header.getValue()));
+        }
+        return builder.toString();
+    }
+
     /**
      * Get an HTTP header.
      *
@@ -339,6 +443,85 @@ public abstract class AbstractClient {
         return userAgents.contains(userAgent);
     }
 
+    /**
+     * Get the hedging delay for read requests.
+     *
+     * @return The delay after which a read request is sent to the next host in parallel (ms). 0 if disabled.
+     */
+    public int getHedgingDelay() {
+        return hedgingDelay;
+    }
+
+    /**
+     * Set the hedging delay for read requests.
+     * <p>
+     * When enabled, if a host has not responded after this delay, the same request is sent to the next host without
+     * cancelling the first one. The first successful response is used; the other attempts are abandoned. This cuts
+     * the latency caused by slow hosts, at the expense of occasional duplicate requests.
+     * </p>
+     * <p>
+     * NOTE: Only read operations are hedged; write operations are never sent twice.
+     * </p>
+     *
+     * @param hedgingDelay The delay after which a read request is sent to the next host in parallel (ms). 0 disables
+     *                     hedging (the default).
+     */
+    public void setHedgingDelay(int hedgingDelay) {
+        if (hedgingDelay < 0) {
+            throw new IllegalArgumentException("Hedging delay must be positive or zero");
+        }
+        this.hedgingDelay = hedgingDelay;
+    }
+
+    /**
+     * Get the percentile of observed read latencies used as the hedging delay.
+     *
+     * @return The percentile (between 1 and 99), or 0 if the fixed hedging delay is used.
+     */
+    public int getHedgingPercentile() {
+        return hedgingPercentile;
+    }
+
+    /**
+     * Use a percentile of the latencies observed on recent read requests as the hedging delay.
+     * <p>
+     * The fixed delay set by {@link #setHedgingDelay(int)} is used until enough requests have been observed, and
+     * must be non-zero for hedging to be enabled.
+     * </p>
+     *
+     * @param hedgingPercentile The percentile (between 1 and 99), or 0 to always use the fixed hedging delay.
+     */
+    public void setHedgingPercentile(int hedgingPercentile) {
+        if (hedgingPercentile < 0 || hedgingPercentile > 99) {
+            throw new IllegalArgumentException("Hedging percentile must be between 0 and 99");
+        }
+        this.hedgingPercentile = hedgingPercentile;
+    }
+
+    /**
+     * Get the minimum size of request bodies to be compressed.
+     *
+     * @return The compression threshold (bytes), or 0 if request bodies are never compressed.
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Compress request bodies with <code>gzip</code> when they are at least a given size.
+     * This mostly benefits write operations sending many records (e.g. batches) over slow networks.
+     * It can be overridden for individual calls with {@link RequestOptions#setCompressionThreshold(Integer)}.
+     *
+     * @param compressionThreshold The compression threshold (bytes), or 0 to never compress request bodies (the
+     *                             default).
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        if (compressionThreshold < 0) {
+            throw new IllegalArgumentException("Compression threshold must be positive or zero");
+        }
+        this.compressionThreshold = compressionThreshold;
+    }
+
     private void updateUserAgents() {
         StringBuilder s = new StringBuilder();
         for (LibraryVersion userAgent : userAgents) {
@@ -353,14 +536,60 @@ public abstract class AbstractClient {
         userAgentRaw = s.toString();
     }
 
+    /**
+     * Get the strategy used to order read hosts.
+     *
+     * @return The host selection strategy.
+     */
+    public @NonNull HostSelection getHostSelection() {
+        return hostSelection;
+    }
+
+    /**
+     * Change the strategy used to order read hosts.
+     * <p>
+     * By default, read hosts are tried in the order they were specified ({@link HostSelection#STATIC}). Other
+     * strategies use the latency and error rate observed on each host, so that the client converges on the fastest
+     * hosts from the device's current network.
+     * </p>
+     * <p>
+     * NOTE: Write hosts are always tried in the order they were specified.
+     * </p>
+     *
+     * @param hostSelection The new host selection strategy.
+     */
+    public void setHostSelection(@NonNull HostSelection hostSelection) {
+        this.hostSelection = hostSelection;
+    }
+
     private List<String> getReadHostsThatAreUp() {
-        return hostsThatAreUp(readHosts);
+        return orderHosts(hostsThatAreUp(readHosts));
     }
 
     private List<String> getWriteHostsThatAreUp() {
         return hostsThatAreUp(writeHosts);
     }
 
+    /**
+     * Get the transport used to perform HTTP calls.
+     *
+     * @return The transport used by this client.
+     */
+    public @NonNull Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Change the transport used to perform HTTP calls.
+     * By default, a {@link URLConnectionTransport} is used. See {@link PooledTransport} for an alternative re-using
+     * connections across requests, and {@link Http2Transport} to multiplex concurrent requests over HTTP/2.
+     *
+     * @param transport The new transport to use.
+     */
+    public void setTransport(@NonNull Transport transport) {
+        this.transport = transport;
+    }
+
     /**
      * Change the executor on which completion handlers are executed.
      * By default, completion handlers are executed on the main thread.
@@ -371,6 +600,15 @@ public abstract class AbstractClient {
         this.completionExecutor = completionExecutor;
     }
 
+    /**
+     * Get the scheduler running asynchronous requests, e.g. to change the concurrency limits of its lanes.
+     *
+     * @return The scheduler.
+     */
+    public @NonNull RequestScheduler getScheduler() {
+        return scheduler;
+    }
+
     // ----------------------------------------------------------------------
     // Utilities
     // ----------------------------------------------------------------------
@@ -383,27 +621,49 @@ public abstract class AbstractClient {
     }
 
     protected byte[] getRequestRaw(@NonNull String url, @Nullable Map<String, String> urlParameters, boolean search, @Nullable RequestOptions requestOptions) throws SnoopyoException {
-        return _requestRaw(Method.GET, url, urlParameters, /* json: */ null, getReadHostsThatAreUp(), connectTimeout, search ? searchTimeout : readTimeout, requestOptions);
+        return _requestRaw(Method.GET, url, urlParameters, /* json: */ null, getReadHostsThatAreUp(), true, connectTimeout, search ? searchTimeout : readTimeout, requestOptions);
     }
 
     protected JSONObject getRequest(@NonNull String url, @Nullable Map<String, String> urlParameters, boolean search, @Nullable RequestOptions requestOptions) throws SnoopyoException {
-        return _request(Method.GET, url, urlParameters, /* json: */ null, getReadHostsThatAreUp(), connectTimeout, search ? searchTimeout : readTimeout, requestOptions);
+        return _request(Method.GET, url, urlParameters, /* json: */ null, getReadHostsThatAreUp(), true, connectTimeout, search ? searchTimeout : readTimeout, requestOptions);
     }
 
     protected JSONObject deleteRequest(@NonNull String url, @Nullable Map<String, String> urlParameters, @Nullable RequestOptions requestOptions) throws SnoopyoException {
-        return _request(Method.DELETE, url, urlParameters, /* json: */ null, getWriteHostsThatAreUp(), connectTimeout, readTimeout, requestOptions);
+        return _request(Method.DELETE, url, urlParameters, /* json: */ null, getWriteHostsThatAreUp(), false, connectTimeout, readTimeout, requestOptions);
     }
 
     protected JSONObject postRequest(@NonNull String url, @Nullable Map<String, String> urlParameters, @Nullable String obj, boolean readOperation, @Nullable RequestOptions requestOptions) throws SnoopyoException {
-        return _request(Method.POST, url, urlParameters, obj, (readOperation ? getReadHostsThatAreUp() : getWriteHostsThatAreUp()), connectTimeout, (readOperation ? searchTimeout : readTimeout), requestOptions);
+        return _request(Method.POST, url, urlParameters, obj, (readOperation ? getReadHostsThatAreUp() : getWriteHostsThatAreUp()), readOperation, connectTimeout, (readOperation ? searchTimeout : readTimeout), requestOptions);
     }
 
     protected byte[] postRequestRaw(@NonNull String url, @Nullable Map<String, String> urlParameters, @Nullable String obj, boolean readOperation, @Nullable RequestOptions requestOptions) throws SnoopyoException {
-        return _requestRaw(Method.POST, url, urlParameters, obj, (readOperation ? getReadHostsThatAreUp() : getWriteHostsThatAreUp()), connectTimeout, (readOperation ? searchTimeout : readTimeout), requestOptions);
+        return _requestRaw(Method.POST, url, urlParameters, obj, (readOperation ? getReadHostsThatAreUp() : getWriteHostsThatAreUp()), readOperation, connectTimeout, (readOperation ? searchTimeout : readTimeout), requestOptions);
+    }
+
+    protected <T> T getRequestStreamed(@NonNull String url, @Nullable Map<String, String> urlParameters, boolean search, @Nullable RequestOptions requestOptions, @NonNull ResponseReader<T> reader) throws SnoopyoException {
+        return _requestRaw(Method.GET, url, urlParameters, /* json: */ null, getReadHostsThatAreUp(), true, connectTimeout, search ? searchTimeout : readTimeout, /* jsonWriter: */ null, requestOptions, reader);
+    }
+
+    protected <T> T postRequestStreamed(@NonNull String url, @Nullable Map<String, String> urlParameters, @Nullable String obj, boolean readOperation, @Nullable RequestOptions requestOptions, @NonNull ResponseReader<T> reader) throws SnoopyoException {
+        return _requestRaw(Method.POST, url, urlParameters, obj, (readOperation ? getReadHostsThatAreUp() : getWriteHostsThatAreUp()), readOperation, connectTimeout, (readOperation ? searchTimeout : readTimeout), /* jsonWriter: */ null, requestOptions, reader);
+    }
+
+    /**
+     * Post a JSON body streamed by a writer, instead of built in memory.
+     */
+    protected JSONObject postRequestStreamingBody(@NonNull String url, @Nullable Map<String, String> urlParameters, @NonNull BodyWriter jsonWriter, boolean readOperation, @Nullable RequestOptions requestOptions) throws SnoopyoException {
+        byte[] response = _requestRaw(Method.POST, url, urlParameters, /* json: */ null, (readOperation ? getReadHostsThatAreUp() : getWriteHostsThatAreUp()), readOperation, connectTimeout, (readOperation ? searchTimeout : readTimeout), jsonWriter, requestOptions, BYTE_ARRAY_READER);
+        try {
+            return _getJSONObject(response);
+        } catch (JSONException e) {
+            throw new SnoopyoException("JSON decode error:" + e.getMessage());
+        } catch (UnsupportedEncodingException e) {
+            throw new SnoopyoException("UTF-8 decode error:" + e.getMessage());
+        }
     }
 
     protected JSONObject putRequest(@NonNull String url, @Nullable Map<String, String> urlParameters, @NonNull String obj, @Nullable RequestOptions requestOptions) throws SnoopyoException {
-        return _request(Method.PUT, url, urlParameters, obj, getWriteHostsThatAreUp(), connectTimeout, readTimeout, requestOptions);
+        return _request(Method.PUT, url, urlParameters, obj, getWriteHostsThatAreUp(), false, connectTimeout, readTimeout, requestOptions);
     }
 
     /**
@@ -451,6 +711,42 @@ public abstract class AbstractClient {
     }
 
 
+    private static byte[] _gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4);
+        try {
+            GZIPOutputStream gzip = new GZIPOutputStream(out, 8192);
+            gzip.write(data);
+            gzip.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e); // should never happen: writing to memory
+        }
+        return out.toByteArray();
+    }
+
+    private static BodyWriter _gzip(@NonNull final BodyWriter writer) {
+        return new BodyWriter() {
+            @Override
+            public void writeTo(@NonNull OutputStream output) throws IOException {
+                GZIPOutputStream gzip = new GZIPOutputStream(output, 8192) {
+                    @Override
+                    public void close() throws IOException {
+                        // Do not close the transport's stream, but release the native deflater.
+                        try {
+                            finish();
+                        } finally {
+                            def.end();
+                        }
+                    }
+                };
+                try {
+                    writer.writeTo(gzip);
+                } finally {
+                    gzip.close();
+                }
+            }
+        };
+    }
+
     protected static JSONObject _getJSONObject(String input) throws JSONException {
         return new JSONObject(new JSONTokener(input));
     }
@@ -471,14 +767,15 @@ public abstract class AbstractClient {
      * @param urlParameters  URL parameters
      * @param json           optional JSON Object to send
      * @param hostsArray     array of hosts to try successively
+     * @param readOperation  whether this is a read operation
      * @param connectTimeout maximum wait time to open connection
      * @param readTimeout    maximum time to read data on socket
      * @return a JSONObject containing the resulting data or error
      * @throws SnoopyoException if the request data is not valid json
      */
-    private JSONObject _request(@NonNull Method m, @NonNull String url, @Nullable Map<String, String> urlParameters, @Nullable String json, @NonNull List<String> hostsArray, int connectTimeout, int readTimeout, @Nullable RequestOptions requestOptions) throws SnoopyoException {
+    private JSONObject _request(@NonNull Method m, @NonNull String url, @Nullable Map<String, String> urlParameters, @Nullable String json, @NonNull List<String> hostsArray, boolean readOperation, int connectTimeout, int readTimeout, @Nullable RequestOptions requestOptions) throws SnoopyoException {
         try {
-            return _getJSONObject(_requestRaw(m, url, urlParameters, json, hostsArray, connectTimeout, readTimeout, requestOptions));
+            return _getJSONObject(_requestRaw(m, url, urlParameters, json, hostsArray, readOperation, connectTimeout, readTimeout, requestOptions));
         } catch (JSONException e) {
             throw new SnoopyoException("JSON decode error:" + e.getMessage());
         } catch (UnsupportedEncodingException e) {
@@ -494,182 +791,611 @@ public abstract class AbstractClient {
      * @param urlParameters  URL parameters
      * @param json           (optional) JSON body
      * @param hostsArray     array of hosts to try successively
+     * @param readOperation  whether this is a read operation
      * @param connectTimeout maximum wait time to open connection
      * @param readTimeout    maximum time to read data on socket
      * @return a JSONObject containing the resulting data or error
      * @throws SnoopyoException in case of connection or data handling error
      */
-    private byte[] _requestRaw(@NonNull Method m, @NonNull String url, @Nullable Map<String, String> urlParameters, @Nullable String json, @NonNull List<String> hostsArray, int connectTimeout, int readTimeout, @Nullable RequestOptions requestOptions) throws SnoopyoException {
-        String requestMethod;
-        List<Exception> errors = new ArrayList<>(hostsArray.size());
-        // for each host
+    private byte[] _requestRaw(@NonNull Method m, @NonNull String url, @Nullable Map<String, String> urlParameters, @Nullable String json, @NonNull List<String> hostsArray, boolean readOperation, int connectTimeout, int readTimeout, @Nullable RequestOptions requestOptions) throws SnoopyoException {
+        return _requestRaw(m, url, urlParameters, json, hostsArray, readOperation, connectTimeout, readTimeout, /* jsonWriter: */ null, requestOptions, BYTE_ARRAY_READER);
+    }
+
+    /**
+     * Send the query according to parameters and read the body of a successful response with the specified reader.
+     * <p>
+     * NOTE: Errors encountered by the reader are fatal: the request is not retried on the next host, since the
+     * reader may already have consumed part of the response.
+     * </p>
+     *
+     * @param m              HTTP Method to use
+     * @param url            Endpoint URL, *without query string*. The query string is handled by `urlParameters`.
+     * @param urlParameters  URL parameters
+     * @param json           (optional) JSON body
+     * @param hostsArray     array of hosts to try successively
+     * @param readOperation  whether this is a read operation (which can be hedged)
+     * @param connectTimeout maximum wait time to open connection
+     * @param readTimeout    maximum time to read data on socket
+     * @param jsonWriter     (optional) writer streaming the JSON body; exclusive with `json`
+     * @param reader         reader for the (decompressed) response body
+     * @return the value returned by the reader
+     * @throws SnoopyoException in case of connection or data handling error
+     */
+    private <T> T _requestRaw(@NonNull Method m, @NonNull String url, @Nullable Map<String, String> urlParameters, @Nullable String json, @NonNull List<String> hostsArray, boolean readOperation, int connectTimeout, int readTimeout, @Nullable BodyWriter jsonWriter, @Nullable RequestOptions requestOptions, @NonNull ResponseReader<T> reader) throws SnoopyoException {
+        final String requestMethod;
+        switch (m) {
+            case DELETE:
+                requestMethod = "DELETE";
+                break;
+            case GET:
+                requestMethod = "GET";
+                break;
+            case POST:
+                requestMethod = "POST";
+                break;
+            case PUT:
+                requestMethod = "PUT";
+                break;
+            default:
+                throw new IllegalArgumentException("Method " + m + " is not supported");
+        }
+        if ((json != null || jsonWriter != null) && !(requestMethod.equals("PUT") || requestMethod.equals("POST"))) {
+            throw new IllegalArgumentException("Method " + m + " cannot enclose entity");
+        }
+        // The API key cannot be patched into a streamed body: build it in memory in that (rare) case.
+        if (this.apiKey != null && this.apiKey.length() > MAX_API_KEY_LENGTH && jsonWriter != null) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            try {
+                jsonWriter.writeTo(output);
+                json = output.toString("UTF-8");
+            } catch (IOException e) {
+                throw new SnoopyoException("Failed to write JSON body", e);
+            }
+            jsonWriter = null;
+        }
+
+        // Compute final URL parameters.
+        final Map<String, String> parameters = new HashMap<>();
+        if (urlParameters != null) {
+            parameters.putAll(urlParameters);
+        }
+        if (requestOptions != null) {
+            parameters.putAll(requestOptions.urlParameters);
+        }
+        final String query = parameters.isEmpty() ? null : AbstractQuery.build(parameters);
+
+        // Headers
+        final Map<String, String> requestHeaders = new HashMap<>();
+        requestHeaders.put("Accept-Encoding", InflatingInputStream.ACCEPT_ENCODING);
+        requestHeaders.put("X-Snoopyo-Application-Id", this.applicationID);
+        // If API key is too big, send it in the request's body (if applicable).
+        if (this.apiKey != null && this.apiKey.length() > MAX_API_KEY_LENGTH && json != null) {
+            try {
+                final JSONObject body = new JSONObject(json);
+                body.put("apiKey", this.apiKey);
+                json = body.toString();
+            } catch (JSONException e) {
+                throw new SnoopyoException("Failed to patch JSON body");
+            }
+        } else {
+            requestHeaders.put("X-Snoopyo-API-Key", this.apiKey);
+        }
+        // Client-level headers
+        requestHeaders.putAll(this.headers);
+        // Request-level headers
+        if (requestOptions != null) {
+            requestHeaders.putAll(requestOptions.headers);
+        }
+
+        // set user agent
+        requestHeaders.put("User-Agent", userAgentRaw);
+
+        // JSON entity
+        byte[] body = null;
+        if (json != null) {
+            requestHeaders.put("Content-type", "application/json; charset=UTF-8");
+            try {
+                body = json.getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e); // should never happen: UTF-8 is always supported
+            }
+            int threshold = compressionThreshold;
+            if (requestOptions != null && requestOptions.compressionThreshold != null) {
+                threshold = requestOptions.compressionThreshold;
+            }
+            if (threshold > 0 && body.length >= threshold) {
+                byte[] compressedBody = _gzip(body);
+                // Only send the compressed version if it is actually smaller.
+                if (compressedBody.length < body.length) {
+                    body = compressedBody;
+                    requestHeaders.put("Content-Encoding", InflatingInputStream.GZIP);
+                }
+            }
+        }
+
+        // Streamed JSON entity
+        BodyWriter bodyWriter = null;
+        if (jsonWriter != null) {
+            requestHeaders.put("Content-type", "application/json; charset=UTF-8");
+            int threshold = compressionThreshold;
+            if (requestOptions != null && requestOptions.compressionThreshold != null) {
+                threshold = requestOptions.compressionThreshold;
+            }
+            // The body's size is not known in advance: compress it whenever compression is enabled.
+            if (threshold > 0) {
+                bodyWriter = _gzip(jsonWriter);
+                requestHeaders.put("Content-Encoding", InflatingInputStream.GZIP);
+            } else {
+                bodyWriter = jsonWriter;
+            }
+        }
+
+        // Build one request per host.
+        final CancellationToken cancellationToken = FutureRequest.currentCancellationToken();
+        List<HttpRequest> requests = new ArrayList<>(hostsArray.size());
         for (String host : hostsArray) {
-            switch (m) {
-                case DELETE:
-                    requestMethod = "DELETE";
-                    break;
-                case GET:
-                    requestMethod = "GET";
-                    break;
-                case POST:
-                    requestMethod = "POST";
-                    break;
-                case PUT:
-                    requestMethod = "PUT";
-                    break;
-                default:
-                    throw new IllegalArgumentException("Method " + m + " is not supported");
+            try {
+                URL hostURL = new URL("https://" + host + url + (query == null ? "" : "?" + query));
+                requests.add(new HttpRequest(requestMethod, hostURL, requestHeaders, body, bodyWriter, connectTimeout, readTimeout, cancellationToken));
+            } catch (MalformedURLException e) {
+                throw new SnoopyoException("Invalid URL for host " + host, e);
             }
+        }
 
+        final long deadline = requestOptions != null ? requestOptions.deadline : 0;
+        if (readOperation && hedgingDelay > 0 && requests.size() > 1) {
+            return _requestHedged(requests, deadline, reader);
+        }
+
+        List<Exception> errors = new ArrayList<>(hostsArray.size());
+        // for each host
+        for (int i = 0; i < requests.size(); ++i) {
+            HttpRequest request = requests.get(i);
+            if (request.isCancelled()) {
+                throw new SnoopyoException("Request cancelled");
+            }
+            // Split the remaining time across the remaining hosts.
+            if (deadline != 0) {
+                long remainingTime = deadline - System.currentTimeMillis();
+                if (remainingTime <= 0) {
+                    throw _deadlineExceeded(errors);
+                }
+                request = _withBudget(request, remainingTime / (requests.size() - i));
+            }
+            HttpResponse response = null;
             InputStream stream = null;
-            HttpURLConnection hostConnection = null;
             try {
-                // Compute final URL parameters.
-                final Map<String, String> parameters = new HashMap<>();
-                if (urlParameters != null) {
-                    parameters.putAll(urlParameters);
+                response = _execute(request, readOperation, request != requests.get(i));
+                stream = _openBody(response);
+                return reader.read(stream);
+            } catch (SnoopyoException e) {
+                if (!isRetryable(e)) { // fatal
+                    throw e;
                 }
-                if (requestOptions != null) {
-                    parameters.putAll(requestOptions.urlParameters);
+                errors.add(e);
+            } catch (IOException e) { // host error, continue on the next host
+                if (request.isCancelled()) {
+                    throw new SnoopyoException("Request cancelled", e);
                 }
+                errors.add(e);
+            } finally {
+                closeQuietly(stream);
+                closeQuietly(response);
+            }
+        }
+        if (deadline != 0 && System.currentTimeMillis() >= deadline) {
+            throw _deadlineExceeded(errors);
+        }
+        throw _allHostsFailed(errors);
+    }
 
-                // Build URL.
-                String urlString = "https://" + host + url;
-                if (!parameters.isEmpty()) {
-                    urlString += "?" + AbstractQuery.build(parameters);
+    /**
+     * Send the same read request to successive hosts, without waiting for the previous host to respond: once the
+     * hedging delay has elapsed, the next host is tried in parallel. The first host to respond wins; other attempts
+     * are abandoned and their network calls aborted.
+     *
+     * @param requests Requests to send, one per host.
+     * @param deadline Absolute deadline for the request (ms since the epoch), or 0 if none.
+     * @param reader   reader for the (decompressed) response body
+     * @return the value returned by the reader
+     * @throws SnoopyoException in case of connection or data handling error
+     */
+    private <T> T _requestHedged(@NonNull List<HttpRequest> requests, long deadline, @NonNull ResponseReader<T> reader) throws SnoopyoException {
+        final BlockingQueue<HedgedAttempt> completedAttempts = new LinkedBlockingQueue<>();
+        final List<HedgedAttempt> attempts = new ArrayList<>(requests.size());
+        final List<Exception> errors = new ArrayList<>(requests.size());
+        final long delay = getEffectiveHedgingDelay();
+        // Cancelling the request aborts all attempts, including the winner's while its body is being read.
+        final CancellationToken cancellationToken = requests.get(0).cancellationToken;
+        final Runnable abandonAll = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (attempts) {
+                    for (HedgedAttempt attempt : attempts) {
+                        attempt.abandon();
+                    }
                 }
-                URL hostURL = new URL(urlString);
-
-                // Open connection.
-                hostConnection = (HttpURLConnection) hostURL.openConnection();
-
-                //set timeouts
-                hostConnection.setRequestMethod(requestMethod);
-                hostConnection.setConnectTimeout(connectTimeout);
-                hostConnection.setReadTimeout(readTimeout);
-
-                // Headers
-                hostConnection.setRequestProperty("Accept-Encoding", "gzip");
-                hostConnection.setRequestProperty("X-Snoopyo-Application-Id", this.applicationID);
-                // If API key is too big, send it in the request's body (if applicable).
-                if (this.apiKey != null && this.apiKey.length() > MAX_API_KEY_LENGTH && json != null) {
-                    try {
-                        final JSONObject body = new JSONObject(json);
-                        body.put("apiKey", this.apiKey);
-                        json = body.toString();
-                    } catch (JSONException e) {
-                        throw new SnoopyoException("Failed to patch JSON body");
+            }
+        };
+        if (cancellationToken != null) {
+            cancellationToken.addListener(abandonAll);
+        }
+        int pending = 0;
+        boolean failed = false;
+        try {
+            while (true) {
+                if (cancellationToken != null && cancellationToken.isCancelled()) {
+                    throw new SnoopyoException("Request cancelled");
+                }
+                // Launch the next attempt if none is pending, if the previous one failed or if the hedging delay has
+                // elapsed.
+                HedgedAttempt completedAttempt = null;
+                if (pending > 0 && !(failed && attempts.size() < requests.size())) {
+                    long timeout = attempts.size() < requests.size() ? delay : -1; // -1 = wait indefinitely
+                    if (deadline != 0) {
+                        long remainingTime = deadline - System.currentTimeMillis();
+                        if (remainingTime <= 0) {
+                            throw _deadlineExceeded(errors);
+                        }
+                        timeout = timeout < 0 ? remainingTime : Math.min(timeout, remainingTime);
+                    }
+                    completedAttempt = timeout < 0
+                            ? completedAttempts.take()
+                            : completedAttempts.poll(timeout, TimeUnit.MILLISECONDS);
+                    if (completedAttempt == null && deadline != 0 && System.currentTimeMillis() >= deadline) {
+                        throw _deadlineExceeded(errors);
                     }
-                } else {
-                    hostConnection.setRequestProperty("X-Snoopyo-API-Key", this.apiKey);
                 }
-                // Client-level headers
-                for (Map.Entry<String, String> entry : this.headers.entrySet()) {
-                    hostConnection.setRequestProperty(entry.getKey(), entry.getValue());
+                if (completedAttempt == null) {
+                    if (attempts.size() == requests.size()) {
+                        break;
+                    }
+                    HttpRequest request = requests.get(attempts.size());
+                    if (deadline != 0) {
+                        long remainingTime = deadline - System.currentTimeMillis();
+                        if (remainingTime <= 0) {
+                            throw _deadlineExceeded(errors);
+                        }
+                        request = _withBudget(request, remainingTime);
+                    }
+                    boolean budgeted = request != requests.get(attempts.size());
+                    // Each attempt gets its own token, so that it can be aborted independently.
+                    HedgedAttempt attempt = new HedgedAttempt(request.withCancellationToken(new CancellationToken()), budgeted, completedAttempts);
+                    synchronized (attempts) {
+                        attempts.add(attempt);
+                    }
+                    getBackgroundExecutorService().execute(attempt);
+                    ++pending;
+                    failed = false;
+                    continue;
+                }
+                --pending;
+                failed = true;
+
+                // Process the outcome of an attempt.
+                HttpResponse response = completedAttempt.takeResponse();
+                if (response == null) {
+                    final Throwable error = completedAttempt.error;
+                    // Unexpected failures propagate to the caller, as they would without hedging.
+                    if (error instanceof RuntimeException) {
+                        throw (RuntimeException) error;
+                    } else if (error instanceof Error) {
+                        throw (Error) error;
+                    }
+                    errors.add((Exception) error);
+                    continue;
                 }
-                // Request-level headers
-                if (requestOptions != null) {
-                    for (Map.Entry<String, String> entry : requestOptions.headers.entrySet()) {
-                        hostConnection.setRequestProperty(entry.getKey(), entry.getValue());
+                InputStream stream = null;
+                try {
+                    stream = _openBody(response);
+                    // We have a winner: abandon other attempts before reading the body.
+                    synchronized (attempts) {
+                        for (HedgedAttempt attempt : attempts) {
+                            if (attempt != completedAttempt) {
+                                attempt.abandon();
+                            }
+                        }
                     }
+                    return reader.read(stream);
+                } catch (SnoopyoException e) {
+                    if (!isRetryable(e)) { // fatal
+                        throw e;
+                    }
+                    errors.add(e);
+                } catch (IOException e) {
+                    errors.add(e);
+                } finally {
+                    closeQuietly(stream);
+                    closeQuietly(response);
                 }
+            }
+        } catch (InterruptedException e) {
+            throw new SnoopyoException("Request interrupted", e);
+        } finally {
+            if (cancellationToken != null) {
+                cancellationToken.removeListener(abandonAll);
+            }
+            abandonAll.run();
+        }
+        throw _allHostsFailed(errors);
+    }
 
-                // set user agent
-                hostConnection.setRequestProperty("User-Agent", userAgentRaw);
+    /**
+     * One attempt of a hedged request, running on the hedging executor.
+     */
+    private class HedgedAttempt implements Runnable {
+        final HttpRequest request;
+        final boolean budgeted;
+        final BlockingQueue<HedgedAttempt> completedAttempts;
 
-                // write JSON entity
-                if (json != null) {
-                    if (!(requestMethod.equals("PUT") || requestMethod.equals("POST"))) {
-                        throw new IllegalArgumentException("Method " + m + " cannot enclose entity");
-                    }
-                    hostConnection.setRequestProperty("Content-type", "application/json; charset=UTF-8");
-                    hostConnection.setDoOutput(true);
-                    OutputStreamWriter writer = new OutputStreamWriter(hostConnection.getOutputStream(), "UTF-8");
-                    writer.write(json);
-                    writer.close();
+        /** The response, once received and until taken. Guarded by `this`. */
+        private HttpResponse response;
+
+        /** The error encountered, if any. Unexpected errors are caught as well, so that completion is always signaled. */
+        Throwable error;
+
+        /** Whether this attempt has been abandoned. Guarded by `this`. */
+        private boolean abandoned = false;
+
+        HedgedAttempt(HttpRequest request, boolean budgeted, BlockingQueue<HedgedAttempt> completedAttempts) {
+            this.request = request;
+            this.budgeted = budgeted;
+            this.completedAttempts = completedAttempts;
+        }
+
+        @Override
+        public void run() {
+            HttpResponse response = null;
+            try {
+                response = _execute(request, true, budgeted);
+            } catch (Throwable e) {
+                error = e;
+            }
+            synchronized (this) {
+                if (abandoned) {
+                    closeQuietly(response);
+                    return;
                 }
+                this.response = response;
+            }
+            completedAttempts.add(this);
+        }
 
-                // read response
-                int code = hostConnection.getResponseCode();
-                final boolean codeIsError = code / 100 != 2;
-                stream = codeIsError ? hostConnection.getErrorStream() : hostConnection.getInputStream();
-                // As per the official Java docs (not the Android docs):
-                // - `getErrorStream()` may return null => we have to handle this case.
-                //   See <https://docs.oracle.com/javase/7/docs/api/java/net/HttpURLConnection.html#getErrorStream()>.
-                // - `getInputStream()` should never return null... but let's err on the side of caution.
-                //   See <https://docs.oracle.com/javase/7/docs/api/java/net/URLConnection.html#getInputStream()>.
-                if (stream == null) {
-                    throw new IOException(String.format("Null stream when reading connection (status %d)", code));
+        /**
+         * Take ownership of the response, if any. The caller becomes responsible for closing it.
+         */
+        synchronized HttpResponse takeResponse() {
+            HttpResponse response = this.response;
+            this.response = null;
+            return response;
+        }
+
+        /**
+         * Abandon this attempt. Its response, if not taken yet, is discarded, and its network call is aborted.
+         */
+        void abandon() {
+            synchronized (this) {
+                if (abandoned) {
+                    return;
                 }
-                hostStatuses.put(host, new HostStatus(true));
+                abandoned = true;
+                closeQuietly(response);
+                response = null;
+            }
+            if (request.cancellationToken != null) {
+                request.cancellationToken.cancel();
+            }
+        }
+    }
 
-                final byte[] rawResponse;
-                String encoding = hostConnection.getContentEncoding();
-                if (encoding != null && encoding.equals("gzip")) {
-                    rawResponse = _toByteArray(new GZIPInputStream(stream));
+    /**
+     * Compute the delay after which a read request should be hedged.
+     *
+     * @return The hedging delay (ms).
+     */
+    private long getEffectiveHedgingDelay() {
+        if (hedgingPercentile > 0) {
+            long[] samples;
+            synchronized (latencySamples) {
+                if (latencySampleCount >= MIN_LATENCY_SAMPLE_COUNT) {
+                    samples = Arrays.copyOf(latencySamples, latencySampleCount);
                 } else {
-                    rawResponse = _toByteArray(stream);
+                    samples = null;
                 }
+            }
+            if (samples != null) {
+                Arrays.sort(samples);
+                return Math.max(1, samples[(samples.length - 1) * hedgingPercentile / 100]);
+            }
+        }
+        return hedgingDelay;
+    }
 
-                // handle http errors
-                if (codeIsError) {
-                    if (code / 100 == 4) {
-                        consumeQuietly(hostConnection);
-                        throw new SnoopyoException(_getJSONObject(rawResponse).getString("message"), code);
-                    } else {
-                        consumeQuietly(hostConnection);
-                        errors.add(new SnoopyoException(_toCharArray(stream), code));
-                        continue;
-                    }
+    /**
+     * Record the latency of a successful read request.
+     *
+     * @param latency Time until the response headers were received (ms).
+     */
+    private void recordLatency(long latency) {
+        synchronized (latencySamples) {
+            latencySamples[latencySampleIndex] = latency;
+            latencySampleIndex = (latencySampleIndex + 1) % LATENCY_SAMPLE_COUNT;
+            latencySampleCount = Math.min(latencySampleCount + 1, LATENCY_SAMPLE_COUNT);
+        }
+    }
+
+    /**
+     * Get the thread pool running hedged attempts and other background work. Unlike the request lanes, it is
+     * unbounded: tasks may block for a long time without delaying searches.
+     */
+    synchronized ExecutorService getBackgroundExecutorService() {
+        if (backgroundExecutorService == null) {
+            backgroundExecutorService = Executors.newCachedThreadPool();
+        }
+        return backgroundExecutorService;
+    }
+
+    /**
+     * Get the timer scheduling delayed work. It has a single thread: scheduled tasks must be short, and hand any
+     * network access over to an executor.
+     */
+    synchronized ScheduledExecutorService getTimer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, "snoopyo-timer");
+                    thread.setDaemon(true);
+                    return thread;
                 }
-                return rawResponse;
+            });
+        }
+        return timer;
+    }
 
+    /**
+     * Execute one request against one host, keeping track of the host's status.
+     *
+     * @param request       The request to execute.
+     * @param readOperation Whether this is a read operation.
+     * @param budgeted      Whether the request's timeouts were shortened to meet a deadline. If so, timing out does
+     *                      not mean that the host is down.
+     * @return The response, whatever its status code.
+     * @throws IOException If the host could not be reached.
+     */
+    private HttpResponse _execute(@NonNull HttpRequest request, boolean readOperation, boolean budgeted) throws IOException {
+        final String host = request.url.getHost();
+        final HostHealthRegistry.HostStatus status = hostRegistry.getStatus(host);
+        if (!status.tryAcquire(hostDownDelay)) {
+            // If all hosts are down (e.g. after a network outage), probe this one early rather than failing without
+            // touching the network: the outage may be over. Only one probe per host is admitted all the same.
+            final List<String> hosts = readOperation ? readHosts : writeHosts;
+            final boolean allHostsDown = hosts == null || hostRegistry.allHostsDown(hosts, hostDownDelay);
+            if (!allHostsDown || !status.tryAcquire(0)) {
+                throw new IOException("Host " + host + " is down");
+            }
+        }
+        final long startTime = System.currentTimeMillis();
+        try {
+            HttpResponse response = transport.execute(request);
+            final long latency = System.currentTimeMillis() - startTime;
+            if (response.statusCode / 100 != 2 && isRetryable(response.statusCode)) {
+                status.requestFailed(true);
+            } else {
+                status.requestSucceeded(latency);
+                if (readOperation && response.statusCode / 100 == 2) {
+                    recordLatency(latency);
+                }
+            }
+            return response;
+        } catch (IOException e) {
+            if (request.isCancelled()) {
+                // Aborted on purpose: this says nothing about the host's health.
+                status.requestAbandoned();
+            } else {
+                status.requestFailed(budgeted && e instanceof SocketTimeoutException);
+            }
+            throw e;
+        } catch (RuntimeException | Error e) {
+            // Not a network failure: this says nothing about the host's health, but the request must be accounted for
+            // (and, if it was a probe, another one may be sent).
+            status.requestAbandoned();
+            throw e;
+        }
+    }
+
+    /**
+     * Check the status of a response and open its body.
+     *
+     * @param response The response to check.
+     * @return The decompressed body of a successful response. Must be closed (in addition to the response) to release
+     * the decoder, if any.
+     * @throws SnoopyoException If the server returned an error. The status code is set.
+     * @throws IOException If the response could not be read.
+     */
+    private static InputStream _openBody(@NonNull HttpResponse response) throws SnoopyoException, IOException {
+        // read response
+        int code = response.statusCode;
+        final boolean codeIsError = code / 100 != 2;
+        InputStream stream = response.getBody();
+        if (stream == null) {
+            throw new IOException(String.format("Null stream when reading connection (status %d)", code));
+        }
+        String encoding = response.getHeader("Content-Encoding");
+        if (encoding != null && InflatingInputStream.isSupported(encoding)) {
+            stream = InflatingInputStream.obtain(stream, encoding);
+        }
+
+        // handle http errors
+        if (codeIsError) {
+            final byte[] rawResponse;
+            try {
+                rawResponse = _toByteArray(stream);
+            } finally {
+                closeQuietly(stream);
+            }
+            try {
+                if (code / 100 == 4) {
+                    throw new SnoopyoException(_getJSONObject(rawResponse).getString("message"), code);
+                } else {
+                    throw new SnoopyoException(new String(rawResponse, "UTF-8"), code);
+                }
             } catch (JSONException e) { // fatal
-                consumeQuietly(hostConnection);
                 throw new SnoopyoException("Invalid JSON returned by server", e);
             } catch (UnsupportedEncodingException e) { // fatal
-                consumeQuietly(hostConnection);
                 throw new SnoopyoException("Invalid encoding returned by server", e);
-            } catch (IOException e) { // host error, continue on the next host
-                hostStatuses.put(host, new HostStatus(false));
-                consumeQuietly(hostConnection);
-                errors.add(e);
-            } finally {
-                if (stream != null) {
-                    try {
-                        stream.close();
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                }
             }
         }
+        return stream;
+    }
 
+    /**
+     * Test whether an error was returned by the server and may be retried on another host: any HTTP status but a client
+     * error (4xx), which another host would return as well. Redirections (3xx) are not followed, so they are retried.
+     */
+    private static boolean isRetryable(@NonNull SnoopyoException e) {
+        return isRetryable(e.getStatusCode());
+    }
+
+    private static boolean isRetryable(int statusCode) {
+        return statusCode != 0 && statusCode / 100 != 4;
+    }
+
+    /**
+     * Cap the timeouts of a request to a time budget.
+     *
+     * @param request The request.
+     * @param budget  Maximum time to spend on the request (ms).
+     * @return A request whose timeouts do not exceed the budget.
+     */
+    private static HttpRequest _withBudget(@NonNull HttpRequest request, long budget) {
+        // NOTE: A zero timeout means "infinite": make sure it is at least 1 ms.
+        int timeout = (int) Math.max(1, Math.min(budget, Integer.MAX_VALUE));
+        return request.withTimeouts(Math.min(request.connectTimeout, timeout), Math.min(request.readTimeout, timeout));
+    }
+
+    private static SnoopyoException _deadlineExceeded(@NonNull List<Exception> errors) {
+        Throwable lastError = errors.isEmpty() ? null : errors.get(errors.size() - 1);
+        return new SnoopyoTimeoutException("Request deadline exceeded", lastError);
+    }
+
+    private static SnoopyoException _allHostsFailed(@NonNull List<Exception> errors) {
         String errorMessage = "All hosts failed: " + Arrays.toString(errors.toArray());
         // When several errors occurred, use the last one as the cause for the returned exception.
         Throwable lastError = errors.get(errors.size() - 1);
-        throw new SnoopyoException(errorMessage, lastError);
+        return new SnoopyoException(errorMessage, lastError);
     }
 
     /**
-     * Ensures that the entity content is fully consumed and the content stream, if exists,
-     * is closed.
+     * Close a response (releasing its connection to the transport) or a stream.
      */
-    private static void consumeQuietly(final HttpURLConnection connection) {
-        try {
-            int read = 0;
-            while (read != -1) {
-                read = connection.getInputStream().read();
-            }
-            connection.getInputStream().close();
-            read = 0;
-            while (read != -1) {
-                read = connection.getErrorStream().read();
+    static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                e.printStackTrace();
             }
-            connection.getErrorStream().close();
-            connection.disconnect();
-        } catch (IOException e) {
-            // no inputStream to close
         }
     }
 
@@ -682,22 +1408,59 @@ public abstract class AbstractClient {
     /**
      * Get the hosts that are not considered down in a given list.
      *
-     * @param hosts a list of hosts whose {@link HostStatus} will be checked.
+     * @param hosts a list of hosts whose health will be checked.
      * @return the hosts considered up, or all hosts if none is known to be reachable.
      */
     private List<String> hostsThatAreUp(List<String> hosts) {
-        List<String> upHosts = new ArrayList<>();
-        for (String host : hosts) {
-            if (isUpOrCouldBeRetried(host)) {
-                upHosts.add(host);
-            }
-        }
-        return upHosts.isEmpty() ? hosts : upHosts;
+        List<String> availableHosts = hostRegistry.availableHosts(hosts, hostDownDelay);
+        return availableHosts.isEmpty() ? hosts : availableHosts;
     }
 
     boolean isUpOrCouldBeRetried(String host) {
-        HostStatus status = hostStatuses.get(host);
-        return status == null || status.isUp || new Date().getTime() - status.lastTryTimestamp >= hostDownDelay;
+        HostHealthRegistry.HostStatus status = hostRegistry.peekStatus(host);
+        return status == null || status.isAvailable(hostDownDelay);
+    }
+
+    /**
+     * Order hosts according to the host selection strategy.
+     *
+     * @param hosts The hosts to order.
+     * @return The hosts, in the order they should be tried.
+     */
+    private List<String> orderHosts(@NonNull List<String> hosts) {
+        final HostSelection selection = hostSelection;
+        if (selection == HostSelection.STATIC || hosts.size() < 2) {
+            return hosts;
+        }
+        // Snapshot the statistics, so that they do not change while sorting.
+        final Map<String, double[]> scores = new HashMap<>();
+        for (String host : hosts) {
+            HostHealthRegistry.HostStatus status = hostRegistry.getStatus(host);
+            scores.put(host, new double[]{status.getOutstandingRequests(), status.getHealth().expectedLatency()});
+        }
+        List<String> orderedHosts = new ArrayList<>(hosts);
+        Collections.sort(orderedHosts, new Comparator<String>() {
+            @Override
+            public int compare(String lhs, String rhs) {
+                double[] lhsScore = scores.get(lhs);
+                double[] rhsScore = scores.get(rhs);
+                if (selection == HostSelection.LEAST_OUTSTANDING_REQUESTS && lhsScore[0] != rhsScore[0]) {
+                    return Double.compare(lhsScore[0], rhsScore[0]);
+                }
+                return Double.compare(lhsScore[1], rhsScore[1]);
+            }
+        });
+        if (selection == HostSelection.POWER_OF_TWO_CHOICES) {
+            // Pick two distinct random hosts; the best one goes first, the others remain as fallbacks.
+            int first = random.nextInt(hosts.size());
+            int second = (first + 1 + random.nextInt(hosts.size() - 1)) % hosts.size();
+            String host1 = hosts.get(first);
+            String host2 = hosts.get(second);
+            String bestHost = scores.get(host1)[1] <= scores.get(host2)[1] ? host1 : host2;
+            orderedHosts.remove(bestHost);
+            orderedHosts.add(0, bestHost);
+        }
+        return orderedHosts;
     }
 
     // ----------------------------------------------------------------------
@@ -707,15 +1470,27 @@ public abstract class AbstractClient {
     /**
      * Abstract convenience implementation of {@link FutureRequest} using the client's default executors.
      */
-    abstract protected class AsyncTaskRequest extends FutureRequest {
+    abstract protected class AsyncTaskRequest extends FutureRequest<JSONObject> {
         /**
-         * Construct a new request with the specified completion handler, executing on the client's search executor,
-         * and calling the completion handler on the client's completion executor.
+         * Construct a new request with the specified completion handler, executing on the
+         * {@link RequestScheduler.Lane#SEARCH SEARCH} lane of the client's scheduler, and calling the completion
+         * handler on the client's completion executor.
          *
          * @param completionHandler The completion handler to be notified of results. May be null if the caller omitted it.
          */
         protected AsyncTaskRequest(@Nullable CompletionHandler completionHandler) {
-            this(completionHandler, searchExecutorService);
+            this(completionHandler, RequestScheduler.Lane.SEARCH);
+        }
+
+        /**
+         * Construct a new request with the specified completion handler, executing on a lane of the client's
+         * scheduler, and calling the completion handler on the client's completion executor.
+         *
+         * @param completionHandler The completion handler to be notified of results. May be null if the caller omitted it.
+         * @param lane              Lane on which to execute the request.
+         */
+        protected AsyncTaskRequest(@Nullable CompletionHandler completionHandler, @NonNull RequestScheduler.Lane lane) {
+            this(completionHandler, scheduler.executor(lane));
         }
 
         /**
@@ -726,7 +1501,35 @@ public abstract class AbstractClient {
          * @param requestExecutor   Executor on which to execute the request.
          */
         protected AsyncTaskRequest(@Nullable CompletionHandler completionHandler, @NonNull Executor requestExecutor) {
-            super(completionHandler, requestExecutor, completionExecutor);
+            super(adapt(completionHandler), requestExecutor, completionExecutor);
+        }
+    }
+
+    /**
+     * Variant of {@link AsyncTaskRequest} for requests whose result is not a JSON object.
+     */
+    abstract class AsyncTypedRequest<T> extends FutureRequest<T> {
+        /**
+         * Construct a new request with the specified completion handler, executing on a lane of the client's
+         * scheduler, and calling the completion handler on the client's completion executor.
+         *
+         * @param completionHandler The completion handler to be notified of results. May be null if the caller omitted it.
+         * @param lane              Lane on which to execute the request.
+         */
+        AsyncTypedRequest(@Nullable ResultHandler<T> completionHandler, @NonNull RequestScheduler.Lane lane) {
+            super(completionHandler, scheduler.executor(lane), completionExecutor);
         }
     }
+
+    private static @Nullable FutureRequest.ResultHandler<JSONObject> adapt(@Nullable final CompletionHandler completionHandler) {
+        if (completionHandler == null) {
+            return null;
+        }
+        return new FutureRequest.ResultHandler<JSONObject>() {
+            @Override
+            public void requestCompleted(JSONObject content, SnoopyoException error) {
+                completionHandler.requestCompleted(content, error);
+            }
+        };
+    }
 }
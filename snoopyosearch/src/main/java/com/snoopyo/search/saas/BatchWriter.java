@@ -0,0 +1,111 @@
+package com.snoopyo.search.saas;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Streams the body of a batch request (<code>{"requests": [...]}</code>), serializing actions one at a time.
+ * <p>
+ * Only one action is held in memory at any time, whatever the number of actions: the actions array and its string
+ * representation are never built.
+ * </p>
+ */
+abstract class BatchWriter implements BodyWriter {
+    /** Number of actions in the batch. */
+    private final int count;
+
+    /**
+     * Construct a new batch writer.
+     *
+     * @param count Number of actions in the batch.
+     */
+    BatchWriter(int count) {
+        this.count = count;
+    }
+
+    @Override
+    public void writeTo(@NonNull OutputStream output) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, "UTF-8"), 8192);
+        writer.write("{\"requests\":[");
+        for (int i = 0; i < count; ++i) {
+            if (i != 0) {
+                writer.write(',');
+            }
+            try {
+                writeAction(writer, i);
+            } catch (JSONException e) {
+                throw new IOException("Failed to serialize action " + i + ": " + e.getMessage());
+            }
+        }
+        writer.write("]}");
+        writer.flush();
+    }
+
+    /**
+     * Write one action. To be implemented by derived classes.
+     *
+     * @param writer Writer to write to.
+     * @param index  Index of the action in the batch.
+     */
+    protected abstract void writeAction(@NonNull Writer writer, int index) throws IOException, JSONException;
+
+    /**
+     * Write one action.
+     *
+     * @param writer   Writer to write to.
+     * @param action   Name of the action.
+     * @param objectID Object ID the action applies to, if any.
+     * @param body     Serialized body of the action.
+     */
+    static void writeAction(@NonNull Writer writer, @NonNull String action, @Nullable String objectID, @NonNull String body) throws IOException {
+        writer.write("{\"action\":");
+        writer.write(JSONObject.quote(action));
+        if (objectID != null) {
+            writer.write(",\"objectID\":");
+            writer.write(JSONObject.quote(objectID));
+        }
+        writer.write(",\"body\":");
+        writer.write(body);
+        writer.write('}');
+    }
+
+    /**
+     * Serialize an object, failing instead of returning null.
+     */
+    static @NonNull String toString(@NonNull JSONObject object) throws JSONException {
+        String string = object.toString();
+        if (string == null) {
+            throw new JSONException("Object cannot be serialized");
+        }
+        return string;
+    }
+
+    /**
+     * Stream an array of pre-built actions.
+     *
+     * @param actions The actions.
+     * @return A batch writer for these actions.
+     * @throws JSONException If one of the actions is not an object.
+     */
+    static @NonNull BatchWriter forActions(@NonNull final JSONArray actions) throws JSONException {
+        for (int i = 0; i < actions.length(); ++i) {
+            actions.getJSONObject(i);
+        }
+        return new BatchWriter(actions.length()) {
+            @Override
+            protected void writeAction(@NonNull Writer writer, int index) throws IOException, JSONException {
+                writer.write(BatchWriter.toString(actions.getJSONObject(index)));
+            }
+        };
+    }
+}
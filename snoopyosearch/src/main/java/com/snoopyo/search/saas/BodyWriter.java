@@ -0,0 +1,22 @@
+package com.snoopyo.search.saas;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the body of an {@link HttpRequest} directly to the network, instead of building it in memory first.
+ * <p>
+ * A body writer may be called several times (once per host attempt): it must write the same content every time.
+ * </p>
+ */
+public interface BodyWriter {
+    /**
+     * Write the body.
+     *
+     * @param output Stream to write to. Should be flushed, but not closed.
+     * @throws IOException If the body could not be written.
+     */
+    void writeTo(@NonNull OutputStream output) throws IOException;
+}
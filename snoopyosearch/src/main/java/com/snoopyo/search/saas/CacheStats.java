@@ -0,0 +1,164 @@
+package com.snoopyo.search.saas;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A snapshot of a cache's statistics, to assess whether it helps and tune its timeout and size.
+ * <p>
+ * Counters are cumulative since the cache was enabled. Subtract two snapshots to get the statistics of a period.
+ * </p>
+ */
+public final class CacheStats {
+    private final long hitCount;
+    private final long staleHitCount;
+    private final long missCount;
+    private final long expirationCount;
+    private final long evictionCount;
+    private final long loadCount;
+    private final long totalLoadTime;
+    private final int entryCount;
+    private final long weight;
+    private final long diskWeight;
+
+    CacheStats(long hitCount, long staleHitCount, long missCount, long expirationCount, long evictionCount, long loadCount, long totalLoadTime, int entryCount, long weight, long diskWeight) {
+        this.hitCount = hitCount;
+        this.staleHitCount = staleHitCount;
+        this.missCount = missCount;
+        this.expirationCount = expirationCount;
+        this.evictionCount = evictionCount;
+        this.loadCount = loadCount;
+        this.totalLoadTime = totalLoadTime;
+        this.entryCount = entryCount;
+        this.weight = weight;
+        this.diskWeight = diskWeight;
+    }
+
+    /** Number of lookups answered from the cache, including stale hits. */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /** Number of lookups answered with an expired value, during the stale grace period. */
+    public long getStaleHitCount() {
+        return staleHitCount;
+    }
+
+    /** Number of lookups not answered from the cache. */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /** Ratio of lookups answered from the cache, between 0 and 1; 0 if there was no lookup. */
+    public double getHitRate() {
+        final long lookupCount = hitCount + missCount;
+        return lookupCount == 0 ? 0 : (double) hitCount / lookupCount;
+    }
+
+    /** Number of in-memory entries removed because they had expired. */
+    public long getExpirationCount() {
+        return expirationCount;
+    }
+
+    /** Number of in-memory entries evicted to fit the cache's size. */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /** Number of network requests performed to fill the cache. */
+    public long getLoadCount() {
+        return loadCount;
+    }
+
+    /** Total time spent in network requests filling the cache (ms). */
+    public long getTotalLoadTime() {
+        return totalLoadTime;
+    }
+
+    /** Average time of a network request filling the cache (ms); 0 if there was no request. */
+    public double getAverageLoadTime() {
+        return loadCount == 0 ? 0 : (double) totalLoadTime / loadCount;
+    }
+
+    /** Number of entries currently held in memory. */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /** Total size of the entries currently held in memory (bytes). */
+    public long getWeight() {
+        return weight;
+    }
+
+    /** Total size of the entries currently persisted on disk (bytes); 0 if the cache has no disk tier. */
+    public long getDiskWeight() {
+        return diskWeight;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hits=" + hitCount + ", staleHits=" + staleHitCount + ", misses=" + missCount
+                + ", expirations=" + expirationCount + ", evictions=" + evictionCount + ", loads=" + loadCount
+                + ", totalLoadTime=" + totalLoadTime + "ms, entries=" + entryCount + ", weight=" + weight
+                + ", diskWeight=" + diskWeight + "}";
+    }
+
+    /**
+     * Records the lookups and loads of a cache. Thread-safe.
+     */
+    static final class Recorder {
+        private final AtomicLong hitCount = new AtomicLong();
+        private final AtomicLong staleHitCount = new AtomicLong();
+        private final AtomicLong missCount = new AtomicLong();
+        private final AtomicLong loadCount = new AtomicLong();
+        private final AtomicLong totalLoadTimeNanos = new AtomicLong();
+
+        /**
+         * Record a lookup answered from the cache.
+         *
+         * @param stale Whether the value had expired.
+         */
+        void recordHit(boolean stale) {
+            hitCount.incrementAndGet();
+            if (stale) {
+                staleHitCount.incrementAndGet();
+            }
+        }
+
+        /**
+         * Record a lookup not answered from the cache.
+         */
+        void recordMiss() {
+            missCount.incrementAndGet();
+        }
+
+        /**
+         * Record a network request filling the cache.
+         *
+         * @param startTime Start time of the request, as returned by {@link System#nanoTime()}.
+         */
+        void recordLoad(long startTime) {
+            loadCount.incrementAndGet();
+            totalLoadTimeNanos.addAndGet(System.nanoTime() - startTime);
+        }
+
+        /**
+         * Take a snapshot of the statistics.
+         *
+         * @param cache     The in-memory cache, if enabled.
+         * @param diskCache The disk tier, if enabled.
+         */
+        @NonNull CacheStats snapshot(@Nullable ExpiringCache<?, ?> cache, @Nullable DiskCache diskCache) {
+            return new CacheStats(hitCount.get(), staleHitCount.get(), missCount.get(),
+                    cache != null ? cache.expirationCount() : 0,
+                    cache != null ? cache.evictionCount() : 0,
+                    loadCount.get(), TimeUnit.NANOSECONDS.toMillis(totalLoadTimeNanos.get()),
+                    cache != null ? cache.size() : 0,
+                    cache != null ? cache.weight() : 0,
+                    diskCache != null ? diskCache.size() : 0);
+        }
+    }
+}
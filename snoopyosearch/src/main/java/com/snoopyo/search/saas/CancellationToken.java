@@ -0,0 +1,74 @@
+package com.snoopyo.search.saas;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Signals the cancellation of a request to the code performing it.
+ * <p>
+ * A {@link Transport} should register a listener aborting the network exchange (e.g. closing the socket) for as long
+ * as the exchange is in progress, i.e. until the response is closed. This ensures that a cancelled request does not
+ * hold a thread until its timeout expires.
+ * </p>
+ */
+public class CancellationToken {
+    /** Whether cancellation has been requested. Guarded by `this`. */
+    private boolean cancelled = false;
+
+    /** Listeners to notify upon cancellation. Guarded by `this`. */
+    private final List<Runnable> listeners = new ArrayList<>();
+
+    /**
+     * Request cancellation. Listeners are notified on the calling thread. Subsequent calls have no effect.
+     */
+    public void cancel() {
+        List<Runnable> listenersToNotify;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            listenersToNotify = new ArrayList<>(listeners);
+            listeners.clear();
+        }
+        for (Runnable listener : listenersToNotify) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Test whether cancellation has been requested.
+     *
+     * @return true if cancelled, false otherwise.
+     */
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Register a listener to be notified upon cancellation.
+     * If cancellation has already been requested, the listener is called immediately, on the calling thread.
+     *
+     * @param listener The listener to register.
+     */
+    public void addListener(@NonNull Runnable listener) {
+        synchronized (this) {
+            if (!cancelled) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    /**
+     * Unregister a listener.
+     *
+     * @param listener The listener to unregister.
+     */
+    public synchronized void removeListener(@NonNull Runnable listener) {
+        listeners.remove(listener);
+    }
+}
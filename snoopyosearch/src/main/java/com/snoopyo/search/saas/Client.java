@@ -7,6 +7,7 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.lang.ref.WeakReference;
 import java.net.URLEncoder;
@@ -146,7 +147,7 @@ public class Client extends AbstractClient {
      * @return A cancellable request.
      */
     public Request listIndexesAsync(@Nullable final RequestOptions requestOptions, @NonNull CompletionHandler completionHandler) {
-        return new AsyncTaskRequest(completionHandler) {
+        return new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.READ) {
             @NonNull
             @Override
             protected JSONObject run() throws SnoopyoException {
@@ -174,7 +175,7 @@ public class Client extends AbstractClient {
      * @return A cancellable request.
      */
     public Request deleteIndexAsync(final @NonNull String indexName, @Nullable final RequestOptions requestOptions, CompletionHandler completionHandler) {
-        return new AsyncTaskRequest(completionHandler) {
+        return new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.WRITE) {
             @NonNull
             @Override
             protected JSONObject run() throws SnoopyoException {
@@ -206,7 +207,7 @@ public class Client extends AbstractClient {
      * @return A cancellable request.
      */
     public Request moveIndexAsync(final @NonNull String srcIndexName, final @NonNull String dstIndexName, @Nullable final RequestOptions requestOptions, CompletionHandler completionHandler) {
-        return new AsyncTaskRequest(completionHandler) {
+        return new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.WRITE) {
             @NonNull
             @Override
             protected JSONObject run() throws SnoopyoException {
@@ -241,7 +242,7 @@ public class Client extends AbstractClient {
      * @return A cancellable request.
      */
     public Request copyIndexAsync(final @NonNull String srcIndexName, final @NonNull String dstIndexName, @Nullable final RequestOptions requestOptions, CompletionHandler completionHandler) {
-        return new AsyncTaskRequest(completionHandler) {
+        return new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.WRITE) {
             @NonNull
             @Override
             protected JSONObject run() throws SnoopyoException {
@@ -294,7 +295,7 @@ public class Client extends AbstractClient {
      * @return A cancellable request.
      */
     public Request multipleQueriesAsync(final @NonNull List<IndexQuery> queries, final MultipleQueriesStrategy strategy, @Nullable final RequestOptions requestOptions, @NonNull CompletionHandler completionHandler) {
-        return new AsyncTaskRequest(completionHandler) {
+        return new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.SEARCH) {
             @NonNull
             @Override
             protected JSONObject run() throws SnoopyoException {
@@ -315,6 +316,32 @@ public class Client extends AbstractClient {
         return multipleQueriesAsync(queries, strategy, /* requestOptions: */ null, completionHandler);
     }
 
+    /**
+     * Run multiple queries, potentially targeting multiple indexes, with one API call, streaming hits as they are
+     * received.
+     * <p>
+     * Hits are parsed directly off the network and handed over to <code>hitHandler</code> one by one, on the
+     * request's thread. Once all hits have been received, <code>completionHandler</code> is notified with the rest
+     * of the response (i.e. all results, without their <code>hits</code> attribute).
+     * </p>
+     *
+     * @param queries           The queries to run.
+     * @param strategy          The strategy to use.
+     * @param requestOptions    Request-specific options.
+     * @param hitHandler        The handler receiving the hits of all queries.
+     * @param completionHandler The listener that will be notified of the request's outcome.
+     * @return A cancellable request.
+     */
+    public Request multipleQueriesStreamingAsync(final @NonNull List<IndexQuery> queries, final MultipleQueriesStrategy strategy, @Nullable final RequestOptions requestOptions, @NonNull final HitHandler hitHandler, @NonNull CompletionHandler completionHandler) {
+        return new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.SEARCH) {
+            @NonNull
+            @Override
+            protected JSONObject run() throws SnoopyoException {
+                return multipleQueriesStreaming(queries, strategy == null ? null : strategy.toString(), requestOptions, hitHandler);
+            }
+        }.start();
+    }
+
     /**
      * Batch operations.
      *
@@ -324,7 +351,7 @@ public class Client extends AbstractClient {
      * @return A cancellable request.
      */
     public Request batchAsync(final @NonNull JSONArray operations, @Nullable final RequestOptions requestOptions, CompletionHandler completionHandler) {
-        return new AsyncTaskRequest(completionHandler) {
+        return new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.WRITE) {
             @NonNull
             @Override
             protected JSONObject run() throws SnoopyoException {
@@ -416,6 +443,19 @@ public class Client extends AbstractClient {
     }
 
     protected JSONObject multipleQueries(List<IndexQuery> queries, String strategy, @Nullable RequestOptions requestOptions) throws SnoopyoException {
+        return postRequest("/1/indexes/*/queries", /* urlParameters: */ null, buildMultipleQueriesBody(queries, strategy), true, requestOptions);
+    }
+
+    protected JSONObject multipleQueriesStreaming(List<IndexQuery> queries, String strategy, @Nullable RequestOptions requestOptions, @NonNull final HitHandler hitHandler) throws SnoopyoException {
+        return postRequestStreamed("/1/indexes/*/queries", /* urlParameters: */ null, buildMultipleQueriesBody(queries, strategy), true, requestOptions, new ResponseReader<JSONObject>() {
+            @Override
+            public JSONObject read(@NonNull InputStream stream) throws SnoopyoException {
+                return JSONStreamParser.parseMultipleQueriesResults(stream, hitHandler);
+            }
+        });
+    }
+
+    private static String buildMultipleQueriesBody(List<IndexQuery> queries, String strategy) throws SnoopyoException {
         try {
             JSONArray requests = new JSONArray();
             for (IndexQuery indexQuery : queries) {
@@ -428,7 +468,7 @@ public class Client extends AbstractClient {
             if (strategy != null) {
                 body.put("strategy", strategy);
             }
-            return postRequest("/1/indexes/*/queries", /* urlParameters: */ null, body.toString(), true, requestOptions);
+            return body.toString();
         } catch (JSONException e) {
             throw new SnoopyoException(e.getMessage());
         }
@@ -443,9 +483,7 @@ public class Client extends AbstractClient {
      */
     protected JSONObject batch(JSONArray actions, @Nullable RequestOptions requestOptions) throws SnoopyoException {
         try {
-            JSONObject content = new JSONObject();
-            content.put("requests", actions);
-            return postRequest("/1/indexes/*/batch", /* urlParameters: */ null, content.toString(), false, requestOptions);
+            return postRequestStreamingBody("/1/indexes/*/batch", /* urlParameters: */ null, BatchWriter.forActions(actions), false, requestOptions);
         } catch (JSONException e) {
             throw new SnoopyoException(e.getMessage());
         }
@@ -0,0 +1,306 @@
+package com.snoopyo.search.saas;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// ----------------------------------------------------------------------
+// IMPLEMENTATION NOTES
+// ----------------------------------------------------------------------
+// Each entry is stored in its own file, named after the SHA-1 of its key.
+// A file holds a small header (format version, expiration time, key) in
+// front of the raw value. Files are written to a temporary file, then
+// renamed: a crash never leaves a truncated entry behind.
+//
+// The index of entries (size and recency) is kept in memory and rebuilt
+// from the directory listing on first use, using the files' modification
+// times as recency. File I/O happens outside of the lock: a file deleted
+// while being read yields either the full entry or a cache miss.
+// ----------------------------------------------------------------------
+
+/**
+ * A size-bounded, persistent cache of byte arrays with an expiration time.
+ * <p>
+ * The cache is best effort: I/O errors are treated as cache misses.
+ * </p>
+ * <p>
+ * NOTE: The directory must be dedicated to this cache, and must not be used by two caches at the same time.
+ * </p>
+ */
+class DiskCache {
+    private static final int FORMAT_VERSION = 2;
+    private static final String FILE_SUFFIX = ".v2.entry";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    /** Directory holding the entries. */
+    private final @NonNull File directory;
+
+    /** Maximum total size of the entries' files (bytes). */
+    private final long maxSize;
+
+    /** Size of the entries' files, by file name, in access order. Guarded by `this`. */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Total size of the entries' files (bytes). Guarded by `this`. */
+    private long size = 0;
+
+    /** Whether the index has been built from the directory. Guarded by `this`. */
+    private boolean loaded = false;
+
+    /**
+     * Construct a new disk cache.
+     *
+     * @param directory Directory holding the entries. Created if necessary.
+     * @param maxSize   Maximum total size of the entries (bytes).
+     */
+    DiskCache(@NonNull File directory, long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be positive");
+        }
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get a value from the cache, including a value that has expired less than <code>maxStaleness</code> ago.
+     * Values that expired before are removed.
+     *
+     * @param key          The value's key.
+     * @param maxStaleness Time after expiration during which a value may still be returned (ms).
+     * @return The cached value and its expiration time if found, else null.
+     */
+    @Nullable ExpiringCache.Entry<byte[]> get(@NonNull String key, long maxStaleness) {
+        final String fileName = fileName(key);
+        synchronized (this) {
+            ensureLoaded();
+            if (entries.get(fileName) == null) {
+                return null;
+            }
+        }
+        final File file = new File(directory, fileName);
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (input.readInt() != FORMAT_VERSION) {
+                removeFile(fileName);
+                return null;
+            }
+            long expirationTime = input.readLong();
+            byte[] storedKey = readBytes(input, file.length());
+            if (expirationTime + maxStaleness <= System.currentTimeMillis() || !Arrays.equals(storedKey, key.getBytes("UTF-8"))) {
+                removeFile(fileName);
+                return null;
+            }
+            byte[] value = readBytes(input, file.length());
+            // Persist recency across restarts.
+            file.setLastModified(System.currentTimeMillis());
+            return new ExpiringCache.Entry<>(value, expirationTime);
+        } catch (IOException e) {
+            removeFile(fileName);
+            return null;
+        } finally {
+            AbstractClient.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Read a length-prefixed byte array, checking the length before allocating it.
+     *
+     * @param input     The stream to read.
+     * @param maxLength Upper bound of a valid length, e.g. the size of the file.
+     * @return The bytes read.
+     * @throws IOException If the length is invalid (the entry is corrupt), or the bytes could not be read.
+     */
+    private static @NonNull byte[] readBytes(@NonNull DataInputStream input, long maxLength) throws IOException {
+        int length = input.readInt();
+        if (length < 0 || length > maxLength) {
+            throw new IOException("Corrupt cache entry (invalid length " + length + ")");
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Put a value in the cache, evicting the least recently used entries if necessary.
+     *
+     * @param key            The value's key.
+     * @param value          The value to store.
+     * @param expirationTime Time after which the value is invalid (ms since the epoch).
+     */
+    void put(@NonNull String key, @NonNull byte[] value, long expirationTime) {
+        final String fileName = fileName(key);
+        File tempFile = null;
+        DataOutputStream output = null;
+        try {
+            synchronized (this) {
+                ensureLoaded();
+            }
+            byte[] keyBytes = key.getBytes("UTF-8");
+            tempFile = File.createTempFile("entry", TEMP_FILE_SUFFIX, directory);
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            output.writeInt(FORMAT_VERSION);
+            output.writeLong(expirationTime);
+            output.writeInt(keyBytes.length);
+            output.write(keyBytes);
+            output.writeInt(value.length);
+            output.write(value);
+            output.close();
+            output = null;
+            long fileSize = tempFile.length();
+            synchronized (this) {
+                if (!tempFile.renameTo(new File(directory, fileName))) {
+                    return;
+                }
+                tempFile = null;
+                Long previousSize = entries.put(fileName, fileSize);
+                size += fileSize - (previousSize != null ? previousSize : 0);
+                trimToSize();
+            }
+        } catch (IOException e) {
+            // Best effort: nothing to do.
+        } finally {
+            AbstractClient.closeQuietly(output);
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Remove a value from the cache.
+     *
+     * @param key The value's key.
+     */
+    void remove(@NonNull String key) {
+        final String fileName = fileName(key);
+        synchronized (this) {
+            ensureLoaded();
+            removeFile(fileName);
+        }
+    }
+
+    /**
+     * Remove all entries from the cache.
+     */
+    synchronized void clear() {
+        ensureLoaded();
+        for (String fileName : entries.keySet()) {
+            new File(directory, fileName).delete();
+        }
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Get the total size of the entries currently in the cache.
+     *
+     * @return The size of the entries (bytes).
+     */
+    synchronized long size() {
+        ensureLoaded();
+        return size;
+    }
+
+    /**
+     * Get the maximum total size of the entries.
+     *
+     * @return The maximum size (bytes).
+     */
+    long maxSize() {
+        return maxSize;
+    }
+
+    // ----------------------------------------------------------------------
+    // Internal operations
+    // ----------------------------------------------------------------------
+
+    private synchronized void removeFile(@NonNull String fileName) {
+        Long fileSize = entries.remove(fileName);
+        if (fileSize != null) {
+            size -= fileSize;
+            new File(directory, fileName).delete();
+        }
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            new File(directory, eldest.getKey()).delete();
+            size -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        directory.mkdirs();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        // Rebuild the access order from the modification times.
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsTime = lhs.lastModified();
+                long rhsTime = rhs.lastModified();
+                return lhsTime < rhsTime ? -1 : (lhsTime == rhsTime ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            String fileName = file.getName();
+            if (fileName.endsWith(FILE_SUFFIX)) {
+                long fileSize = file.length();
+                entries.put(fileName, fileSize);
+                size += fileSize;
+            } else if (file.isFile()) {
+                file.delete(); // left over by an interrupted write, or by a previous format
+            }
+        }
+        trimToSize();
+    }
+
+    private static @NonNull String fileName(@NonNull String key) {
+        return digest("SHA-1", key) + FILE_SUFFIX;
+    }
+
+    /**
+     * Hash a string, e.g. to build a key that does not reveal its contents.
+     *
+     * @param algorithm The digest algorithm, e.g. <code>SHA-256</code>.
+     * @param text      The string to hash.
+     * @return The digest, in hexadecimal.
+     */
+    static @NonNull String digest(@NonNull String algorithm, @NonNull String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance(algorithm).digest(text.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new RuntimeException(e); // should never happen, as SHA-1, SHA-256 and UTF-8 are always supported
+        }
+    }
+}
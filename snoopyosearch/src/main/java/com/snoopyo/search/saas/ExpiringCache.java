@@ -1,12 +1,39 @@
 package com.snoopyo.search.saas;
 
-import android.support.v4.util.LruCache;
-import android.util.Pair;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+// ----------------------------------------------------------------------
+// IMPLEMENTATION NOTES
+// ----------------------------------------------------------------------
+// Entries live in a concurrent hash map, so that reads never lock.
+// The LRU order is kept in a doubly linked list, guarded by the eviction
+// lock, which all writes (put, remove, reset) take.
+//
+// A read cannot move its entry to the end of the list without the lock.
+// Instead, it records the access in a read buffer, which is drained
+// (replaying the accesses onto the list) by the next write, or by the
+// read filling the buffer if the lock happens to be free. If the buffer
+// overflows because the lock is busy, accesses are dropped: the LRU
+// order becomes approximate, but readers never wait.
+// ----------------------------------------------------------------------
 
 /**
  * A cache that holds strong references to a limited number of values for a limited time.
+ * <p>
+ * The cache is bounded either by its number of entries, or by the total weight of its entries as computed by a
+ * {@link Weigher} (e.g. their size in bytes).
+ * </p>
+ * <p>
+ * The cache is thread-safe. Reads never block each other.
+ * </p>
  */
 class ExpiringCache<K, V> {
     public static final TimeUnit expirationTimeUnit = TimeUnit.SECONDS;
@@ -14,17 +41,131 @@ class ExpiringCache<K, V> {
     public static final int defaultMaxSize = 64;
     public final int expirationTimeout; // Time after which a cache entry is invalidated
 
-    private final LruCache<K, Pair<V, Long>> lruCache;
+    /** Number of accesses buffered before trying to replay them onto the LRU list. */
+    private static final int READ_BUFFER_DRAIN_THRESHOLD = 32;
+
+    /** Maximum number of buffered accesses. Further accesses are dropped. */
+    private static final int READ_BUFFER_MAX_SIZE = 4 * READ_BUFFER_DRAIN_THRESHOLD;
+
+    /**
+     * Computes the weight of cache entries.
+     */
+    interface Weigher<K, V> {
+        /**
+         * Compute the weight of an entry. Must not change while the entry is in the cache.
+         *
+         * @return The entry's weight. Must not be negative.
+         */
+        int weightOf(@NonNull K key, @NonNull V value);
+    }
+
+    /**
+     * A value read from the cache, with its expiration time.
+     */
+    static class Entry<V> {
+        final @NonNull V value;
+
+        /** Time after which the value is invalid (ms since the epoch). */
+        final long expirationTime;
+
+        Entry(@NonNull V value, long expirationTime) {
+            this.value = value;
+            this.expirationTime = expirationTime;
+        }
+
+        /**
+         * @return true if the value has expired, i.e. is stale.
+         */
+        boolean isExpired() {
+            return expirationTime <= System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * An entry of the cache, and its position in the LRU list.
+     */
+    private static final class Node<K, V> {
+        final K key;
+        final V value;
+        final long expirationTime;
+        final int weight;
+
+        /** Neighbors in the LRU list; null when not in the list. Guarded by the eviction lock. */
+        Node<K, V> previous;
+        Node<K, V> next;
+
+        Node(K key, V value, long expirationTime, int weight) {
+            this.key = key;
+            this.value = value;
+            this.expirationTime = expirationTime;
+            this.weight = weight;
+        }
+    }
+
+    private final ConcurrentHashMap<K, Node<K, V>> map = new ConcurrentHashMap<>();
+
+    /** Guards the LRU list and all modifications of the map. */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /** Sentinel of the circular LRU list: `head.next` is the least recently used entry. */
+    private final Node<K, V> head = new Node<>(null, null, 0, 0);
+
+    /** Accesses not yet replayed onto the LRU list. */
+    private final Queue<Node<K, V>> readBuffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger readBufferSize = new AtomicInteger();
+
+    private final int maxSize;
+
+    /** Computes the weight of entries, if any. */
+    private final @Nullable Weigher<K, V> weigher;
+
+    /** Whether the cache is bounded by the weight of entries rather than their number. */
+    private final boolean boundedByWeight;
+
+    /** Number of entries in the cache. Modified with the eviction lock held. */
+    private volatile int entryCount = 0;
+
+    /** Total weight of the entries in the cache. Modified with the eviction lock held. */
+    private volatile long weight = 0;
+
+    /** Number of entries evicted to fit the cache's bound. Modified with the eviction lock held. */
+    private volatile long evictionCount = 0;
+
+    /** Number of entries removed because they had expired. Modified with the eviction lock held. */
+    private volatile long expirationCount = 0;
 
     public ExpiringCache(final int timeout, final int maxSize) {
-        lruCache = new LruCache<>(maxSize);
-        expirationTimeout = timeout;
+        this(timeout, maxSize, null, false);
     }
 
     public ExpiringCache() {
         this(defaultExpirationTimeout, defaultMaxSize);
     }
 
+    /**
+     * Construct a cache whose entries are weighed.
+     *
+     * @param timeout         Time after which a cache entry is invalidated.
+     * @param maxSize         Maximum total weight of entries if `boundedByWeight` is true, maximum number of
+     *                        entries otherwise.
+     * @param weigher         Computes the weight of entries.
+     * @param boundedByWeight Whether eviction is driven by the total weight of entries or by their number.
+     */
+    public ExpiringCache(final int timeout, final int maxSize, @Nullable final Weigher<K, V> weigher, final boolean boundedByWeight) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        if (boundedByWeight && weigher == null) {
+            throw new IllegalArgumentException("A weigher is required to bound the cache by weight");
+        }
+        this.maxSize = maxSize;
+        this.weigher = weigher;
+        this.boundedByWeight = boundedByWeight;
+        head.previous = head;
+        head.next = head;
+        expirationTimeout = timeout;
+    }
+
 
     /**
      * Puts a value in the cache, computing an expiration time
@@ -32,16 +173,34 @@ class ExpiringCache<K, V> {
      * @return the previous value for this key, if any
      */
     public V put(K key, V value) {
-        V previous = null;
+        return put(key, value, System.currentTimeMillis() + TimeUnit.MILLISECONDS.convert(expirationTimeout, expirationTimeUnit));
+    }
 
-        synchronized (this) {
-            long timeout = System.currentTimeMillis() + TimeUnit.MILLISECONDS.convert(expirationTimeout, expirationTimeUnit);
-            final Pair<V, Long> previousPair = lruCache.put(key, new Pair<>(value, timeout));
-            if (previousPair != null) {
-                previous = previousPair.first;
+    /**
+     * Puts a value in the cache, with an explicit expiration time
+     *
+     * @param expirationTime time after which the value is invalid (ms since the epoch)
+     * @return the previous value for this key, if any
+     */
+    public V put(K key, V value, long expirationTime) {
+        final Node<K, V> node = new Node<>(key, value, expirationTime, weightOf(key, value));
+        // An entry heavier than the whole cache would evict every other entry, then itself: don't store it.
+        if (boundedByWeight && node.weight > maxSize) {
+            return remove(key);
+        }
+        evictionLock.lock();
+        try {
+            drainReadBuffer();
+            final Node<K, V> previous = map.put(key, node);
+            if (previous != null) {
+                unlink(previous);
             }
+            linkLast(node);
+            evict();
+            return previous != null ? previous.value : null;
+        } finally {
+            evictionLock.unlock();
         }
-        return previous;
     }
 
     /**
@@ -49,29 +208,187 @@ class ExpiringCache<K, V> {
      *
      * @return the cached value if it is still valid, else null.
      */
-    synchronized public V get(K key) {
-        final Pair<V, Long> cachePair = lruCache.get(key);
-        if (cachePair != null && cachePair.first != null) {
-            if (cachePair.second > System.currentTimeMillis()) {
-                return cachePair.first;
-            } else {
-                lruCache.remove(key);
+    public V get(K key) {
+        final Entry<V> entry = getEntry(key, 0);
+        return entry != null ? entry.value : null;
+    }
+
+    /**
+     * Get a value from the cache, including a value that has expired less than <code>maxStaleness</code> ago.
+     * Values that expired before are removed.
+     *
+     * @param maxStaleness time after expiration during which a value may still be returned (ms)
+     * @return the cached value and its expiration time if found, else null.
+     */
+    public @Nullable Entry<V> getEntry(K key, long maxStaleness) {
+        final Node<K, V> node = map.get(key);
+        if (node == null) {
+            return null;
+        }
+        if (node.expirationTime + maxStaleness <= System.currentTimeMillis()) {
+            removeExpiredNode(node);
+            return null;
+        }
+        recordAccess(node);
+        return new Entry<>(node.value, node.expirationTime);
+    }
+
+    /**
+     * Remove a value from the cache.
+     *
+     * @return the removed value, if any
+     */
+    public V remove(K key) {
+        evictionLock.lock();
+        try {
+            final Node<K, V> node = map.remove(key);
+            if (node == null) {
+                return null;
             }
+            unlink(node);
+            return node.value;
+        } finally {
+            evictionLock.unlock();
         }
-        return null;
     }
 
     /**
      * @return the number of entries in the cache.
      */
     public int size() {
-        return lruCache.size();
+        return entryCount;
+    }
+
+    /**
+     * @return the total weight of the entries in the cache, or their number if the cache has no weigher.
+     */
+    public long weight() {
+        return weight;
+    }
+
+    /**
+     * @return the maximum total weight of entries if the cache is bounded by weight, else the maximum number of
+     * entries.
+     */
+    public int maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return true if the cache is bounded by the total weight of entries, false if by their number.
+     */
+    public boolean isBoundedByWeight() {
+        return boundedByWeight;
+    }
+
+    /**
+     * @return the number of entries evicted so far to fit the cache's bound.
+     */
+    public long evictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return the number of entries removed so far because they had expired.
+     */
+    public long expirationCount() {
+        return expirationCount;
     }
 
     /**
      * Reset the cache, keeping the current settings.
      */
     public void reset() {
-        lruCache.evictAll();
+        evictionLock.lock();
+        try {
+            drainReadBuffer();
+            while (head.next != head) {
+                final Node<K, V> node = head.next;
+                map.remove(node.key, node);
+                unlink(node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // LRU bookkeeping
+    // ----------------------------------------------------------------------
+
+    private void recordAccess(@NonNull Node<K, V> node) {
+        final int pendingAccesses = readBufferSize.get();
+        if (pendingAccesses < READ_BUFFER_MAX_SIZE) {
+            readBuffer.offer(node);
+            readBufferSize.incrementAndGet();
+        }
+        if (pendingAccesses + 1 >= READ_BUFFER_DRAIN_THRESHOLD && evictionLock.tryLock()) {
+            try {
+                drainReadBuffer();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void removeExpiredNode(@NonNull Node<K, V> node) {
+        evictionLock.lock();
+        try {
+            if (map.remove(node.key, node)) {
+                unlink(node);
+                expirationCount = expirationCount + 1;
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /** Replay buffered accesses onto the LRU list. Must be called with the eviction lock held. */
+    private void drainReadBuffer() {
+        Node<K, V> node;
+        while ((node = readBuffer.poll()) != null) {
+            readBufferSize.decrementAndGet();
+            if (node.next != null) { // still in the cache
+                unlink(node);
+                linkLast(node);
+            }
+        }
+    }
+
+    /** Evict the least recently used entries until the cache fits its bound. Must be called with the lock held. */
+    private void evict() {
+        while (head.next != head && (boundedByWeight ? weight > maxSize : entryCount > maxSize)) {
+            final Node<K, V> eldest = head.next;
+            map.remove(eldest.key, eldest);
+            unlink(eldest);
+            evictionCount = evictionCount + 1;
+        }
+    }
+
+    /** Append a node at the most recently used end of the list. Must be called with the eviction lock held. */
+    private void linkLast(@NonNull Node<K, V> node) {
+        node.previous = head.previous;
+        node.next = head;
+        head.previous.next = node;
+        head.previous = node;
+        entryCount = entryCount + 1;
+        weight = weight + node.weight;
+    }
+
+    /** Remove a node from the list. Must be called with the eviction lock held. */
+    private void unlink(@NonNull Node<K, V> node) {
+        if (node.next == null) {
+            return; // already unlinked
+        }
+        node.previous.next = node.next;
+        node.next.previous = node.previous;
+        node.previous = null;
+        node.next = null;
+        entryCount = entryCount - 1;
+        weight = weight - node.weight;
+    }
+
+    private int weightOf(K key, V value) {
+        return weigher != null ? weigher.weightOf(key, value) : 1;
     }
 }
@@ -4,22 +4,30 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
-import org.json.JSONObject;
-
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Abstract {@link Request} implementation, using a {@link java.util.concurrent.Future Future} internally.
  * Derived classes just have to implement the {@link #run()} method.
+ *
+ * @param <T> Type of the request's result.
  */
-abstract class FutureRequest implements Request {
+abstract class FutureRequest<T> implements Request {
+    /**
+     * Receives the outcome of a {@link FutureRequest}. This is a generic version of {@link CompletionHandler}.
+     */
+    interface ResultHandler<T> {
+        void requestCompleted(T content, SnoopyoException error);
+    }
+
     /** The completion handler notified of the result. May be null if the caller omitted it. */
     private final @Nullable
-    CompletionHandler completionHandler;
+    ResultHandler<T> completionHandler;
 
     /** The executor used to execute the request. */
     private final @NonNull Executor requestExecutor;
@@ -27,14 +35,40 @@ abstract class FutureRequest implements Request {
     /** The executor used to execute the completion handler. */
     private final @NonNull Executor completionExecutor;
 
+    /** Executor running tasks on the calling thread. */
+    static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    /** Completion executor overriding the client's for the requests created on each thread, if any. */
+    private static final ThreadLocal<Executor> completionExecutorOverride = new ThreadLocal<>();
+
+    /** Cancellation token of the request currently running on each thread, if any. */
+    private static final ThreadLocal<CancellationToken> currentCancellationToken = new ThreadLocal<>();
+
+    /** Token used to abort network calls when this request is cancelled. */
+    private final @NonNull CancellationToken cancellationToken = new CancellationToken();
+
+    /** Error failing the request without running it, if the executor rejected it. */
+    private volatile SnoopyoException rejectionError;
+
     /** The callable running the request. */
-    private Callable<APIResult> callable = new Callable<APIResult>() {
+    private Callable<APIResult<T>> callable = new Callable<APIResult<T>>() {
         @Override
-        public APIResult call() throws Exception {
+        public APIResult<T> call() throws Exception {
+            if (rejectionError != null) {
+                return new APIResult<>(rejectionError);
+            }
+            currentCancellationToken.set(cancellationToken);
             try {
-                return new APIResult(run());
+                return new APIResult<>(run());
             } catch (SnoopyoException e) {
-                return new APIResult(e);
+                return new APIResult<>(e);
+            } finally {
+                currentCancellationToken.remove();
             }
         }
     };
@@ -44,14 +78,14 @@ abstract class FutureRequest implements Request {
      * Compared to the raw `Callable`, the future gives us cancellation (built-in) and completion (the overridden
      * `done()` method).
      */
-    private FutureTask<APIResult> task = new FutureTask<APIResult>(callable) {
+    private FutureTask<APIResult<T>> task = new FutureTask<APIResult<T>>(callable) {
         @Override
         protected void done() {
             if (completionHandler == null) {
                 return;
             }
             try {
-                final APIResult result = get();
+                final APIResult<T> result = get();
                 completionExecutor.execute(new Runnable() {
                     @Override
                     public void run() {
@@ -81,12 +115,13 @@ abstract class FutureRequest implements Request {
      *
      * @param completionHandler The completion handler to be notified of results. May be null if the caller omitted it.
      * @param requestExecutor Executor on which to execute the request.
-     * @param completionExecutor Executor on which to call the completion handler.
+     * @param completionExecutor Executor on which to call the completion handler, unless overridden on the calling
+     *                           thread (see {@link #currentCompletionExecutor(Executor)}).
      */
-    FutureRequest(@Nullable CompletionHandler completionHandler, @NonNull Executor requestExecutor, @NonNull Executor completionExecutor) {
+    FutureRequest(@Nullable ResultHandler<T> completionHandler, @NonNull Executor requestExecutor, @NonNull Executor completionExecutor) {
         this.completionHandler = completionHandler;
         this.requestExecutor = requestExecutor;
-        this.completionExecutor = completionExecutor;
+        this.completionExecutor = currentCompletionExecutor(completionExecutor);
     }
 
     /**
@@ -100,15 +135,21 @@ abstract class FutureRequest implements Request {
      * @throws SnoopyoException If an error was encountered.
      */
     @NonNull
-    abstract protected JSONObject run() throws SnoopyoException;
+    abstract protected T run() throws SnoopyoException;
 
     /**
      * Run this request asynchronously.
      *
      * @return This instance.
      */
-    public FutureRequest start() {
-        requestExecutor.execute(task);
+    public FutureRequest<T> start() {
+        try {
+            requestExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Fail the request through its completion handler, like any other error.
+            rejectionError = new SnoopyoException("Request rejected: " + e.getMessage(), e);
+            task.run();
+        }
         return this;
     }
 
@@ -125,6 +166,61 @@ abstract class FutureRequest implements Request {
     public void cancel() {
         // NOTE: We interrupt the task's thread to better cope with timeouts.
         task.cancel(true /* mayInterruptIfRunning */);
+        // Interrupting does not unblock network I/O: abort it explicitly.
+        cancellationToken.cancel();
+    }
+
+    /**
+     * Get the cancellation token of the request running on the calling thread.
+     *
+     * @return The token, or null if the calling thread is not running a request (e.g. synchronous calls).
+     */
+    static @Nullable CancellationToken currentCancellationToken() {
+        return currentCancellationToken.get();
+    }
+
+    /**
+     * Replace the cancellation token of the calling thread, e.g. to run work shared by several requests.
+     *
+     * @param cancellationToken The new token, or null to remove it.
+     * @return The previous token, to be restored afterwards.
+     */
+    static @Nullable CancellationToken setCurrentCancellationToken(@Nullable CancellationToken cancellationToken) {
+        CancellationToken previous = currentCancellationToken.get();
+        if (cancellationToken != null) {
+            currentCancellationToken.set(cancellationToken);
+        } else {
+            currentCancellationToken.remove();
+        }
+        return previous;
+    }
+
+    /**
+     * Get the completion executor of the requests created on the calling thread.
+     *
+     * @param defaultExecutor The executor to use if not overridden.
+     * @return The overriding executor if any, otherwise the default one.
+     */
+    static @NonNull Executor currentCompletionExecutor(@NonNull Executor defaultExecutor) {
+        Executor executor = completionExecutorOverride.get();
+        return executor != null ? executor : defaultExecutor;
+    }
+
+    /**
+     * Override the completion executor of the requests created on the calling thread, e.g. to chain requests
+     * without going through the main thread.
+     *
+     * @param executor The new executor, or null to remove the override.
+     * @return The previous override, to be restored afterwards.
+     */
+    static @Nullable Executor setCompletionExecutorOverride(@Nullable Executor executor) {
+        Executor previous = completionExecutorOverride.get();
+        if (executor != null) {
+            completionExecutorOverride.set(executor);
+        } else {
+            completionExecutorOverride.remove();
+        }
+        return previous;
     }
 
     /**
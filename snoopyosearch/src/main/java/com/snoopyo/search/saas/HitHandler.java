@@ -0,0 +1,23 @@
+package com.snoopyo.search.saas;
+
+import android.support.annotation.NonNull;
+
+import org.json.JSONObject;
+
+/**
+ * Receives search hits one by one, as they are parsed off the network.
+ * <p>
+ * WARNING: Unlike {@link CompletionHandler}, this handler is called on the thread performing the request (i.e. a
+ * background thread for asynchronous requests).
+ * </p>
+ */
+public interface HitHandler {
+    /**
+     * Called for each hit, in the order returned by the API.
+     *
+     * @param hit          The hit.
+     * @param resultsIndex Index of the results the hit belongs to: always 0 for a single search; position of the
+     *                     corresponding query when running multiple queries.
+     */
+    void handleHit(@NonNull JSONObject hit, int resultsIndex);
+}
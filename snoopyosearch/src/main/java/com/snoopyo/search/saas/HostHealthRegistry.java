@@ -0,0 +1,282 @@
+package com.snoopyo.search.saas;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// ----------------------------------------------------------------------
+// IMPLEMENTATION NOTES
+// ----------------------------------------------------------------------
+// Each host has a circuit breaker:
+// - CLOSED: the host is healthy; requests go through.
+// - OPEN: the host failed to respond; requests are rejected until the
+//   host down delay has elapsed.
+// - HALF_OPEN: the delay has elapsed; exactly one probe request is let
+//   through. Its outcome closes or re-opens the circuit.
+// When every circuit is open and still waiting for its delay (e.g. after
+// a network outage), failing without trying would only delay recovery:
+// the client probes the hosts early instead. It still admits a single
+// probe per host, so that recovery is not a thundering herd. A host
+// whose probe is in flight is not down: its recovery is pending, and
+// requests wait for its outcome rather than forcing their way through.
+//
+// The health of a host is an immutable snapshot, swapped atomically with
+// compare-and-set: readers never block, and concurrent updates never
+// lose each other's transitions.
+// ----------------------------------------------------------------------
+
+/**
+ * Thread-safe registry of the health of the hosts used by a client.
+ */
+class HostHealthRegistry {
+    /** State of a host's circuit breaker. */
+    enum CircuitState {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /** Weight of the latest observation in the moving averages. */
+    private final static double EWMA_ALPHA = 0.3;
+
+    /**
+     * Immutable snapshot of the health of a host.
+     */
+    static class Health {
+        final @NonNull CircuitState state;
+
+        /** Time of the last state change (ms since the epoch). */
+        final long lastTryTimestamp;
+
+        /** Exponentially weighted moving average of the latency (ms), or -1 if unknown. */
+        final double latency;
+
+        /** Exponentially weighted moving average of the error rate (between 0 and 1). */
+        final double errorRate;
+
+        Health(@NonNull CircuitState state, long lastTryTimestamp, double latency, double errorRate) {
+            this.state = state;
+            this.lastTryTimestamp = lastTryTimestamp;
+            this.latency = latency;
+            this.errorRate = errorRate;
+        }
+
+        /**
+         * Compute the expected response time of the host, penalizing errors.
+         *
+         * @return The expected response time (ms). 0 if unknown, so that unknown hosts get tried.
+         */
+        double expectedLatency() {
+            if (latency < 0) {
+                return 0;
+            }
+            // An error costs (at least) a full round trip to the next host: penalize accordingly.
+            return latency / Math.max(1 - errorRate, 0.01);
+        }
+    }
+
+    /**
+     * Health and performance of a host, as observed by the client.
+     */
+    static class HostStatus {
+        private final AtomicReference<Health> health = new AtomicReference<>(new Health(CircuitState.CLOSED, 0, -1, 0));
+
+        /** Number of requests currently in flight. */
+        private final AtomicInteger outstandingRequests = new AtomicInteger();
+
+        /** Get a snapshot of the host's health. */
+        @NonNull Health getHealth() {
+            return health.get();
+        }
+
+        /** Get the number of requests currently in flight. */
+        int getOutstandingRequests() {
+            return outstandingRequests.get();
+        }
+
+        /**
+         * Test whether a request could be sent to this host right now, without admitting it.
+         *
+         * @param hostDownDelay Delay to wait when a host is down before retrying it (ms).
+         */
+        boolean isAvailable(long hostDownDelay) {
+            Health current = health.get();
+            switch (current.state) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    return System.currentTimeMillis() - current.lastTryTimestamp >= hostDownDelay;
+                default: // a probe is in flight
+                    return false;
+            }
+        }
+
+        /**
+         * Test whether this host is down and waiting for the host down delay to elapse, i.e. its circuit is open and
+         * it cannot be probed yet.
+         *
+         * @param hostDownDelay Delay to wait when a host is down before retrying it (ms).
+         */
+        boolean isDown(long hostDownDelay) {
+            Health current = health.get();
+            return current.state == CircuitState.OPEN && System.currentTimeMillis() - current.lastTryTimestamp < hostDownDelay;
+        }
+
+        /**
+         * Try to admit a request to this host. When the circuit is open and the host down delay has elapsed, only one
+         * caller gets admitted: its request is the probe deciding whether the host is back.
+         * On success, the caller must report the outcome of the request.
+         *
+         * @param hostDownDelay Delay to wait when a host is down before retrying it (ms). Pass 0 to probe a down host
+         *                      early; only one probe is admitted all the same.
+         * @return true if the request may be sent, false if it must be skipped.
+         */
+        boolean tryAcquire(long hostDownDelay) {
+            while (true) {
+                Health current = health.get();
+                switch (current.state) {
+                    case CLOSED:
+                        outstandingRequests.incrementAndGet();
+                        return true;
+                    case OPEN:
+                        long now = System.currentTimeMillis();
+                        if (now - current.lastTryTimestamp < hostDownDelay) {
+                            return false;
+                        }
+                        Health probing = new Health(CircuitState.HALF_OPEN, now, current.latency, current.errorRate);
+                        if (health.compareAndSet(current, probing)) {
+                            outstandingRequests.incrementAndGet();
+                            return true;
+                        }
+                        break; // lost the race: check again
+                    default: // a probe is already in flight
+                        return false;
+                }
+            }
+        }
+
+        /**
+         * Report that the host responded successfully (or with a client error).
+         *
+         * @param latency Time until the response headers were received (ms).
+         */
+        void requestSucceeded(long latency) {
+            outstandingRequests.decrementAndGet();
+            while (true) {
+                Health current = health.get();
+                double newLatency = current.latency < 0 ? latency : EWMA_ALPHA * latency + (1 - EWMA_ALPHA) * current.latency;
+                Health updated = new Health(CircuitState.CLOSED, System.currentTimeMillis(), newLatency, (1 - EWMA_ALPHA) * current.errorRate);
+                if (health.compareAndSet(current, updated)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Report that a request to the host was aborted before completion (e.g. because it was cancelled).
+         * If the request was a probe, another probe may be sent right away.
+         */
+        void requestAbandoned() {
+            outstandingRequests.decrementAndGet();
+            while (true) {
+                Health current = health.get();
+                if (current.state != CircuitState.HALF_OPEN) {
+                    return;
+                }
+                Health updated = new Health(CircuitState.OPEN, 0, current.latency, current.errorRate);
+                if (health.compareAndSet(current, updated)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Report that a request to the host failed.
+         *
+         * @param reachable true if the host responded (with an error other than a client error), false if it could not
+         *                  be reached.
+         *                  Unreachable hosts have their circuit opened.
+         */
+        void requestFailed(boolean reachable) {
+            outstandingRequests.decrementAndGet();
+            while (true) {
+                Health current = health.get();
+                CircuitState state = reachable ? CircuitState.CLOSED : CircuitState.OPEN;
+                Health updated = new Health(state, System.currentTimeMillis(), current.latency, EWMA_ALPHA + (1 - EWMA_ALPHA) * current.errorRate);
+                if (health.compareAndSet(current, updated)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private final ConcurrentMap<String, HostStatus> statuses = new ConcurrentHashMap<>();
+
+    /**
+     * Get the status of a host, creating it if necessary.
+     *
+     * @param host The host's name.
+     * @return The host's status.
+     */
+    @NonNull HostStatus getStatus(@NonNull String host) {
+        HostStatus status = statuses.get(host);
+        if (status == null) {
+            HostStatus newStatus = new HostStatus();
+            status = statuses.putIfAbsent(host, newStatus);
+            if (status == null) {
+                status = newStatus;
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Get the status of a host, if known.
+     *
+     * @param host The host's name.
+     * @return The host's status, or null if no request was ever sent to it.
+     */
+    @Nullable HostStatus peekStatus(@NonNull String host) {
+        return statuses.get(host);
+    }
+
+    /**
+     * Test whether all hosts in a list are down and waiting for the host down delay to elapse. Hosts never used, or
+     * whose probe is in flight, are not down.
+     *
+     * @param hosts         The hosts to check.
+     * @param hostDownDelay Delay to wait when a host is down before retrying it (ms).
+     * @return true if no host can accept or probe a request before its delay elapses.
+     */
+    boolean allHostsDown(@NonNull List<String> hosts, long hostDownDelay) {
+        for (String host : hosts) {
+            HostStatus status = statuses.get(host);
+            if (status == null || !status.isDown(hostDownDelay)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the hosts that may accept requests in a given list.
+     *
+     * @param hosts         The hosts to check.
+     * @param hostDownDelay Delay to wait when a host is down before retrying it (ms).
+     * @return The available hosts. May be empty, e.g. when all circuits are open.
+     */
+    @NonNull List<String> availableHosts(@NonNull List<String> hosts, long hostDownDelay) {
+        List<String> availableHosts = new ArrayList<>(hosts.size());
+        for (String host : hosts) {
+            HostStatus status = statuses.get(host);
+            if (status == null || status.isAvailable(hostDownDelay)) {
+                availableHosts.add(host);
+            }
+        }
+        return availableHosts;
+    }
+}
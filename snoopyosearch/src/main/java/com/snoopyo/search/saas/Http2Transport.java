@@ -0,0 +1,172 @@
+package com.snoopyo.search.saas;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+
+/**
+ * A {@link Transport} multiplexing concurrent requests to the same host over a single HTTP/2 connection.
+ * <p>
+ * Searches running in parallel on the client's executor share one connection per host instead of opening a socket
+ * each, so that only the first request to a host pays the TCP and TLS handshakes. When a host does not negotiate
+ * HTTP/2, the transport falls back to pooled HTTP/1.1 connections.
+ * </p>
+ * <p>
+ * NOTE: This transport is backed by <a href="https://square.github.io/okhttp/">OkHttp</a>, which is an optional
+ * dependency of this library. To use it, add <code>com.squareup.okhttp3:okhttp</code> (3.12.x or later) to your
+ * application's dependencies.
+ * </p>
+ */
+public class Http2Transport implements Transport {
+    /** Underlying client. Shared by all derived clients, so that they use the same connection pool. */
+    private final @NonNull OkHttpClient okHttpClient;
+
+    /** Client derived for the latest timeouts used, if any. */
+    private volatile OkHttpClient lastDerivedClient;
+
+    /**
+     * Create a new transport with a default OkHttp client.
+     */
+    public Http2Transport() {
+        this(new OkHttpClient());
+    }
+
+    /**
+     * Create a new transport sharing the connection pool and configuration of an existing OkHttp client.
+     *
+     * @param okHttpClient The client to derive from. Its timeouts will be overridden on a per-request basis.
+     */
+    public Http2Transport(@NonNull OkHttpClient okHttpClient) {
+        this.okHttpClient = okHttpClient.newBuilder()
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                // Retries across hosts are handled by the API client.
+                .retryOnConnectionFailure(false)
+                .build();
+    }
+
+    /**
+     * Count the connections currently open by this transport, all hosts included.
+     *
+     * @return The number of open connections.
+     */
+    public int getConnectionCount() {
+        return okHttpClient.connectionPool().connectionCount();
+    }
+
+    @Override
+    public @NonNull HttpResponse execute(@NonNull HttpRequest request) throws IOException {
+        okhttp3.Request.Builder builder = new okhttp3.Request.Builder().url(request.url);
+        for (Map.Entry<String, String> entry : request.headers.entrySet()) {
+            if (entry.getValue() != null) {
+                builder.header(entry.getKey(), entry.getValue());
+            }
+        }
+        RequestBody body = null;
+        if (request.body != null) {
+            body = RequestBody.create(null, request.body);
+        } else if (request.bodyWriter != null) {
+            final BodyWriter bodyWriter = request.bodyWriter;
+            body = new RequestBody() {
+                @Override
+                public MediaType contentType() {
+                    return null;
+                }
+
+                @Override
+                public long contentLength() {
+                    return -1; // unknown: streamed
+                }
+
+                @Override
+                public void writeTo(@NonNull BufferedSink sink) throws IOException {
+                    bodyWriter.writeTo(sink.outputStream());
+                }
+            };
+        } else if (request.method.equals("POST") || request.method.equals("PUT")) {
+            body = RequestBody.create(null, new byte[0]);
+        }
+        builder.method(request.method, body);
+
+        final Call call = clientFor(request.connectTimeout, request.readTimeout).newCall(builder.build());
+        final Runnable abort = new Runnable() {
+            @Override
+            public void run() {
+                call.cancel();
+            }
+        };
+        final CancellationToken cancellationToken = request.cancellationToken;
+        if (cancellationToken != null) {
+            cancellationToken.addListener(abort);
+        }
+        final Response response;
+        try {
+            response = call.execute();
+        } catch (IOException e) {
+            if (cancellationToken != null) {
+                cancellationToken.removeListener(abort);
+            }
+            throw e;
+        }
+        Map<String, String> headers = new HashMap<>();
+        Headers responseHeaders = response.headers();
+        for (String name : responseHeaders.names()) {
+            headers.put(name, join(responseHeaders.values(name)));
+        }
+        final ResponseBody responseBody = response.body();
+        return new HttpResponse(response.code(), headers, responseBody == null ? null : responseBody.byteStream()) {
+            @Override
+            public void close() throws IOException {
+                if (cancellationToken != null) {
+                    cancellationToken.removeListener(abort);
+                }
+                response.close();
+            }
+        };
+    }
+
+    /**
+     * Get a client with the specified timeouts.
+     * <p>
+     * Deriving a client is cheap (it shares the connection pool and dispatcher), but requests with a deadline get
+     * timeouts computed from their remaining time, so nearly every one of them needs its own. Only the latest derived
+     * client is kept, which serves the common case of requests without a deadline.
+     * </p>
+     */
+    private @NonNull OkHttpClient clientFor(int connectTimeout, int readTimeout) {
+        OkHttpClient client = lastDerivedClient;
+        if (client != null && client.connectTimeoutMillis() == connectTimeout && client.readTimeoutMillis() == readTimeout) {
+            return client;
+        }
+        client = okHttpClient.newBuilder()
+                .connectTimeout(connectTimeout, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeout, TimeUnit.MILLISECONDS)
+                .build();
+        lastDerivedClient = client;
+        return client;
+    }
+
+    private static String join(Iterable<String> values) {
+        StringBuilder builder = new StringBuilder();
+        for (String value : values) {
+            if (builder.length() != 0) {
+                builder.append(", ");
+            }
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,147 @@
+package com.snoopyo.search.saas;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An HTTP request, as handed over to a {@link Transport}.
+ * Instances are immutable.
+ */
+public class HttpRequest {
+    /** HTTP method (<code>GET</code>, <code>POST</code>...). */
+    public final @NonNull String method;
+
+    /** Absolute URL, including the query string. */
+    public final @NonNull URL url;
+
+    /** Request headers. Names are case-insensitive. */
+    public final @NonNull Map<String, String> headers;
+
+    /** Body of the request, if any and known in advance. */
+    public final @Nullable byte[] body;
+
+    /**
+     * Writer streaming the body of the request, if any and not known in advance. The body's length is not known:
+     * transports should use chunked transfer encoding.
+     */
+    public final @Nullable BodyWriter bodyWriter;
+
+    /** Maximum time to wait for the connection to be established (ms). */
+    public final int connectTimeout;
+
+    /** Maximum time to wait for data on the socket (ms). */
+    public final int readTimeout;
+
+    /** Token signalling cancellation of the request, if it can be cancelled. */
+    public final @Nullable CancellationToken cancellationToken;
+
+    /**
+     * Construct a new request.
+     *
+     * @param method         HTTP method.
+     * @param url            Absolute URL, including the query string.
+     * @param headers        Request headers.
+     * @param body           Body of the request, or null if it has none.
+     * @param connectTimeout Connect timeout (ms).
+     * @param readTimeout    Read timeout (ms).
+     */
+    public HttpRequest(@NonNull String method, @NonNull URL url, @NonNull Map<String, String> headers, @Nullable byte[] body, int connectTimeout, int readTimeout) {
+        this(method, url, headers, body, connectTimeout, readTimeout, null);
+    }
+
+    /**
+     * Construct a new, cancellable request.
+     *
+     * @param method            HTTP method.
+     * @param url               Absolute URL, including the query string.
+     * @param headers           Request headers.
+     * @param body              Body of the request, or null if it has none.
+     * @param connectTimeout    Connect timeout (ms).
+     * @param readTimeout       Read timeout (ms).
+     * @param cancellationToken Token signalling cancellation of the request, or null if it cannot be cancelled.
+     */
+    public HttpRequest(@NonNull String method, @NonNull URL url, @NonNull Map<String, String> headers, @Nullable byte[] body, int connectTimeout, int readTimeout, @Nullable CancellationToken cancellationToken) {
+        this(method, url, headers, body, null, connectTimeout, readTimeout, cancellationToken);
+    }
+
+    /**
+     * Construct a new, cancellable request, whose body may be streamed.
+     *
+     * @param method            HTTP method.
+     * @param url               Absolute URL, including the query string.
+     * @param headers           Request headers.
+     * @param body              Body of the request, or null if it has none or if it is streamed.
+     * @param bodyWriter        Writer streaming the body of the request, or null if it has none or if it is known in
+     *                          advance. Cannot be used together with <code>body</code>.
+     * @param connectTimeout    Connect timeout (ms).
+     * @param readTimeout       Read timeout (ms).
+     * @param cancellationToken Token signalling cancellation of the request, or null if it cannot be cancelled.
+     */
+    public HttpRequest(@NonNull String method, @NonNull URL url, @NonNull Map<String, String> headers, @Nullable byte[] body, @Nullable BodyWriter bodyWriter, int connectTimeout, int readTimeout, @Nullable CancellationToken cancellationToken) {
+        if (body != null && bodyWriter != null) {
+            throw new IllegalArgumentException("A request cannot have both a body and a body writer");
+        }
+        this.method = method;
+        this.url = url;
+        Map<String, String> headersCopy = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headersCopy.putAll(headers);
+        this.headers = Collections.unmodifiableMap(headersCopy);
+        this.body = body;
+        this.bodyWriter = bodyWriter;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.cancellationToken = cancellationToken;
+    }
+
+    /**
+     * Derive a request with different timeouts.
+     *
+     * @param connectTimeout Connect timeout (ms).
+     * @param readTimeout    Read timeout (ms).
+     * @return A new request, identical to this one except for its timeouts.
+     */
+    public @NonNull HttpRequest withTimeouts(int connectTimeout, int readTimeout) {
+        if (connectTimeout == this.connectTimeout && readTimeout == this.readTimeout) {
+            return this;
+        }
+        return new HttpRequest(method, url, headers, body, bodyWriter, connectTimeout, readTimeout, cancellationToken);
+    }
+
+    /**
+     * Derive a request with a different cancellation token.
+     *
+     * @param cancellationToken Token signalling cancellation of the request, or null if it cannot be cancelled.
+     * @return A new request, identical to this one except for its cancellation token.
+     */
+    public @NonNull HttpRequest withCancellationToken(@Nullable CancellationToken cancellationToken) {
+        return new HttpRequest(method, url, headers, body, bodyWriter, connectTimeout, readTimeout, cancellationToken);
+    }
+
+    /**
+     * Test whether this request has a body (be it known in advance or streamed).
+     *
+     * @return true if the request has a body, false otherwise.
+     */
+    public boolean hasBody() {
+        return body != null || bodyWriter != null;
+    }
+
+    /**
+     * Test whether cancellation of this request has been requested.
+     *
+     * @return true if cancelled, false otherwise (including when the request cannot be cancelled).
+     */
+    public boolean isCancelled() {
+        return cancellationToken != null && cancellationToken.isCancelled();
+    }
+
+    @Override
+    public @NonNull String toString() {
+        return String.format("%s{%s %s}", this.getClass().getSimpleName(), method, url);
+    }
+}
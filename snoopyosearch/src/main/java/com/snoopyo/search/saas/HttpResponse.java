@@ -0,0 +1,83 @@
+package com.snoopyo.search.saas;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An HTTP response, as returned by a {@link Transport}.
+ * <p>
+ * The body is exposed as a raw stream, exactly as received from the server (i.e. <em>not</em> decompressed).
+ * A response must always be closed, so that the transport can release or recycle the underlying connection.
+ * </p>
+ */
+public class HttpResponse implements Closeable {
+    /** HTTP status code. */
+    public final int statusCode;
+
+    /** Response headers. Names are case-insensitive. */
+    private final @NonNull Map<String, String> headers;
+
+    /** Body of the response. */
+    private final @Nullable InputStream body;
+
+    /**
+     * Construct a new response.
+     *
+     * @param statusCode HTTP status code.
+     * @param headers    Response headers. When a header appears several times, values should be comma-separated.
+     * @param body       Body of the response, or null if none is available.
+     */
+    public HttpResponse(int statusCode, @NonNull Map<String, String> headers, @Nullable InputStream body) {
+        this.statusCode = statusCode;
+        Map<String, String> headersCopy = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headersCopy.putAll(headers);
+        this.headers = Collections.unmodifiableMap(headersCopy);
+        this.body = body;
+    }
+
+    /**
+     * Get a response header.
+     *
+     * @param name Header name (case-insensitive).
+     * @return The header's value, or null if absent.
+     */
+    public @Nullable String getHeader(@NonNull String name) {
+        return headers.get(name);
+    }
+
+    /**
+     * Get all the response headers.
+     *
+     * @return An unmodifiable map of headers, with case-insensitive names.
+     */
+    public @NonNull Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Get the body of this response.
+     *
+     * @return The raw body stream, or null if the server did not send any.
+     */
+    public @Nullable InputStream getBody() {
+        return body;
+    }
+
+    /**
+     * Release the resources held by this response.
+     * Subclasses may override this method to recycle the underlying connection.
+     */
+    @Override
+    public void close() throws IOException {
+        if (body != null) {
+            body.close();
+        }
+    }
+}
@@ -9,13 +9,26 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A proxy to an Snoopyo index.
@@ -37,15 +50,75 @@ public class Index extends Searchable {
     /** This index's name, URL-encoded. Cached for optimization. */
     private String encodedIndexName;
 
-    private ExpiringCache<String, byte[]> searchCache;
+    private ExpiringCache<SearchCacheKey, byte[]> searchCache;
     private boolean isCacheEnabled = false;
 
+    /** Persistent tier of the search cache, behind `searchCache`. Null if disabled. */
+    private DiskCache searchDiskCache;
+
+    /** Time after expiration during which a cached response is still served while being refreshed (seconds). */
+    private volatile int searchCacheStaleGracePeriod = 0;
+
+    /** Cache keys of the searches being refreshed or prefetched in the background. */
+    private final Set<SearchCacheKey> searchCacheBackgroundLoads = Collections.newSetFromMap(new ConcurrentHashMap<SearchCacheKey, Boolean>());
+
+    /** Searches in flight, shared by identical concurrent searches. Replaced by writes to the index. */
+    private volatile SingleFlight<SearchCacheKey, byte[]> searchFlights = new SingleFlight<>();
+
+    /** Statistics of the search cache since it was enabled. */
+    private volatile CacheStats.Recorder searchCacheStats = new CacheStats.Recorder();
+
+    /** Cache of objects retrieved by ID, serialized. Null if disabled. */
+    private volatile ExpiringCache<SearchCacheKey, String> objectCache;
+
+    /** Statistics of the object cache since it was enabled. */
+    private volatile CacheStats.Recorder objectCacheStats = new CacheStats.Recorder();
+
+    /** Incremented by every write to the index, so that responses fetched before a write are not cached. */
+    private final AtomicLong cacheGeneration = new AtomicLong();
+
+    /** Whether the search cache is invalidated again when a write's task is published. */
+    private volatile boolean searchCacheInvalidatedOnPublication = false;
+
+    /** Decides whether to prefetch searches. Null if prefetching is disabled. */
+    private volatile PrefetchPolicy searchPrefetchPolicy;
+
+    /** Whether to prefetch the top facet refinement, in addition to the next page. */
+    private volatile boolean searchPrefetchRefinements = false;
+
+    /** Watches the tasks of this index for asynchronous waits. */
+    private final TaskWatcher taskWatcher = new TaskWatcher(this);
+
     // ----------------------------------------------------------------------
     // Constants
     // ----------------------------------------------------------------------
 
     private static final long MAX_TIME_MS_TO_WAIT = 10000L;
 
+    /** Prefetch policy allowing prefetching at any time. */
+    private static final PrefetchPolicy ALWAYS_PREFETCH = new PrefetchPolicy() {
+        @Override
+        public boolean shouldPrefetch() {
+            return true;
+        }
+    };
+
+    /** Weighs search cache entries by the size of their raw response. */
+    private static final ExpiringCache.Weigher<SearchCacheKey, byte[]> RESPONSE_WEIGHER = new ExpiringCache.Weigher<SearchCacheKey, byte[]>() {
+        @Override
+        public int weightOf(@NonNull SearchCacheKey key, @NonNull byte[] value) {
+            return value.length;
+        }
+    };
+
+    /** Weighs object cache entries by the length of their serialized object. */
+    private static final ExpiringCache.Weigher<SearchCacheKey, String> OBJECT_WEIGHER = new ExpiringCache.Weigher<SearchCacheKey, String>() {
+        @Override
+        public int weightOf(@NonNull SearchCacheKey key, @NonNull String value) {
+            return value.length();
+        }
+    };
+
     // ----------------------------------------------------------------------
     // Initialization
     // ----------------------------------------------------------------------
@@ -97,7 +170,7 @@ public class Index extends Searchable {
      */
     public Request searchAsync(@Nullable Query query, @Nullable final RequestOptions requestOptions, @Nullable CompletionHandler completionHandler) {
         final Query queryCopy = query != null ? new Query(query) : new Query();
-        return getClient().new AsyncTaskRequest(completionHandler) {
+        return getClient().new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.SEARCH) {
             @NonNull
             @Override protected JSONObject run() throws SnoopyoException {
                 return search(queryCopy, requestOptions);
@@ -125,6 +198,87 @@ public class Index extends Searchable {
         return searchSync(query, /* requestOptions: */ null);
     }
 
+    /**
+     * Search inside this index (asynchronously), returning lazily decoded results.
+     * <p>
+     * Unlike {@link #searchAsync(Query, RequestOptions, CompletionHandler)}, the response is not decoded upfront:
+     * attributes and hits of the {@link SearchResult} are only decoded when accessed.
+     * </p>
+     *
+     * @param query             Search parameters. May be null to use an empty query.
+     * @param requestOptions    Request-specific options.
+     * @param completionHandler The listener that will be notified of the request's outcome.
+     * @return A cancellable request.
+     */
+    public Request searchResultAsync(@Nullable Query query, @Nullable final RequestOptions requestOptions, @Nullable final SearchResultHandler completionHandler) {
+        final Query queryCopy = query != null ? new Query(query) : new Query();
+        FutureRequest.ResultHandler<SearchResult> resultHandler = completionHandler == null ? null : new FutureRequest.ResultHandler<SearchResult>() {
+            @Override
+            public void requestCompleted(SearchResult content, SnoopyoException error) {
+                completionHandler.requestCompleted(content, error);
+            }
+        };
+        return getClient().new AsyncTypedRequest<SearchResult>(resultHandler, RequestScheduler.Lane.SEARCH) {
+            @NonNull
+            @Override protected SearchResult run() throws SnoopyoException {
+                return searchResult(queryCopy, requestOptions);
+            }
+        }.start();
+    }
+
+    /**
+     * Search inside this index (synchronously), returning lazily decoded results.
+     *
+     * @param query          Search parameters. May be null to use an empty query.
+     * @param requestOptions Request-specific options.
+     * @return Search results.
+     */
+    public SearchResult searchResultSync(@Nullable Query query, @Nullable RequestOptions requestOptions) throws SnoopyoException {
+        return searchResult(query, requestOptions);
+    }
+
+    /**
+     * Search inside this index (asynchronously), streaming hits as they are received.
+     * <p>
+     * Hits are parsed directly off the network and handed over to <code>hitHandler</code> one by one, on the
+     * request's thread, so that the whole response never needs to be held in memory. Once all hits have been
+     * received, <code>completionHandler</code> is notified with the rest of the response (i.e. everything but the
+     * <code>hits</code> attribute).
+     * </p>
+     * <p>
+     * NOTE: Responses received this way are not stored into the search cache, but cached responses are used if
+     * available.
+     * </p>
+     *
+     * @param query             Search parameters. May be null to use an empty query.
+     * @param requestOptions    Request-specific options.
+     * @param hitHandler        The handler receiving the hits.
+     * @param completionHandler The listener that will be notified of the request's outcome.
+     * @return A cancellable request.
+     */
+    public Request searchStreamingAsync(@Nullable Query query, @Nullable final RequestOptions requestOptions, @NonNull final HitHandler hitHandler, @Nullable CompletionHandler completionHandler) {
+        final Query queryCopy = query != null ? new Query(query) : new Query();
+        return getClient().new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.SEARCH) {
+            @NonNull
+            @Override protected JSONObject run() throws SnoopyoException {
+                return searchStreaming(queryCopy, requestOptions, hitHandler);
+            }
+        }.start();
+    }
+
+    /**
+     * Search inside this index (synchronously), streaming hits as they are received.
+     * See {@link #searchStreamingAsync(Query, RequestOptions, HitHandler, CompletionHandler)} for details.
+     *
+     * @param query          Search parameters. May be null to use an empty query.
+     * @param requestOptions Request-specific options.
+     * @param hitHandler     The handler receiving the hits.
+     * @return Search results, without the hits.
+     */
+    public JSONObject searchStreamingSync(@Nullable Query query, @Nullable RequestOptions requestOptions, @NonNull HitHandler hitHandler) throws SnoopyoException {
+        return searchStreaming(query, requestOptions, hitHandler);
+    }
+
     /**
      * Run multiple queries on this index with one API call.
      * A variant of {@link Client#multipleQueriesAsync(List, Client.MultipleQueriesStrategy, CompletionHandler)}
@@ -141,7 +295,7 @@ public class Index extends Searchable {
         for (Query query : queries) {
             queriesCopy.add(new Query(query));
         }
-        return getClient().new AsyncTaskRequest(completionHandler) {
+        return getClient().new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.SEARCH) {
             @NonNull
             @Override protected JSONObject run() throws SnoopyoException {
                 return multipleQueries(queriesCopy, strategy == null ? null : strategy.toString(), requestOptions);
@@ -264,7 +418,7 @@ public class Index extends Searchable {
             final JSONObject requestBody = new JSONObject().put("params", params.build());
 
             final Client client = getClient();
-            return client.new AsyncTaskRequest(handler) {
+            return client.new AsyncTaskRequest(handler, RequestScheduler.Lane.SEARCH) {
                 @NonNull
                 @Override
                 protected JSONObject run() throws SnoopyoException {
@@ -305,7 +459,7 @@ public class Index extends Searchable {
      * @return A cancellable request.
      */
     public Request addObjectAsync(final @NonNull JSONObject object, @Nullable CompletionHandler completionHandler) {
-        return getClient().new AsyncTaskRequest(completionHandler) {
+        return getClient().new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.WRITE) {
             @NonNull
             @Override protected JSONObject run() throws SnoopyoException {
                 return addObject(object, /* requestOptions: */ null);
@@ -345,7 +499,7 @@ public class Index extends Searchable {
      * @return A cancellable request.
      */
     public Request addObjectAsync(final @NonNull JSONObject object, final @NonNull String objectID, @Nullable final RequestOptions requestOptions, @Nullable CompletionHandler completionHandler) {
-        return getClient().new AsyncTaskRequest(completionHandler) {
+        return getClient().new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.WRITE) {
             @NonNull
             @Override protected JSONObject run() throws SnoopyoException {
                 return addObject(object, objectID, requestOptions);
@@ -362,7 +516,7 @@ public class Index extends Searchable {
      * @return A cancellable request.
      */
     public Request addObjectsAsync(final @NonNull JSONArray objects, @Nullable final RequestOptions requestOptions, @Nullable CompletionHandler completionHandler) {
-        return getClient().new AsyncTaskRequest(completionHandler) {
+        return getClient().new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.WRITE) {
             @NonNull
             @Override protected JSONObject run() throws SnoopyoException {
                 return addObjects(objects, requestOptions);
@@ -403,7 +557,7 @@ public class Index extends Searchable {
      * @return A cancellable request.
      */
     public Request saveObjectAsync(final @NonNull JSONObject object, final @NonNull String objectID, @Nullable final RequestOptions requestOptions, @Nullable CompletionHandler completionHandler) {
-        return getClient().new AsyncTaskRequest(completionHandler) {
+        return getClient().new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.WRITE) {
             @NonNull
             @Override protected JSONObject run() throws SnoopyoException {
                 return saveObject(object, objectID, requestOptions);
@@ -431,7 +585,7 @@ public class Index extends Searchable {
      * @return A cancellable request.
      */
     public Request saveObjectsAsync(final @NonNull JSONArray objects, @Nullable final RequestOptions requestOptions, @Nullable CompletionHandler completionHandler) {
-        return getClient().new AsyncTaskRequest(completionHandler) {
+        return getClient().new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.WRITE) {
             @NonNull
             @Override protected JSONObject run() throws SnoopyoException {
                 return saveObjects(objects, requestOptions);
@@ -479,7 +633,7 @@ public class Index extends Searchable {
      * @return A cancellable request.
      */
     public Request partialUpdateObjectAsync(final @NonNull JSONObject partialObject, final @NonNull String objectID, final boolean createIfNotExists, @Nullable final RequestOptions requestOptions, @Nullable CompletionHandler completionHandler) {
-        return getClient().new AsyncTaskRequest(completionHandler) {
+        return getClient().new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.WRITE) {
             @NonNull
             @Override protected JSONObject run() throws SnoopyoException {
                 return partialUpdateObject(partialObject, objectID, createIfNotExists, requestOptions);
@@ -527,7 +681,7 @@ public class Index extends Searchable {
      * @return A cancellable request.
      */
     public Request partialUpdateObjectsAsync(final @NonNull JSONArray partialObjects, final boolean createIfNotExists, @Nullable final RequestOptions requestOptions, @Nullable CompletionHandler completionHandler) {
-        return getClient().new AsyncTaskRequest(completionHandler) {
+        return getClient().new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.WRITE) {
             @NonNull
             @Override protected JSONObject run() throws SnoopyoException {
                 return partialUpdateObjects(partialObjects, createIfNotExists, requestOptions);
@@ -568,7 +722,7 @@ public class Index extends Searchable {
      * @return A cancellable request.
      */
     public Request getObjectAsync(final @NonNull String objectID, final Collection<String> attributesToRetrieve, @Nullable final RequestOptions requestOptions, @Nullable CompletionHandler completionHandler) {
-        return getClient().new AsyncTaskRequest(completionHandler) {
+        return getClient().new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.READ) {
             @NonNull
             @Override protected JSONObject run() throws SnoopyoException {
                 return getObject(objectID, attributesToRetrieve, requestOptions);
@@ -608,7 +762,7 @@ public class Index extends Searchable {
      * @return A cancellable request.
      */
     public Request getObjectsAsync(final @NonNull Collection<String> objectIDs, @Nullable final RequestOptions requestOptions, @Nullable CompletionHandler completionHandler) {
-        return getClient().new AsyncTaskRequest(completionHandler) {
+        return getClient().new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.READ) {
             @NonNull
             @Override protected JSONObject run() throws SnoopyoException {
                 return getObjects(objectIDs, null, requestOptions);
@@ -626,7 +780,7 @@ public class Index extends Searchable {
      * @return A cancellable request.
      */
     public Request getObjectsAsync(final @NonNull Collection<String> objectIDs, final Collection<String> attributesToRetrieve, @Nullable final RequestOptions requestOptions, @Nullable CompletionHandler completionHandler) {
-        return getClient().new AsyncTaskRequest(completionHandler) {
+        return getClient().new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.READ) {
             @NonNull
             @Override protected JSONObject run() throws SnoopyoException {
                 return getObjects(objectIDs, attributesToRetrieve, requestOptions);
@@ -637,35 +791,27 @@ public class Index extends Searchable {
     /**
      * Wait until the publication of a task on the server (helper).
      * All server tasks are asynchronous. This method helps you check that a task is published.
+     * No thread is held while waiting: pending tasks are polled periodically, in batches per index.
      *
      * @param taskID            Identifier of the task (as returned by the server).
      * @param completionHandler The listener that will be notified of the request's outcome.
      * @return A cancellable request.
      */
-    public Request waitTaskAsync(final @NonNull String taskID, @Nullable CompletionHandler completionHandler) {
-        return getClient().new AsyncTaskRequest(completionHandler) {
-            @NonNull
-            @Override protected JSONObject run() throws SnoopyoException {
-                return waitTask(taskID);
-            }
-        }.start();
+    public Request waitTaskAsync(@NonNull String taskID, @Nullable CompletionHandler completionHandler) {
+        return taskWatcher.watch(taskID, completionHandler, FutureRequest.currentCompletionExecutor(client.completionExecutor));
     }
 
     /**
      * Wait until the publication of a task on the server (helper).
      * All server tasks are asynchronous. This method helps you check that a task is published.
+     * No thread is held while waiting: pending tasks are polled periodically, in batches per index.
      *
      * @param taskID            Identifier of the task (as returned by the server).
      * @param completionHandler The listener that will be notified of the request's outcome.
      * @return A cancellable request.
      */
-    public Request waitTaskAsync(final long taskID, @Nullable CompletionHandler completionHandler) {
-        return getClient().new AsyncTaskRequest(completionHandler) {
-            @NonNull
-            @Override protected JSONObject run() throws SnoopyoException {
-                return waitTask(Long.toString(taskID));
-            }
-        }.start();
+    public Request waitTaskAsync(long taskID, @Nullable CompletionHandler completionHandler) {
+        return taskWatcher.watch(Long.toString(taskID), completionHandler, FutureRequest.currentCompletionExecutor(client.completionExecutor));
     }
 
     /**
@@ -688,7 +834,7 @@ public class Index extends Searchable {
      * @return A cancellable request.
      */
     public Request deleteObjectAsync(final @NonNull String objectID, @Nullable final RequestOptions requestOptions, @Nullable CompletionHandler completionHandler) {
-        return getClient().new AsyncTaskRequest(completionHandler) {
+        return getClient().new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.WRITE) {
             @NonNull
             @Override protected JSONObject run() throws SnoopyoException {
                 return deleteObject(objectID, requestOptions);
@@ -716,7 +862,7 @@ public class Index extends Searchable {
      * @return A cancellable request.
      */
     public Request deleteObjectsAsync(final @NonNull Collection<String> objectIDs, @Nullable final RequestOptions requestOptions, @Nullable CompletionHandler completionHandler) {
-        return getClient().new AsyncTaskRequest(completionHandler) {
+        return getClient().new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.WRITE) {
             @NonNull
             @Override protected JSONObject run() throws SnoopyoException {
                 return deleteObjects(objectIDs, requestOptions);
@@ -745,15 +891,70 @@ public class Index extends Searchable {
      * @return A cancellable request.
      * @deprecated use {@link Index#deleteByAsync(Query, CompletionHandler)} instead.
      */
-    public Request deleteByQueryAsync(@NonNull Query query, @Nullable final RequestOptions requestOptions, @Nullable CompletionHandler completionHandler) {
+    public Request deleteByQueryAsync(@NonNull Query query, @Nullable final RequestOptions requestOptions, @Nullable final CompletionHandler completionHandler) {
         final Query queryCopy = new Query(query);
-        return getClient().new AsyncTaskRequest(completionHandler) {
+        final RequestFuture<JSONObject> deletion = new RequestFuture<>();
+        if (completionHandler != null) {
+            deletion.addListener(new RequestFuture.Listener<JSONObject>() {
+                @Override
+                public void requestCompleted(JSONObject content, SnoopyoException error) {
+                    completionHandler.requestCompleted(content, error);
+                }
+            }, FutureRequest.currentCompletionExecutor(client.completionExecutor));
+        }
+        deleteNextBatchAsync(queryCopy, requestOptions, deletion);
+        return deletion;
+    }
+
+    /**
+     * Delete the next batch of objects matching a query, wait for the deletion to be published, and start over until
+     * no object matches. Waiting holds no thread: each batch is a separate request.
+     *
+     * @param query          The query that objects to delete must match.
+     * @param requestOptions Request-specific options.
+     * @param deletion       Completed when all objects have been deleted.
+     */
+    private void deleteNextBatchAsync(@NonNull final Query query, @Nullable final RequestOptions requestOptions, @NonNull final RequestFuture<JSONObject> deletion) {
+        deletion.setUpstream(RequestFuture.call(new RequestFuture.AsyncCall() {
             @NonNull
-            @Override protected JSONObject run() throws SnoopyoException {
-                deleteByQuery(queryCopy, requestOptions);
-                return new JSONObject();
+            @Override
+            public Request start(@NonNull CompletionHandler completionHandler) {
+                return getClient().new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.WRITE) {
+                    @NonNull
+                    @Override protected JSONObject run() throws SnoopyoException {
+                        return deleteNextBatch(query, requestOptions);
+                    }
+                }.start();
             }
-        }.start();
+        }).thenCompose(new RequestFuture.Continuation<JSONObject, Boolean>() {
+            @NonNull
+            @Override
+            public RequestFuture<Boolean> then(final JSONObject batch) {
+                return RequestFuture.call(new RequestFuture.AsyncCall() {
+                    @NonNull
+                    @Override
+                    public Request start(@NonNull CompletionHandler completionHandler) {
+                        return taskWatcher.watch(batch.optString("taskID"), completionHandler, FutureRequest.DIRECT_EXECUTOR);
+                    }
+                }).thenApply(new RequestFuture.Transformation<JSONObject, Boolean>() {
+                    @Override
+                    public Boolean apply(JSONObject task) {
+                        return batch.optBoolean("hasMore");
+                    }
+                });
+            }
+        }).addListener(new RequestFuture.Listener<Boolean>() {
+            @Override
+            public void requestCompleted(Boolean hasMore, SnoopyoException error) {
+                if (error != null) {
+                    deletion.complete(null, error);
+                } else if (hasMore) {
+                    deleteNextBatchAsync(query, requestOptions, deletion);
+                } else {
+                    deletion.complete(new JSONObject(), null);
+                }
+            }
+        }, FutureRequest.DIRECT_EXECUTOR));
     }
 
     /**
@@ -765,7 +966,7 @@ public class Index extends Searchable {
      */
     public Request deleteByAsync(@NonNull Query query, @Nullable final RequestOptions requestOptions, @Nullable CompletionHandler completionHandler) {
         final Query queryCopy = new Query(query);
-        return getClient().new AsyncTaskRequest(completionHandler) {
+        return getClient().new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.WRITE) {
             @NonNull
             @Override protected JSONObject run() throws SnoopyoException {
                 return deleteBy(queryCopy, requestOptions);
@@ -802,7 +1003,7 @@ public class Index extends Searchable {
      * @return A cancellable request.
      */
     public Request getSettingsAsync(@Nullable final RequestOptions requestOptions, @Nullable CompletionHandler completionHandler) {
-        return getClient().new AsyncTaskRequest(completionHandler) {
+        return getClient().new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.READ) {
             @NonNull
             @Override protected JSONObject run() throws SnoopyoException {
                 return getSettings(2, requestOptions);
@@ -836,7 +1037,7 @@ public class Index extends Searchable {
      * @return A cancellable request.
      */
     public Request setSettingsAsync(final @NonNull JSONObject settings, final boolean forwardToReplicas, @Nullable final RequestOptions requestOptions, @Nullable CompletionHandler completionHandler) {
-        return getClient().new AsyncTaskRequest(completionHandler) {
+        return getClient().new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.WRITE) {
             @NonNull
             @Override protected JSONObject run() throws SnoopyoException {
                 return setSettings(settings, forwardToReplicas, requestOptions);
@@ -871,7 +1072,7 @@ public class Index extends Searchable {
      */
     public Request browseAsync(@NonNull Query query, @Nullable final RequestOptions requestOptions, @Nullable CompletionHandler completionHandler) {
         final Query queryCopy = new Query(query);
-        return getClient().new AsyncTaskRequest(completionHandler) {
+        return getClient().new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.READ) {
             @NonNull
             @Override protected JSONObject run() throws SnoopyoException {
                 return browse(queryCopy, requestOptions);
@@ -903,7 +1104,7 @@ public class Index extends Searchable {
      * @return A cancellable request.
      */
     public Request browseFromAsync(final @NonNull String cursor, @Nullable final RequestOptions requestOptions, @Nullable CompletionHandler completionHandler) {
-        return getClient().new AsyncTaskRequest(completionHandler) {
+        return getClient().new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.READ) {
             @NonNull
             @Override protected JSONObject run() throws SnoopyoException {
                 return browseFrom(cursor, requestOptions);
@@ -929,7 +1130,7 @@ public class Index extends Searchable {
      * @return A cancellable request.
      */
     public Request clearIndexAsync(@Nullable final RequestOptions requestOptions, @Nullable CompletionHandler completionHandler) {
-        return getClient().new AsyncTaskRequest(completionHandler) {
+        return getClient().new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.WRITE) {
             @NonNull
             @Override protected JSONObject run() throws SnoopyoException {
                 return clearIndex(requestOptions);
@@ -955,8 +1156,78 @@ public class Index extends Searchable {
      * @param maxRequests      maximum amount of requests to keep before removing the least recently used
      */
     public void enableSearchCache(int timeoutInSeconds, int maxRequests) {
+        enableSearchCache(new ExpiringCache<>(timeoutInSeconds, maxRequests, RESPONSE_WEIGHER, false), null);
+    }
+
+    /**
+     * Enable search cache, bounding its memory footprint rather than its number of requests.
+     *
+     * @param timeoutInSeconds duration during which an request is kept in cache
+     * @param maxBytes         maximum total size of the responses to keep before removing the least recently used
+     */
+    public void enableSearchCacheWithMaxBytes(int timeoutInSeconds, int maxBytes) {
+        enableSearchCache(new ExpiringCache<>(timeoutInSeconds, maxBytes, RESPONSE_WEIGHER, true), null);
+    }
+
+    /**
+     * Enable search cache with a persistent tier, so that cached results survive the application's restart.
+     * Responses are looked up in memory first, then on disk.
+     * <p>
+     * NOTE: The directory must be dedicated to this index, e.g. <code>new File(context.getCacheDir(), "search-" +
+     * indexName)</code>. Disk entries are removed when the cache is cleared or disabled.
+     * </p>
+     *
+     * @param timeoutInSeconds duration during which an request is kept in cache
+     * @param maxRequests      maximum amount of requests to keep in memory before removing the least recently used
+     * @param directory        directory where responses are persisted
+     * @param maxDiskSize      maximum size of the responses persisted on disk (bytes), before removing the least
+     *                         recently used
+     */
+    public void enableSearchCache(int timeoutInSeconds, int maxRequests, @NonNull File directory, long maxDiskSize) {
+        enableSearchCache(new ExpiringCache<>(timeoutInSeconds, maxRequests, RESPONSE_WEIGHER, false), new DiskCache(directory, maxDiskSize));
+    }
+
+    /**
+     * Enable search cache with a persistent tier, bounding its memory footprint rather than its number of requests.
+     * See {@link #enableSearchCache(int, int, File, long)}.
+     *
+     * @param timeoutInSeconds duration during which an request is kept in cache
+     * @param maxBytes         maximum total size of the responses to keep in memory before removing the least
+     *                         recently used
+     * @param directory        directory where responses are persisted
+     * @param maxDiskSize      maximum size of the responses persisted on disk (bytes), before removing the least
+     *                         recently used
+     */
+    public void enableSearchCacheWithMaxBytes(int timeoutInSeconds, int maxBytes, @NonNull File directory, long maxDiskSize) {
+        enableSearchCache(new ExpiringCache<>(timeoutInSeconds, maxBytes, RESPONSE_WEIGHER, true), new DiskCache(directory, maxDiskSize));
+    }
+
+    private void enableSearchCache(@NonNull ExpiringCache<SearchCacheKey, byte[]> memoryCache, @Nullable DiskCache diskCache) {
+        searchCacheStats = new CacheStats.Recorder();
+        searchCache = memoryCache;
+        searchDiskCache = diskCache;
         isCacheEnabled = true;
-        searchCache = new ExpiringCache<>(timeoutInSeconds, maxRequests);
+    }
+
+    /**
+     * Get the memory footprint of the search cache.
+     *
+     * @return the total size of the responses held in memory (bytes), or 0 if the cache is disabled
+     */
+    public long getSearchCacheWeight() {
+        ExpiringCache<SearchCacheKey, byte[]> cache = searchCache;
+        return isCacheEnabled && cache != null ? cache.weight() : 0;
+    }
+
+    /**
+     * Get the statistics of the search cache since it was enabled: hits, misses, expirations, evictions, load time,
+     * and memory footprint.
+     *
+     * @return a snapshot of the statistics
+     */
+    public @NonNull CacheStats getSearchCacheStats() {
+        final boolean enabled = isCacheEnabled;
+        return searchCacheStats.snapshot(enabled ? searchCache : null, enabled ? searchDiskCache : null);
     }
 
     /**
@@ -964,18 +1235,452 @@ public class Index extends Searchable {
      */
     public void disableSearchCache() {
         isCacheEnabled = false;
-        if (searchCache != null) {
-            searchCache.reset();
-        }
+        clearSearchCache();
+        searchDiskCache = null;
     }
 
     /**
      * Remove all entries from cache
      */
     public void clearSearchCache() {
+        cacheGeneration.incrementAndGet();
         if (searchCache != null) {
             searchCache.reset();
         }
+        if (searchDiskCache != null) {
+            searchDiskCache.clear();
+        }
+    }
+
+    /**
+     * Enable stale-while-revalidate: during a grace period after a cached response expires, searches are still
+     * answered from the cache immediately, while a fresh response is fetched in the background. Only one refresh
+     * per query is in flight at any time.
+     * <p>
+     * Stale results can be recognized with {@link SearchResult#isStale()}.
+     * </p>
+     *
+     * @param gracePeriodInSeconds time after expiration during which a cached response may be served (seconds);
+     *                             0 to disable (the default)
+     */
+    public void setSearchCacheStaleGracePeriod(int gracePeriodInSeconds) {
+        if (gracePeriodInSeconds < 0) {
+            throw new IllegalArgumentException("Grace period must be non-negative");
+        }
+        this.searchCacheStaleGracePeriod = gracePeriodInSeconds;
+    }
+
+    /**
+     * Get the time after expiration during which a cached response may be served while being refreshed.
+     *
+     * @return the grace period (seconds); 0 if stale-while-revalidate is disabled
+     */
+    public int getSearchCacheStaleGracePeriod() {
+        return searchCacheStaleGracePeriod;
+    }
+
+    /**
+     * Choose when the search cache is invalidated by writes to this index.
+     * <p>
+     * Writes performed through this index (adding, updating or deleting objects, changing settings, clearing the
+     * index) always invalidate the search cache as soon as the server acknowledges them. However, the server applies
+     * writes asynchronously: a search sent before the write's task is published may still return the old content,
+     * and would then be cached. When this option is enabled, the cache is invalidated again once the task is
+     * published, which is polled in the background.
+     * </p>
+     *
+     * @param invalidatedOnPublication true to invalidate the cache again when a write is published, false to only
+     *                                 invalidate it when the write is acknowledged (the default)
+     */
+    public void setSearchCacheInvalidatedOnPublication(boolean invalidatedOnPublication) {
+        this.searchCacheInvalidatedOnPublication = invalidatedOnPublication;
+    }
+
+    /**
+     * Get whether the search cache is invalidated again when a write's task is published.
+     *
+     * @return true if the cache is invalidated on publication, false if only on acknowledgement
+     */
+    public boolean isSearchCacheInvalidatedOnPublication() {
+        return searchCacheInvalidatedOnPublication;
+    }
+
+    /**
+     * Enable search prefetching: once a search returns page N, page N+1 is speculatively loaded into the search
+     * cache, so that paging (e.g. in an infinite scroll list) is answered instantly. Optionally, the most frequent
+     * facet refinement of the results is prefetched as well.
+     * <p>
+     * Prefetches run in the background, at low priority in the scheduler's {@link RequestScheduler.Lane#READ READ}
+     * lane, one at a time per search. They have no effect unless the search cache is enabled.
+     * </p>
+     *
+     * @param refinements whether to prefetch the top facet refinement too
+     * @param policy      decides whether to prefetch at a given time (e.g. only on an unmetered network); null to
+     *                    always prefetch
+     */
+    public void enableSearchPrefetch(boolean refinements, @Nullable PrefetchPolicy policy) {
+        searchPrefetchRefinements = refinements;
+        searchPrefetchPolicy = policy != null ? policy : ALWAYS_PREFETCH;
+    }
+
+    /**
+     * Disable search prefetching (the default).
+     */
+    public void disableSearchPrefetch() {
+        searchPrefetchPolicy = null;
+    }
+
+    /**
+     * Enable the object cache: objects retrieved by ID are kept in memory, so that retrieving them again does not
+     * hit the network. When retrieving several objects, only those missing from the cache are fetched.
+     * <p>
+     * Objects are cached per set of retrieved attributes. Like the search cache, the object cache is invalidated by
+     * writes to this index.
+     * </p>
+     *
+     * @param timeoutInSeconds duration during which an object is kept in cache
+     * @param maxObjects       maximum amount of objects to keep before removing the least recently used
+     */
+    public void enableObjectCache(int timeoutInSeconds, int maxObjects) {
+        objectCacheStats = new CacheStats.Recorder();
+        objectCache = new ExpiringCache<>(timeoutInSeconds, maxObjects, OBJECT_WEIGHER, false);
+    }
+
+    /**
+     * Get the statistics of the object cache since it was enabled. Weights are the length of serialized objects.
+     *
+     * @return a snapshot of the statistics
+     */
+    public @NonNull CacheStats getObjectCacheStats() {
+        return objectCacheStats.snapshot(objectCache, null);
+    }
+
+    /**
+     * Disable and reset the object cache.
+     */
+    public void disableObjectCache() {
+        objectCache = null;
+    }
+
+    /**
+     * Remove all objects from the object cache.
+     */
+    public void clearObjectCache() {
+        cacheGeneration.incrementAndGet();
+        ExpiringCache<SearchCacheKey, String> cache = objectCache;
+        if (cache != null) {
+            cache.reset();
+        }
+    }
+
+    /**
+     * Look up a search response in the cache: first in memory, then on disk.
+     * If the response is stale, a refresh is triggered in the background.
+     * Must only be called when the cache is enabled.
+     *
+     * @param query          the query
+     * @param cacheKey       the search's key
+     * @param requestOptions Request-specific options, used to refresh a stale response.
+     * @return the raw response if cached and still valid (or within the grace period), else null
+     */
+    private @Nullable ExpiringCache.Entry<byte[]> getCachedSearch(@NonNull Query query, @NonNull SearchCacheKey cacheKey, @Nullable RequestOptions requestOptions) {
+        final long maxStaleness = ExpiringCache.expirationTimeUnit.toMillis(searchCacheStaleGracePeriod);
+        ExpiringCache.Entry<byte[]> entry = searchCache.getEntry(cacheKey, maxStaleness);
+        DiskCache diskCache = searchDiskCache;
+        if (entry == null && diskCache != null) {
+            entry = diskCache.get(diskCacheKey(cacheKey), maxStaleness);
+            if (entry != null) {
+                // Promote to memory, keeping the original expiration time.
+                searchCache.put(cacheKey, entry.value, entry.expirationTime);
+            }
+        }
+        if (entry == null) {
+            searchCacheStats.recordMiss();
+        } else if (entry.isExpired()) {
+            searchCacheStats.recordHit(true);
+            refreshCachedSearch(query, cacheKey, requestOptions);
+        } else {
+            searchCacheStats.recordHit(false);
+        }
+        return entry;
+    }
+
+    /**
+     * Refresh a cached search response in the background, unless a refresh is already in flight.
+     * On failure, the stale response keeps being served until the grace period ends.
+     *
+     * @param query          the query
+     * @param cacheKey       the search's key
+     * @param requestOptions Request-specific options.
+     */
+    private void refreshCachedSearch(@NonNull Query query, @NonNull final SearchCacheKey cacheKey, @Nullable RequestOptions requestOptions) {
+        if (!searchCacheBackgroundLoads.add(cacheKey)) {
+            return;
+        }
+        // Snapshot the query and options, which the caller may modify, and drop the deadline: the refresh does not have
+        // to meet the original search's deadline.
+        final Query queryCopy = new Query(query);
+        final RequestOptions requestOptionsCopy = requestOptions != null ? new RequestOptions(requestOptions).setDeadline(0) : null;
+        try {
+            client.scheduler.executor(RequestScheduler.Lane.READ).execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        // Share the load with any concurrent search for the same key.
+                        loadSearch(queryCopy, cacheKey, requestOptionsCopy);
+                    } catch (SnoopyoException e) {
+                        // Nothing to do: the next search will try again.
+                    } finally {
+                        searchCacheBackgroundLoads.remove(cacheKey);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            searchCacheBackgroundLoads.remove(cacheKey);
+        }
+    }
+
+    /**
+     * Prefetch the searches likely to follow a search, if enabled: the next page and, optionally, the top facet
+     * refinement. The response is examined in the background, so that the search itself is not delayed.
+     *
+     * @param query          the search's query
+     * @param requestOptions Request-specific options.
+     * @param rawResponse    the search's raw response
+     */
+    private void prefetchSearches(@NonNull Query query, @Nullable RequestOptions requestOptions, @NonNull final byte[] rawResponse) {
+        final PrefetchPolicy policy = searchPrefetchPolicy;
+        if (policy == null || !isCacheEnabled) {
+            return;
+        }
+        // Snapshot the query and options, which the caller may modify, and drop the deadline: prefetches do not
+        // have to meet the original search's deadline.
+        final Query queryCopy = new Query(query);
+        final RequestOptions requestOptionsCopy = requestOptions != null ? new RequestOptions(requestOptions).setDeadline(0) : null;
+        final boolean refinements = searchPrefetchRefinements;
+        try {
+            client.scheduler.executor(RequestScheduler.Lane.READ).execute(new Runnable() {
+                @Override
+                public void run() {
+                    final Thread thread = Thread.currentThread();
+                    final int priority = thread.getPriority();
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    try {
+                        if (!policy.shouldPrefetch()) {
+                            return;
+                        }
+                        SearchResult result = new SearchResult(rawResponse);
+                        if (result.getPage() + 1 < result.getNbPages()) {
+                            prefetchSearch(new Query(queryCopy).setPage(result.getPage() + 1), requestOptionsCopy);
+                        }
+                        if (refinements) {
+                            Query refinedQuery = topRefinement(queryCopy, result);
+                            if (refinedQuery != null) {
+                                prefetchSearch(refinedQuery, requestOptionsCopy);
+                            }
+                        }
+                    } catch (SnoopyoException e) {
+                        // Best effort: nothing to do.
+                    } finally {
+                        thread.setPriority(priority);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The client is shutting down: nothing to do.
+        }
+    }
+
+    /**
+     * Load a search into the cache, unless it is already cached or being loaded in the background.
+     *
+     * @param query          the query
+     * @param requestOptions Request-specific options.
+     */
+    private void prefetchSearch(@NonNull Query query, @Nullable RequestOptions requestOptions) {
+        final ExpiringCache<SearchCacheKey, byte[]> cache = searchCache;
+        if (!isCacheEnabled || cache == null) {
+            return;
+        }
+        final SearchCacheKey cacheKey = new SearchCacheKey(rawIndexName, query, requestOptions);
+        if (cache.getEntry(cacheKey, 0) != null || !searchCacheBackgroundLoads.add(cacheKey)) {
+            return;
+        }
+        try {
+            loadSearch(query, cacheKey, requestOptions);
+        } catch (SnoopyoException e) {
+            // Best effort: the search will be sent when actually needed.
+        } finally {
+            searchCacheBackgroundLoads.remove(cacheKey);
+        }
+    }
+
+    /**
+     * Build the query refining a search with its most frequent facet value, excluding values matching all hits.
+     *
+     * @param query  the search's query
+     * @param result the search's results
+     * @return the refined query (first page), or null if no facet value refines the results
+     */
+    private static @Nullable Query topRefinement(@NonNull Query query, @NonNull SearchResult result) {
+        final JSONObject facets = result.getFacets();
+        if (facets == null) {
+            return null;
+        }
+        String topFacet = null;
+        String topValue = null;
+        int topCount = 0;
+        @SuppressWarnings("unchecked")
+        Iterator<String> facetNames = facets.keys();
+        while (facetNames.hasNext()) {
+            String facetName = facetNames.next();
+            JSONObject values = facets.optJSONObject(facetName);
+            if (values == null) {
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            Iterator<String> facetValues = values.keys();
+            while (facetValues.hasNext()) {
+                String value = facetValues.next();
+                int count = values.optInt(value, 0);
+                if (count > topCount && count < result.getNbHits()) {
+                    topFacet = facetName;
+                    topValue = value;
+                    topCount = count;
+                }
+            }
+        }
+        if (topFacet == null) {
+            return null;
+        }
+        final String refinement = JSONObject.quote(topFacet) + ":" + JSONObject.quote(topValue);
+        final String filters = query.getFilters();
+        return new Query(query)
+                .setFilters(filters == null || filters.isEmpty() ? refinement : "(" + filters + ") AND " + refinement)
+                .setPage(null);
+    }
+
+    /**
+     * Store a search response in the cache, both in memory and on disk, unless the index has been written to since
+     * the search was sent.
+     * Must only be called when the cache is enabled.
+     *
+     * @param cacheKey    the search's key
+     * @param rawResponse the raw response
+     * @param generation  value of the write generation before the search was sent
+     */
+    private void cacheSearch(@NonNull SearchCacheKey cacheKey, @NonNull byte[] rawResponse, long generation) {
+        if (cacheGeneration.get() != generation) {
+            return;
+        }
+        long expirationTime = System.currentTimeMillis() + ExpiringCache.expirationTimeUnit.toMillis(searchCache.expirationTimeout);
+        searchCache.put(cacheKey, rawResponse, expirationTime);
+        DiskCache diskCache = searchDiskCache;
+        if (diskCache != null) {
+            diskCache.put(diskCacheKey(cacheKey), rawResponse, expirationTime);
+        }
+        // A write may have invalidated the cache while we were storing the response: undo.
+        if (cacheGeneration.get() != generation) {
+            searchCache.remove(cacheKey);
+            if (diskCache != null) {
+                diskCache.remove(diskCacheKey(cacheKey));
+            }
+        }
+    }
+
+    /**
+     * Invalidate the search cache after a successful write to the index.
+     * Searches in flight are neither cached nor shared with subsequent searches.
+     * If enabled, the cache is invalidated again when the write's task is published.
+     *
+     * @param writeResponse the write's response
+     * @return the write's response
+     */
+    private JSONObject invalidateCachesAfterWrite(@Nullable JSONObject writeResponse) {
+        invalidateCaches();
+        final String taskID = writeResponse != null ? writeResponse.optString("taskID", null) : null;
+        if (searchCacheInvalidatedOnPublication && taskID != null) {
+            taskWatcher.watch(taskID, new CompletionHandler() {
+                @Override
+                public void requestCompleted(@Nullable JSONObject content, @Nullable SnoopyoException error) {
+                    // Invalidate even on error: we cannot tell whether the task has been published.
+                    invalidateCaches();
+                }
+            }, FutureRequest.DIRECT_EXECUTOR);
+        }
+        return writeResponse;
+    }
+
+    private void invalidateCaches() {
+        searchFlights = new SingleFlight<>();
+        clearSearchCache(); // increments the generation
+        clearObjectCache();
+    }
+
+    /**
+     * Build the cache key of an object.
+     *
+     * @param objectID             the object's identifier
+     * @param attributesToRetrieve the retrieved attributes, if restricted
+     * @param requestOptions       Request-specific options.
+     */
+    private @NonNull SearchCacheKey objectCacheKey(@NonNull String objectID, @Nullable Collection<String> attributesToRetrieve, @Nullable RequestOptions requestOptions) {
+        Map<String, String> parameters = new TreeMap<>();
+        if (attributesToRetrieve != null) {
+            // The order of attributes does not matter.
+            parameters.put("attributesToRetrieve", new JSONArray(new TreeSet<>(attributesToRetrieve)).toString());
+        }
+        parameters.put("objectID", objectID);
+        return new SearchCacheKey(rawIndexName, parameters, requestOptions);
+    }
+
+    /**
+     * Look up an object in the object cache.
+     *
+     * @return a copy of the cached object if found, else null
+     */
+    private @Nullable JSONObject getCachedObject(@NonNull ExpiringCache<SearchCacheKey, String> cache, @NonNull SearchCacheKey cacheKey) {
+        String serializedObject = cache.get(cacheKey);
+        if (serializedObject == null) {
+            objectCacheStats.recordMiss();
+            return null;
+        }
+        try {
+            JSONObject object = new JSONObject(serializedObject);
+            objectCacheStats.recordHit(false);
+            return object;
+        } catch (JSONException e) {
+            objectCacheStats.recordMiss();
+            cache.remove(cacheKey);
+            return null;
+        }
+    }
+
+    /**
+     * Store an object in the object cache, unless the index has been written to since it was fetched.
+     *
+     * @param generation value of the write generation before the object was fetched
+     */
+    private void cacheObject(@NonNull ExpiringCache<SearchCacheKey, String> cache, @NonNull SearchCacheKey cacheKey, @NonNull JSONObject object, long generation) {
+        final String serializedObject = object.toString();
+        if (serializedObject == null || cacheGeneration.get() != generation) {
+            return;
+        }
+        cache.put(cacheKey, serializedObject);
+        // A write may have invalidated the cache while we were storing the object: undo.
+        if (cacheGeneration.get() != generation) {
+            cache.remove(cacheKey);
+        }
+    }
+
+    /**
+     * Build the persistent key of a cached response.
+     * Responses may depend on the API key and client-level headers (e.g. secured API keys, user tokens): they are part
+     * of the key, so that a response is never served to another user after a restart. The key is hashed, so that no
+     * credential or header value is stored in plain text.
+     */
+    private @NonNull String diskCacheKey(@NonNull SearchCacheKey cacheKey) {
+        return client.getApplicationID() + "/" + DiskCache.digest("SHA-256", client.describeCredentials() + "\n" + cacheKey);
     }
 
     // ----------------------------------------------------------------------
@@ -990,7 +1695,7 @@ public class Index extends Searchable {
      * @throws SnoopyoException
      */
     protected JSONObject addObject(JSONObject obj, @Nullable RequestOptions requestOptions) throws SnoopyoException {
-        return client.postRequest("/1/indexes/" + encodedIndexName, /* urlParameters: */ null, obj.toString(), false, requestOptions);
+        return invalidateCachesAfterWrite(client.postRequest("/1/indexes/" + encodedIndexName, /* urlParameters: */ null, obj.toString(), false, requestOptions));
     }
 
     /**
@@ -1004,7 +1709,7 @@ public class Index extends Searchable {
      */
     protected JSONObject addObject(JSONObject obj, String objectID, @Nullable RequestOptions requestOptions) throws SnoopyoException {
         try {
-            return client.putRequest("/1/indexes/" + encodedIndexName + "/" + URLEncoder.encode(objectID, "UTF-8"), /* urlParameters: */ null, obj.toString(), requestOptions);
+            return invalidateCachesAfterWrite(client.putRequest("/1/indexes/" + encodedIndexName + "/" + URLEncoder.encode(objectID, "UTF-8"), /* urlParameters: */ null, obj.toString(), requestOptions));
         } catch (UnsupportedEncodingException e) {
             throw new SnoopyoException(e.getMessage());
         }
@@ -1019,14 +1724,23 @@ public class Index extends Searchable {
      */
     protected JSONObject batch(JSONArray actions, @Nullable RequestOptions requestOptions) throws SnoopyoException {
         try {
-            JSONObject content = new JSONObject();
-            content.put("requests", actions);
-            return client.postRequest("/1/indexes/" + encodedIndexName + "/batch", /* urlParameters: */ null, content.toString(), false, requestOptions);
+            return batch(BatchWriter.forActions(actions), requestOptions);
         } catch (JSONException e) {
             throw new SnoopyoException(e.getMessage());
         }
     }
 
+    /**
+     * Custom batch, streaming actions to the network as they are serialized.
+     *
+     * @param writer         writer for the actions
+     * @param requestOptions Request-specific options.
+     * @throws SnoopyoException
+     */
+    private JSONObject batch(@NonNull BatchWriter writer, @Nullable RequestOptions requestOptions) throws SnoopyoException {
+        return invalidateCachesAfterWrite(client.postRequestStreamingBody("/1/indexes/" + encodedIndexName + "/batch", /* urlParameters: */ null, writer, false, requestOptions));
+    }
+
     /**
      * Add several objects
      *
@@ -1034,19 +1748,20 @@ public class Index extends Searchable {
      * @param requestOptions Request-specific options.
      * @throws SnoopyoException
      */
-    protected JSONObject addObjects(JSONArray inputArray, @Nullable RequestOptions requestOptions) throws SnoopyoException {
+    protected JSONObject addObjects(final JSONArray inputArray, @Nullable RequestOptions requestOptions) throws SnoopyoException {
         try {
-            JSONArray array = new JSONArray();
             for (int n = 0; n < inputArray.length(); n++) {
-                JSONObject action = new JSONObject();
-                action.put("action", "addObject");
-                action.put("body", inputArray.getJSONObject(n));
-                array.put(action);
+                inputArray.getJSONObject(n);
             }
-            return batch(array, requestOptions);
         } catch (JSONException e) {
             throw new SnoopyoException(e.getMessage());
         }
+        return batch(new BatchWriter(inputArray.length()) {
+            @Override
+            protected void writeAction(@NonNull Writer writer, int index) throws IOException, JSONException {
+                writeAction(writer, "addObject", null, BatchWriter.toString(inputArray.getJSONObject(index)));
+            }
+        }, requestOptions);
     }
 
     /**
@@ -1057,11 +1772,7 @@ public class Index extends Searchable {
      * @throws SnoopyoException
      */
     protected JSONObject getObject(String objectID, @Nullable RequestOptions requestOptions) throws SnoopyoException {
-        try {
-            return client.getRequest("/1/indexes/" + encodedIndexName + "/" + URLEncoder.encode(objectID, "UTF-8"), /* urlParameters: */ null, false, requestOptions);
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException(e);
-        }
+        return getObject(objectID, /* attributesToRetrieve: */ null, requestOptions);
     }
 
     /**
@@ -1073,13 +1784,29 @@ public class Index extends Searchable {
      * @throws SnoopyoException
      */
     protected JSONObject getObject(String objectID, Collection<String> attributesToRetrieve, @Nullable RequestOptions requestOptions) throws SnoopyoException {
+        final ExpiringCache<SearchCacheKey, String> cache = objectCache;
+        SearchCacheKey cacheKey = null;
+        if (cache != null) {
+            cacheKey = objectCacheKey(objectID, attributesToRetrieve, requestOptions);
+            JSONObject object = getCachedObject(cache, cacheKey);
+            if (object != null) {
+                return object;
+            }
+        }
         try {
+            final long generation = cacheGeneration.get();
             String path = "/1/indexes/" + encodedIndexName + "/" + URLEncoder.encode(objectID, "UTF-8");
             Map<String, String> urlParameters = new HashMap<>();
             if (attributesToRetrieve != null) {
                 urlParameters.put("attributesToRetrieve", AbstractQuery.buildCommaArray(attributesToRetrieve.toArray(new String[attributesToRetrieve.size()])));
             }
-            return client.getRequest(path, urlParameters, false, requestOptions);
+            final long startTime = System.nanoTime();
+            JSONObject object = client.getRequest(path, urlParameters, false, requestOptions);
+            if (cache != null) {
+                objectCacheStats.recordLoad(startTime);
+                cacheObject(cache, cacheKey, object, generation);
+            }
+            return object;
         } catch (UnsupportedEncodingException e) {
             throw new RuntimeException(e);
         }
@@ -1104,6 +1831,64 @@ public class Index extends Searchable {
      * @throws SnoopyoException
      */
     protected JSONObject getObjects(@NonNull Collection<String> objectIDs, @Nullable Collection<String> attributesToRetrieve, @Nullable RequestOptions requestOptions) throws SnoopyoException {
+        final ExpiringCache<SearchCacheKey, String> cache = objectCache;
+        if (cache == null) {
+            return fetchObjects(objectIDs, attributesToRetrieve, requestOptions);
+        }
+        // Look up objects in the cache, then fetch the missing ones only.
+        final List<String> ids = new ArrayList<>(objectIDs);
+        final SearchCacheKey[] cacheKeys = new SearchCacheKey[ids.size()];
+        final Object[] results = new Object[ids.size()];
+        final List<String> missingIDs = new ArrayList<>();
+        for (int i = 0; i < ids.size(); ++i) {
+            cacheKeys[i] = objectCacheKey(ids.get(i), attributesToRetrieve, requestOptions);
+            results[i] = getCachedObject(cache, cacheKeys[i]);
+            if (results[i] == null) {
+                missingIDs.add(ids.get(i));
+            }
+        }
+        try {
+            JSONObject response = new JSONObject();
+            if (!missingIDs.isEmpty()) {
+                final long generation = cacheGeneration.get();
+                final long startTime = System.nanoTime();
+                response = fetchObjects(missingIDs, attributesToRetrieve, requestOptions);
+                objectCacheStats.recordLoad(startTime);
+                JSONArray fetchedObjects = response.getJSONArray("results");
+                int fetchedIndex = 0;
+                for (int i = 0; i < results.length; ++i) {
+                    if (results[i] != null) {
+                        continue;
+                    }
+                    Object object = fetchedObjects.opt(fetchedIndex++);
+                    if (object instanceof JSONObject) {
+                        cacheObject(cache, cacheKeys[i], (JSONObject) object, generation);
+                        results[i] = object;
+                    } else {
+                        results[i] = JSONObject.NULL; // not found
+                    }
+                }
+            }
+            // Merge cached and fetched objects, in the original order.
+            JSONArray mergedResults = new JSONArray();
+            for (Object object : results) {
+                mergedResults.put(object);
+            }
+            return response.put("results", mergedResults);
+        } catch (JSONException e) {
+            throw new SnoopyoException(e.getMessage());
+        }
+    }
+
+    /**
+     * Fetch several objects from this index, bypassing the object cache.
+     *
+     * @param objectIDs            the array of unique identifier of objects to retrieve
+     * @param attributesToRetrieve contains the list of attributes to retrieve.
+     * @param requestOptions       Request-specific options.
+     * @throws SnoopyoException
+     */
+    private JSONObject fetchObjects(@NonNull Collection<String> objectIDs, @Nullable Collection<String> attributesToRetrieve, @Nullable RequestOptions requestOptions) throws SnoopyoException {
         try {
             JSONArray requests = new JSONArray();
             for (String id : objectIDs) {
@@ -1137,7 +1922,7 @@ public class Index extends Searchable {
             if (createIfNotExists != null) {
                 urlParameters.put("createIfNotExists", createIfNotExists.toString());
             }
-            return client.postRequest(path, urlParameters, partialObject.toString(), false, requestOptions);
+            return invalidateCachesAfterWrite(client.postRequest(path, urlParameters, partialObject.toString(), false, requestOptions));
         } catch (UnsupportedEncodingException e) {
             throw new RuntimeException(e);
         }
@@ -1150,22 +1935,9 @@ public class Index extends Searchable {
      * @param requestOptions Request-specific options.
      * @throws SnoopyoException
      */
-    protected JSONObject partialUpdateObjects(JSONArray inputArray, boolean createIfNotExists, @Nullable RequestOptions requestOptions) throws SnoopyoException {
-        try {
-            final String action = createIfNotExists ? "partialUpdateObject" : "partialUpdateObjectNoCreate";
-            JSONArray array = new JSONArray();
-            for (int n = 0; n < inputArray.length(); n++) {
-                JSONObject obj = inputArray.getJSONObject(n);
-                JSONObject operation = new JSONObject();
-                operation.put("action", action);
-                operation.put("objectID", obj.getString("objectID"));
-                operation.put("body", obj);
-                array.put(operation);
-            }
-            return batch(array, requestOptions);
-        } catch (JSONException e) {
-            throw new SnoopyoException(e.getMessage());
-        }
+    protected JSONObject partialUpdateObjects(final JSONArray inputArray, boolean createIfNotExists, @Nullable RequestOptions requestOptions) throws SnoopyoException {
+        final String action = createIfNotExists ? "partialUpdateObject" : "partialUpdateObjectNoCreate";
+        return batch(newObjectsWriter(action, inputArray), requestOptions);
     }
 
     /**
@@ -1177,7 +1949,7 @@ public class Index extends Searchable {
      */
     protected JSONObject saveObject(JSONObject object, String objectID, @Nullable RequestOptions requestOptions) throws SnoopyoException {
         try {
-            return client.putRequest("/1/indexes/" + encodedIndexName + "/" + URLEncoder.encode(objectID, "UTF-8"), /* urlParameters: */ null, object.toString(), requestOptions);
+            return invalidateCachesAfterWrite(client.putRequest("/1/indexes/" + encodedIndexName + "/" + URLEncoder.encode(objectID, "UTF-8"), /* urlParameters: */ null, object.toString(), requestOptions));
         } catch (UnsupportedEncodingException e) {
             throw new RuntimeException(e);
         }
@@ -1191,20 +1963,31 @@ public class Index extends Searchable {
      * @throws SnoopyoException
      */
     protected JSONObject saveObjects(JSONArray inputArray, @Nullable RequestOptions requestOptions) throws SnoopyoException {
+        return batch(newObjectsWriter("updateObject", inputArray), requestOptions);
+    }
+
+    /**
+     * Build a batch writer applying an action to objects identified by their <code>objectID</code> attribute.
+     *
+     * @param action     the action to apply
+     * @param inputArray the objects (each object must contain an objectID attribute)
+     * @throws SnoopyoException if an object is invalid or lacks an objectID
+     */
+    private BatchWriter newObjectsWriter(@NonNull final String action, @NonNull final JSONArray inputArray) throws SnoopyoException {
         try {
-            JSONArray array = new JSONArray();
             for (int n = 0; n < inputArray.length(); n++) {
-                JSONObject obj = inputArray.getJSONObject(n);
-                JSONObject action = new JSONObject();
-                action.put("action", "updateObject");
-                action.put("objectID", obj.getString("objectID"));
-                action.put("body", obj);
-                array.put(action);
+                inputArray.getJSONObject(n).getString("objectID");
             }
-            return batch(array, requestOptions);
         } catch (JSONException e) {
             throw new SnoopyoException(e.getMessage());
         }
+        return new BatchWriter(inputArray.length()) {
+            @Override
+            protected void writeAction(@NonNull Writer writer, int index) throws IOException, JSONException {
+                JSONObject obj = inputArray.getJSONObject(index);
+                writeAction(writer, action, obj.getString("objectID"), BatchWriter.toString(obj));
+            }
+        };
     }
 
     /**
@@ -1219,7 +2002,7 @@ public class Index extends Searchable {
             throw new SnoopyoException("Invalid objectID");
         }
         try {
-            return client.deleteRequest("/1/indexes/" + encodedIndexName + "/" + URLEncoder.encode(objectID, "UTF-8"), /* urlParameters: */ null, requestOptions);
+            return invalidateCachesAfterWrite(client.deleteRequest("/1/indexes/" + encodedIndexName + "/" + URLEncoder.encode(objectID, "UTF-8"), /* urlParameters: */ null, requestOptions));
         } catch (UnsupportedEncodingException e) {
             throw new RuntimeException(e);
         }
@@ -1233,20 +2016,13 @@ public class Index extends Searchable {
      * @throws SnoopyoException
      */
     protected JSONObject deleteObjects(Collection<String> objects, @Nullable RequestOptions requestOptions) throws SnoopyoException {
-        try {
-            JSONArray array = new JSONArray();
-            for (String id : objects) {
-                JSONObject obj = new JSONObject();
-                obj.put("objectID", id);
-                JSONObject action = new JSONObject();
-                action.put("action", "deleteObject");
-                action.put("body", obj);
-                array.put(action);
+        final List<String> objectIDs = new ArrayList<>(objects);
+        return batch(new BatchWriter(objectIDs.size()) {
+            @Override
+            protected void writeAction(@NonNull Writer writer, int index) throws IOException {
+                writeAction(writer, "deleteObject", null, "{\"objectID\":" + JSONObject.quote(objectIDs.get(index)) + "}");
             }
-            return batch(array, requestOptions);
-        } catch (JSONException e) {
-            throw new SnoopyoException(e.getMessage());
-        }
+        }, requestOptions);
     }
 
     /**
@@ -1259,25 +2035,40 @@ public class Index extends Searchable {
      */
     @Deprecated
     protected void deleteByQuery(@NonNull Query query, @Nullable RequestOptions requestOptions) throws SnoopyoException {
-        try {
-            boolean hasMore;
-            do {
-                // Browse index for the next batch of objects.
-                // WARNING: Since deletion invalidates cursors, we always browse from the start.
-                List<String> objectIDs = new ArrayList<>(1000);
-                JSONObject content = browse(query, requestOptions);
-                JSONArray hits = content.getJSONArray("hits");
-                for (int i = 0; i < hits.length(); ++i) {
-                    JSONObject hit = hits.getJSONObject(i);
-                    objectIDs.add(hit.getString("objectID"));
-                }
-                hasMore = content.optString("cursor", null) != null;
+        JSONObject batch;
+        do {
+            batch = deleteNextBatch(query, requestOptions);
+            this.waitTask(batch.optString("taskID"));
+        }
+        while (batch.optBoolean("hasMore"));
+    }
 
-                // Delete objects.
-                JSONObject task = this.deleteObjects(objectIDs, /* requestOptions: */ null);
-                this.waitTask(task.getString("taskID"));
+    /**
+     * Delete the next batch of objects matching a query, without waiting for the deletion to be published.
+     *
+     * @param query          The query that objects to delete must match.
+     * @param requestOptions Request-specific options.
+     * @return The deletion's task ID (<code>taskID</code>), and whether more objects match (<code>hasMore</code>).
+     * @throws SnoopyoException
+     */
+    private JSONObject deleteNextBatch(@NonNull Query query, @Nullable RequestOptions requestOptions) throws SnoopyoException {
+        try {
+            // Browse index for the next batch of objects.
+            // WARNING: Since deletion invalidates cursors, we always browse from the start.
+            List<String> objectIDs = new ArrayList<>(1000);
+            JSONObject content = browse(query, requestOptions);
+            JSONArray hits = content.getJSONArray("hits");
+            for (int i = 0; i < hits.length(); ++i) {
+                JSONObject hit = hits.getJSONObject(i);
+                objectIDs.add(hit.getString("objectID"));
             }
-            while (hasMore);
+            boolean hasMore = content.optString("cursor", null) != null;
+
+            // Delete objects.
+            JSONObject task = this.deleteObjects(objectIDs, /* requestOptions: */ null);
+            return new JSONObject()
+                    .put("taskID", task.getString("taskID"))
+                    .put("hasMore", hasMore);
         } catch (JSONException e) {
             throw new SnoopyoException(e.getMessage());
         }
@@ -1302,7 +2093,7 @@ public class Index extends Searchable {
      */
     protected JSONObject deleteBy(@NonNull Query query, RequestOptions requestOptions) throws SnoopyoException {
         try {
-            return client.postRequest("/1/indexes/" + encodedIndexName + "/deleteByQuery", query.getParameters(), new JSONObject().put("params", query.build()).toString(), false, requestOptions);
+            return invalidateCachesAfterWrite(client.postRequest("/1/indexes/" + encodedIndexName + "/deleteByQuery", query.getParameters(), new JSONObject().put("params", query.build()).toString(), false, requestOptions));
         } catch (JSONException e) {
             e.printStackTrace();
             return null;
@@ -1317,27 +2108,76 @@ public class Index extends Searchable {
      * @throws SnoopyoException
      */
     protected JSONObject search(@Nullable Query query, @Nullable RequestOptions requestOptions) throws SnoopyoException {
+        try {
+            return Client._getJSONObject(searchRawCached(query, requestOptions).value);
+        } catch (UnsupportedEncodingException | JSONException e) {
+            throw new SnoopyoException(e.getMessage());
+        }
+    }
+
+    /**
+     * Search inside the index, returning lazily decoded results.
+     *
+     * @param requestOptions Request-specific options.
+     * @return the search results
+     * @throws SnoopyoException
+     */
+    protected SearchResult searchResult(@Nullable Query query, @Nullable RequestOptions requestOptions) throws SnoopyoException {
+        ExpiringCache.Entry<byte[]> entry = searchRawCached(query, requestOptions);
+        SearchResult result = new SearchResult(entry.value);
+        result.setStale(entry.isExpired());
+        return result;
+    }
+
+    /**
+     * Search inside the index, using the search cache if enabled.
+     *
+     * @param requestOptions Request-specific options.
+     * @return the search results' raw response, with its expiration time in the cache (if not cached, a response
+     * that never expires)
+     * @throws SnoopyoException
+     */
+    private @NonNull ExpiringCache.Entry<byte[]> searchRawCached(@Nullable Query query, @Nullable final RequestOptions requestOptions) throws SnoopyoException {
         if (query == null) {
             query = new Query();
         }
 
-        String cacheKey = null;
-        byte[] rawResponse = null;
+        final SearchCacheKey cacheKey = new SearchCacheKey(rawIndexName, query, requestOptions);
         if (isCacheEnabled) {
-            cacheKey = query.build();
-            rawResponse = searchCache.get(cacheKey);
+            ExpiringCache.Entry<byte[]> entry = getCachedSearch(query, cacheKey, requestOptions);
+            if (entry != null) {
+                prefetchSearches(query, requestOptions, entry.value);
+                return entry;
+            }
         }
-        try {
-            if (rawResponse == null) {
-                rawResponse = searchRaw(query, requestOptions);
+        byte[] rawResponse = loadSearch(query, cacheKey, requestOptions);
+        prefetchSearches(query, requestOptions, rawResponse);
+        return new ExpiringCache.Entry<>(rawResponse, Long.MAX_VALUE);
+    }
+
+    /**
+     * Send a search, and store its response in the cache if enabled.
+     * Identical concurrent searches share the same request.
+     *
+     * @param requestOptions Request-specific options.
+     * @return the search results' raw response
+     * @throws SnoopyoException
+     */
+    private @NonNull byte[] loadSearch(@NonNull final Query query, @NonNull final SearchCacheKey cacheKey, @Nullable final RequestOptions requestOptions) throws SnoopyoException {
+        return searchFlights.execute(cacheKey, requestOptions != null ? requestOptions.deadline : 0, new SingleFlight.Call<byte[]>() {
+            @NonNull
+            @Override
+            public byte[] call() throws SnoopyoException {
+                final long generation = cacheGeneration.get();
+                final long startTime = System.nanoTime();
+                byte[] rawResponse = searchRaw(query, requestOptions);
                 if (isCacheEnabled) {
-                    searchCache.put(cacheKey, rawResponse);
+                    searchCacheStats.recordLoad(startTime);
+                    cacheSearch(cacheKey, rawResponse, generation);
                 }
+                return rawResponse;
             }
-            return Client._getJSONObject(rawResponse);
-        } catch (UnsupportedEncodingException | JSONException e) {
-            throw new SnoopyoException(e.getMessage());
-        }
+        });
     }
 
     /**
@@ -1366,6 +2206,45 @@ public class Index extends Searchable {
         }
     }
 
+    /**
+     * Search inside the index, streaming hits to a handler.
+     *
+     * @param requestOptions Request-specific options.
+     * @param hitHandler     The handler receiving the hits.
+     * @return a JSONObject containing search results, without the hits
+     * @throws SnoopyoException
+     */
+    protected JSONObject searchStreaming(@Nullable Query query, @Nullable RequestOptions requestOptions, @NonNull final HitHandler hitHandler) throws SnoopyoException {
+        if (query == null) {
+            query = new Query();
+        }
+        final AbstractClient.ResponseReader<JSONObject> reader = new AbstractClient.ResponseReader<JSONObject>() {
+            @Override
+            public JSONObject read(@NonNull InputStream stream) throws SnoopyoException {
+                return JSONStreamParser.parseSearchResults(stream, hitHandler);
+            }
+        };
+
+        if (isCacheEnabled) {
+            ExpiringCache.Entry<byte[]> entry = getCachedSearch(query, new SearchCacheKey(rawIndexName, query, requestOptions), requestOptions);
+            if (entry != null) {
+                return reader.read(new ByteArrayInputStream(entry.value));
+            }
+        }
+        try {
+            String paramsString = query.build();
+            if (paramsString.length() > 0) {
+                JSONObject body = new JSONObject();
+                body.put("params", paramsString);
+                return client.postRequestStreamed("/1/indexes/" + encodedIndexName + "/query", /* urlParameters: */ null, body.toString(), true, requestOptions, reader);
+            } else {
+                return client.getRequestStreamed("/1/indexes/" + encodedIndexName, /* urlParameters: */ null, true, requestOptions, reader);
+            }
+        } catch (JSONException e) {
+            throw new RuntimeException(e); // should never happen
+        }
+    }
+
     /**
      * Wait the publication of a task on the server.
      * All server task are asynchronous and you can check with this method that the task is published.
@@ -1377,14 +2256,16 @@ public class Index extends Searchable {
     protected JSONObject waitTask(String taskID, long timeToWait) throws SnoopyoException {
         try {
             while (true) {
-                JSONObject obj = client.getRequest("/1/indexes/" + encodedIndexName + "/task/" + URLEncoder.encode(taskID, "UTF-8"), /* urlParameters: */ null, false, /* requestOptions: */ null);
+                JSONObject obj = getTaskStatus(taskID);
                 if (obj.getString("status").equals("published")) {
                     return obj;
                 }
                 try {
                     Thread.sleep(timeToWait >= MAX_TIME_MS_TO_WAIT ? MAX_TIME_MS_TO_WAIT : timeToWait);
                 } catch (InterruptedException e) {
-                    continue;
+                    // Preserve the interruption for the caller.
+                    Thread.currentThread().interrupt();
+                    throw new SnoopyoException("Request cancelled", e);
                 }
 
                 final long newTimeout = timeToWait * 2;
@@ -1392,8 +2273,20 @@ public class Index extends Searchable {
             }
         } catch (JSONException e) {
             throw new SnoopyoException(e.getMessage());
+        }
+    }
+
+    /**
+     * Get the status of a task on the server.
+     *
+     * @param taskID the id of the task returned by server
+     * @throws SnoopyoException
+     */
+    JSONObject getTaskStatus(@NonNull String taskID) throws SnoopyoException {
+        try {
+            return client.getRequest("/1/indexes/" + encodedIndexName + "/task/" + URLEncoder.encode(taskID, "UTF-8"), /* urlParameters: */ null, false, /* requestOptions: */ null);
         } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException(e);
+            throw new RuntimeException(e); // should never happen, as UTF-8 is always supported
         }
     }
 
@@ -1446,7 +2339,7 @@ public class Index extends Searchable {
     protected JSONObject setSettings(JSONObject settings, boolean forwardToReplicas, @Nullable RequestOptions requestOptions) throws SnoopyoException {
         Map<String, String> urlParameters = new HashMap<>();
         urlParameters.put("forwardToReplicas", Boolean.toString(forwardToReplicas));
-        return client.putRequest("/1/indexes/" + encodedIndexName + "/settings", urlParameters, settings.toString(), requestOptions);
+        return invalidateCachesAfterWrite(client.putRequest("/1/indexes/" + encodedIndexName + "/settings", urlParameters, settings.toString(), requestOptions));
     }
 
     /**
@@ -1456,7 +2349,7 @@ public class Index extends Searchable {
      * @throws SnoopyoException
      */
     protected JSONObject clearIndex(@Nullable RequestOptions requestOptions) throws SnoopyoException {
-        return client.postRequest("/1/indexes/" + encodedIndexName + "/clear", /* urlParameters: */ null, "", false, requestOptions);
+        return invalidateCachesAfterWrite(client.postRequest("/1/indexes/" + encodedIndexName + "/clear", /* urlParameters: */ null, "", false, requestOptions));
     }
 
     protected JSONObject browse(@NonNull Query query, @Nullable RequestOptions requestOptions) throws SnoopyoException {
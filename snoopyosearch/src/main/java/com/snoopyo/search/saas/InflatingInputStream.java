@@ -0,0 +1,364 @@
+package com.snoopyo.search.saas;
+
+import android.support.annotation.NonNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+// ----------------------------------------------------------------------
+// IMPLEMENTATION NOTES
+// ----------------------------------------------------------------------
+// `GZIPInputStream` allocates a native `Inflater`, a CRC and buffers for
+// every response, and only releases the native memory when finalized.
+// Instead, each thread keeps one decoder per format, which is reset and
+// re-used from one response to the next.
+//
+// A decoder is only re-used by the thread owning it, and only once it
+// has been released. If a thread needs a second decoder while the first
+// one is still in use (e.g. a request issued from a `HitHandler`), a
+// transient one is allocated.
+//
+// The `deflate` content encoding is supposed to use the zlib wrapper, but
+// some servers send raw deflate data instead. Like browsers, we tell
+// them apart by checking whether the body starts with a valid zlib
+// header.
+//
+// A pooled connection can only be re-used once its body has been read to
+// the end. Parsers usually stop at the end of the JSON document, before
+// the inflater has consumed the end of the compressed data (and the gzip
+// trailer), so closing the decoder drains what is left, up to a limit.
+// ----------------------------------------------------------------------
+
+/**
+ * Decodes a compressed response body (<code>gzip</code> or <code>deflate</code> content encoding) with pooled
+ * decoders.
+ * <p>
+ * NOTE: Closing this stream releases the decoder, but does <em>not</em> close the source stream: the latter is owned
+ * by the {@link HttpResponse}.
+ * </p>
+ */
+class InflatingInputStream extends InputStream {
+    /** The <code>gzip</code> content encoding (RFC 1952). */
+    static final String GZIP = "gzip";
+
+    /** The <code>deflate</code> content encoding (zlib format, RFC 1950, or raw deflate data, RFC 1951). */
+    static final String DEFLATE = "deflate";
+
+    /** Value of the <code>Accept-Encoding</code> header matching the supported encodings. */
+    static final String ACCEPT_ENCODING = GZIP + ", " + DEFLATE;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /** Maximum number of decoded bytes discarded when closing an unfinished stream. */
+    private static final int DRAIN_LIMIT = 64 * 1024;
+
+    // gzip header flags
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private static final ThreadLocal<InflatingInputStream> gzipDecoders = new ThreadLocal<>();
+    private static final ThreadLocal<InflatingInputStream> deflateDecoders = new ThreadLocal<>();
+
+    private final boolean gzip;
+
+    /** Inflater for zlib data, allocated on first use. */
+    private Inflater zlibInflater;
+
+    /** Inflater for raw deflate data (including gzip members), allocated on first use. */
+    private Inflater rawInflater;
+
+    /** Inflater decoding the current stream. */
+    private Inflater inflater;
+
+    private final CRC32 crc = new CRC32();
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final byte[] singleByte = new byte[1];
+
+    /** Receives the output discarded when draining, allocated on first use. */
+    private byte[] discardBuffer;
+
+    /** Whether this decoder is currently used. Only the owning thread may acquire it. */
+    private volatile boolean inUse = false;
+
+    private InputStream source;
+    private boolean finished;
+
+    /** Length of the data last handed over to the inflater in `buffer`. */
+    private int inputLength;
+
+    /** Position of the trailer bytes left over by the inflater in `buffer`. */
+    private int trailerPosition;
+
+    private InflatingInputStream(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    /**
+     * Test whether a content encoding is supported.
+     *
+     * @param encoding The value of the <code>Content-Encoding</code> header.
+     * @return true if it can be decoded, false otherwise.
+     */
+    static boolean isSupported(@NonNull String encoding) {
+        return encoding.equals(GZIP) || encoding.equals(DEFLATE);
+    }
+
+    /**
+     * Obtain a decoder for a compressed stream, re-using the calling thread's decoder if possible.
+     *
+     * @param source   The compressed stream.
+     * @param encoding The content encoding. Must be supported.
+     * @return A stream decoding the source.
+     * @throws IOException If the gzip header could not be read.
+     */
+    static @NonNull InflatingInputStream obtain(@NonNull InputStream source, @NonNull String encoding) throws IOException {
+        final boolean gzip = encoding.equals(GZIP);
+        ThreadLocal<InflatingInputStream> decoders = gzip ? gzipDecoders : deflateDecoders;
+        InflatingInputStream decoder = decoders.get();
+        if (decoder == null) {
+            decoder = new InflatingInputStream(gzip);
+            decoders.set(decoder);
+        } else if (decoder.inUse) {
+            decoder = new InflatingInputStream(gzip); // transient
+        }
+        decoder.reset(source);
+        return decoder;
+    }
+
+    private void reset(@NonNull InputStream source) throws IOException {
+        this.source = source;
+        this.finished = false;
+        this.inputLength = 0;
+        this.inUse = true;
+        crc.reset();
+        try {
+            if (gzip) {
+                // gzip wraps raw deflate data with its own header and trailer.
+                readGzipHeader();
+                inflater = getInflater(true);
+            } else {
+                inputLength = readPrefix(2);
+                inflater = getInflater(!isZlibHeader());
+                inflater.setInput(buffer, 0, inputLength);
+            }
+        } catch (IOException e) {
+            release();
+            throw e;
+        }
+    }
+
+    private @NonNull Inflater getInflater(boolean nowrap) {
+        if (nowrap) {
+            if (rawInflater == null) {
+                rawInflater = new Inflater(true);
+            }
+            rawInflater.reset();
+            return rawInflater;
+        } else {
+            if (zlibInflater == null) {
+                zlibInflater = new Inflater(false);
+            }
+            zlibInflater.reset();
+            return zlibInflater;
+        }
+    }
+
+    /**
+     * Read the first bytes of the source into the buffer.
+     *
+     * @param length Number of bytes to read.
+     * @return Number of bytes read; less than <code>length</code> only if the source ended.
+     */
+    private int readPrefix(int length) throws IOException {
+        int count = 0;
+        while (count < length) {
+            int read = source.read(buffer, count, length - count);
+            if (read == -1) {
+                break;
+            }
+            count += read;
+        }
+        return count;
+    }
+
+    /**
+     * Test whether the buffer starts with a zlib header (RFC 1950): deflate method, window of at most 32K, and
+     * valid check bits.
+     */
+    private boolean isZlibHeader() {
+        if (inputLength < 2) {
+            return false;
+        }
+        int cmf = buffer[0] & 0xff;
+        int flg = buffer[1] & 0xff;
+        return (cmf & 0x0f) == 8 && (cmf >> 4) <= 7 && ((cmf << 8) | flg) % 31 == 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int count = read(singleByte, 0, 1);
+        return count == -1 ? -1 : singleByte[0] & 0xff;
+    }
+
+    @Override
+    public int read(@NonNull byte[] output, int offset, int length) throws IOException {
+        if (!inUse) {
+            throw new IOException("Stream closed");
+        }
+        if (finished) {
+            return -1;
+        }
+        if (length == 0) {
+            return 0;
+        }
+        try {
+            int count;
+            while ((count = inflater.inflate(output, offset, length)) == 0) {
+                if (inflater.finished()) {
+                    onFinished();
+                    return -1;
+                }
+                if (inflater.needsDictionary()) {
+                    throw new ZipException("Preset dictionaries are not supported");
+                }
+                if (inflater.needsInput()) {
+                    inputLength = source.read(buffer, 0, buffer.length);
+                    if (inputLength == -1) {
+                        throw new EOFException("Unexpected end of compressed stream");
+                    }
+                    inflater.setInput(buffer, 0, inputLength);
+                }
+            }
+            if (gzip) {
+                crc.update(output, offset, count);
+            }
+            if (inflater.finished()) {
+                onFinished();
+            }
+            return count;
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+    }
+
+    /**
+     * Release the decoder, making it available for the next response. The source stream is left open, but if the
+     * compressed data was not read to the end, what is left is drained (up to a limit) so that the underlying
+     * connection can be re-used.
+     */
+    @Override
+    public void close() {
+        if (inUse && !finished) {
+            drain();
+        }
+        release();
+    }
+
+    private void release() {
+        source = null;
+        inUse = false;
+    }
+
+    private void drain() {
+        if (discardBuffer == null) {
+            discardBuffer = new byte[BUFFER_SIZE];
+        }
+        int remaining = DRAIN_LIMIT;
+        try {
+            int count;
+            while (remaining > 0 && (count = read(discardBuffer, 0, Math.min(discardBuffer.length, remaining))) != -1) {
+                remaining -= count;
+            }
+        } catch (IOException e) {
+            // The connection will not be re-used; nothing else to do.
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // gzip framing
+    // ----------------------------------------------------------------------
+
+    private void readGzipHeader() throws IOException {
+        if (readUInt16() != 0x8b1f) {
+            throw new ZipException("Not in gzip format");
+        }
+        if (readUInt8() != 8) {
+            throw new ZipException("Unsupported compression method");
+        }
+        int flags = readUInt8();
+        skipBytes(6); // MTIME, XFL, OS
+        if ((flags & FEXTRA) != 0) {
+            skipBytes(readUInt16());
+        }
+        if ((flags & FNAME) != 0) {
+            while (readUInt8() != 0) ;
+        }
+        if ((flags & FCOMMENT) != 0) {
+            while (readUInt8() != 0) ;
+        }
+        if ((flags & FHCRC) != 0) {
+            skipBytes(2);
+        }
+    }
+
+    private void onFinished() throws IOException {
+        finished = true;
+        if (gzip) {
+            // The trailer starts with the input the inflater did not consume.
+            trailerPosition = inputLength - inflater.getRemaining();
+            long expectedCrc = readTrailerUInt32();
+            long expectedSize = readTrailerUInt32();
+            if (expectedCrc != crc.getValue()) {
+                throw new ZipException("Corrupt gzip stream (invalid CRC)");
+            }
+            if (expectedSize != (inflater.getBytesWritten() & 0xffffffffL)) {
+                throw new ZipException("Corrupt gzip stream (invalid size)");
+            }
+        }
+        // Drain the source so that the underlying connection can be re-used.
+        // NOTE: Concatenated gzip members are not supported: anything after the first member is ignored.
+        while (source.read(buffer, 0, buffer.length) != -1) ;
+    }
+
+    private long readTrailerUInt32() throws IOException {
+        long value = 0;
+        for (int i = 0; i < 4; ++i) {
+            int b;
+            if (trailerPosition < inputLength) {
+                b = buffer[trailerPosition++] & 0xff;
+            } else {
+                b = source.read();
+                if (b == -1) {
+                    throw new EOFException("Unexpected end of gzip trailer");
+                }
+            }
+            value |= ((long) b) << (8 * i);
+        }
+        return value;
+    }
+
+    private int readUInt8() throws IOException {
+        int b = source.read();
+        if (b == -1) {
+            throw new EOFException("Unexpected end of gzip header");
+        }
+        return b;
+    }
+
+    private int readUInt16() throws IOException {
+        return readUInt8() | (readUInt8() << 8);
+    }
+
+    private void skipBytes(int count) throws IOException {
+        for (int i = 0; i < count; ++i) {
+            readUInt8();
+        }
+    }
+}
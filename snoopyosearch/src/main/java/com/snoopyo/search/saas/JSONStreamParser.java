@@ -0,0 +1,160 @@
+package com.snoopyo.search.saas;
+
+import android.support.annotation.NonNull;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Parses search responses directly off a stream, without materializing the whole response in memory.
+ * <p>
+ * Hits are handed over to a {@link HitHandler} as soon as they are parsed; only one hit is held in memory at any
+ * time. All other attributes are returned as a regular JSON object.
+ * </p>
+ */
+class JSONStreamParser {
+    private JSONStreamParser() {
+    }
+
+    /**
+     * Parse the response to a single search query.
+     *
+     * @param stream  The response body.
+     * @param handler Handler receiving the hits.
+     * @return The response, without its <code>hits</code> attribute.
+     * @throws SnoopyoException If the stream could not be read or is not valid JSON.
+     */
+    static @NonNull JSONObject parseSearchResults(@NonNull InputStream stream, @NonNull HitHandler handler) throws SnoopyoException {
+        try {
+            JsonReader reader = new JsonReader(new InputStreamReader(stream, "UTF-8"));
+            JSONObject results = readSearchResults(reader, handler, 0);
+            reader.close();
+            return results;
+        } catch (IOException e) {
+            throw new SnoopyoException("Error while reading stream: " + e.getMessage(), e);
+        } catch (IllegalStateException | JSONException e) {
+            throw new SnoopyoException("JSON decode error:" + e.getMessage());
+        }
+    }
+
+    /**
+     * Parse the response to multiple queries.
+     *
+     * @param stream  The response body.
+     * @param handler Handler receiving the hits of all queries.
+     * @return The response, without the <code>hits</code> attribute of each individual results.
+     * @throws SnoopyoException If the stream could not be read or is not valid JSON.
+     */
+    static @NonNull JSONObject parseMultipleQueriesResults(@NonNull InputStream stream, @NonNull HitHandler handler) throws SnoopyoException {
+        try {
+            JsonReader reader = new JsonReader(new InputStreamReader(stream, "UTF-8"));
+            JSONObject content = new JSONObject();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("results") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    JSONArray results = new JSONArray();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        results.put(readSearchResults(reader, handler, results.length()));
+                    }
+                    reader.endArray();
+                    content.put(name, results);
+                } else {
+                    content.put(name, readValue(reader));
+                }
+            }
+            reader.endObject();
+            reader.close();
+            return content;
+        } catch (IOException e) {
+            throw new SnoopyoException("Error while reading stream: " + e.getMessage(), e);
+        } catch (IllegalStateException | JSONException e) {
+            throw new SnoopyoException("JSON decode error:" + e.getMessage());
+        }
+    }
+
+    private static JSONObject readSearchResults(JsonReader reader, HitHandler handler, int resultsIndex) throws IOException, JSONException {
+        JSONObject results = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("hits") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    handler.handleHit(readObject(reader), resultsIndex);
+                }
+                reader.endArray();
+            } else {
+                results.put(name, readValue(reader));
+            }
+        }
+        reader.endObject();
+        return results;
+    }
+
+    /**
+     * Read any JSON value into its <code>org.json</code> representation.
+     */
+    static Object readValue(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                return readObject(reader);
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    array.put(readValue(reader));
+                }
+                reader.endArray();
+                return array;
+            case STRING:
+                return reader.nextString();
+            case NUMBER:
+                return parseNumber(reader.nextString());
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                throw new IllegalStateException("Unexpected token: " + reader.peek());
+        }
+    }
+
+    static JSONObject readObject(JsonReader reader) throws IOException, JSONException {
+        JSONObject object = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            object.put(name, readValue(reader));
+        }
+        reader.endObject();
+        return object;
+    }
+
+    /**
+     * Convert a number literal the same way <code>JSONTokener</code> does: integers when they fit, doubles otherwise.
+     */
+    static Number parseNumber(String literal) {
+        if (literal.indexOf('.') == -1 && literal.indexOf('e') == -1 && literal.indexOf('E') == -1) {
+            try {
+                long value = Long.parseLong(literal);
+                if (value <= Integer.MAX_VALUE && value >= Integer.MIN_VALUE) {
+                    return (int) value;
+                }
+                return value;
+            } catch (NumberFormatException e) {
+                // fall through: too big for a long
+            }
+        }
+        return Double.valueOf(literal);
+    }
+}
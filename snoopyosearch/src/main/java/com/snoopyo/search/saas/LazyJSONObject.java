@@ -0,0 +1,258 @@
+package com.snoopyo.search.saas;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// ----------------------------------------------------------------------
+// IMPLEMENTATION NOTES
+// ----------------------------------------------------------------------
+// A lazy view on a JSON object serialized as UTF-8 bytes.
+// The object is only scanned structurally: member names are decoded, but
+// member values are just located (start and end offsets) until someone
+// actually asks for them. Scanning skips nested values without allocating.
+// ----------------------------------------------------------------------
+
+/**
+ * A read-only JSON object, decoding its members on first access.
+ */
+class LazyJSONObject {
+    /** The raw data. Not copied: must not be modified. */
+    private final @NonNull byte[] data;
+
+    /** Offset of the opening brace. */
+    private final int start;
+
+    /** Offset right after the closing brace. */
+    private final int end;
+
+    /** Spans of the members' values, as (start, end) pairs. Built on first access. */
+    private Map<String, int[]> members;
+
+    /** Members decoded so far. */
+    private final Map<String, Object> values = new HashMap<>();
+
+    /**
+     * Create a view on a whole buffer.
+     *
+     * @param data Raw JSON data (UTF-8).
+     * @throws JSONException If the data is not a JSON object.
+     */
+    LazyJSONObject(@NonNull byte[] data) throws JSONException {
+        this.data = data;
+        this.start = skipWhitespace(data, 0, data.length);
+        if (start >= data.length || data[start] != '{') {
+            throw new JSONException("Not a JSON object");
+        }
+        this.end = skipValue(data, start, data.length);
+    }
+
+    private LazyJSONObject(@NonNull byte[] data, int start, int end) {
+        this.data = data;
+        this.start = start;
+        this.end = end;
+    }
+
+    // ----------------------------------------------------------------------
+    // Accessors
+    // ----------------------------------------------------------------------
+
+    /** Test whether a member exists. */
+    synchronized boolean has(@NonNull String name) {
+        return members().containsKey(name);
+    }
+
+    /**
+     * Get the decoded value of a member.
+     *
+     * @return The value, or null if absent or invalid.
+     */
+    synchronized @Nullable Object opt(@NonNull String name) {
+        if (values.containsKey(name)) {
+            return values.get(name);
+        }
+        int[] span = members().get(name);
+        Object value = null;
+        if (span != null) {
+            try {
+                value = decode(span[0], span[1]);
+            } catch (JSONException e) {
+                // invalid value => null
+            }
+        }
+        values.put(name, value);
+        return value;
+    }
+
+    /**
+     * Get a nested object as a lazy view, without decoding it.
+     *
+     * @return The view, or null if the member is absent or not an object.
+     */
+    synchronized @Nullable LazyJSONObject optLazyObject(@NonNull String name) {
+        int[] span = members().get(name);
+        if (span == null || data[span[0]] != '{') {
+            return null;
+        }
+        return new LazyJSONObject(data, span[0], span[1]);
+    }
+
+    /**
+     * Get the elements of a nested array of objects as lazy views, without decoding them.
+     *
+     * @return The views (elements that are not objects are skipped), or null if the member is absent or not an array.
+     */
+    synchronized @Nullable List<LazyJSONObject> optLazyObjects(@NonNull String name) {
+        int[] span = members().get(name);
+        if (span == null || data[span[0]] != '[') {
+            return null;
+        }
+        List<LazyJSONObject> elements = new ArrayList<>();
+        int i = skipWhitespace(data, span[0] + 1, span[1]);
+        while (i < span[1] && data[i] != ']') {
+            int elementEnd = skipValue(data, i, span[1]);
+            if (data[i] == '{') {
+                elements.add(new LazyJSONObject(data, i, elementEnd));
+            }
+            i = skipWhitespace(data, elementEnd, span[1]);
+            if (i < span[1] && data[i] == ',') {
+                i = skipWhitespace(data, i + 1, span[1]);
+            }
+        }
+        return elements;
+    }
+
+    /** Get the names of all members. */
+    synchronized @NonNull List<String> names() {
+        return new ArrayList<>(members().keySet());
+    }
+
+    /**
+     * Decode the whole object.
+     *
+     * @return An equivalent, regular JSON object.
+     */
+    @NonNull JSONObject toJSONObject() throws JSONException {
+        return (JSONObject) decode(start, end);
+    }
+
+    // ----------------------------------------------------------------------
+    // Scanning
+    // ----------------------------------------------------------------------
+
+    private Map<String, int[]> members() {
+        if (members == null) {
+            members = new HashMap<>();
+            int i = skipWhitespace(data, start + 1, end);
+            while (i < end && data[i] == '"') {
+                int nameEnd = skipValue(data, i, end);
+                String name = decodeString(i, nameEnd);
+                i = skipWhitespace(data, nameEnd, end);
+                if (i >= end || data[i] != ':') {
+                    break; // malformed
+                }
+                int valueStart = skipWhitespace(data, i + 1, end);
+                int valueEnd = skipValue(data, valueStart, end);
+                members.put(name, new int[]{valueStart, valueEnd});
+                i = skipWhitespace(data, valueEnd, end);
+                if (i < end && data[i] == ',') {
+                    i = skipWhitespace(data, i + 1, end);
+                }
+            }
+        }
+        return members;
+    }
+
+    private String decodeString(int from, int to) {
+        // Fast path: no escape sequence.
+        boolean escaped = false;
+        for (int i = from + 1; i < to - 1; ++i) {
+            if (data[i] == '\\') {
+                escaped = true;
+                break;
+            }
+        }
+        try {
+            if (!escaped) {
+                return new String(data, from + 1, Math.max(0, to - from - 2), "UTF-8");
+            }
+            return String.valueOf(decode(from, to));
+        } catch (UnsupportedEncodingException | JSONException e) {
+            return "";
+        }
+    }
+
+    private Object decode(int from, int to) throws JSONException {
+        try {
+            return new JSONTokener(new String(data, from, to - from, "UTF-8")).nextValue();
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e); // should never happen: UTF-8 is always supported
+        }
+    }
+
+    private static int skipWhitespace(byte[] data, int i, int end) {
+        while (i < end && (data[i] == ' ' || data[i] == '\n' || data[i] == '\r' || data[i] == '\t')) {
+            ++i;
+        }
+        return i;
+    }
+
+    /**
+     * Skip a JSON value.
+     *
+     * @return The offset right after the value.
+     */
+    private static int skipValue(byte[] data, int i, int end) {
+        if (i >= end) {
+            return end;
+        }
+        switch (data[i]) {
+            case '"':
+                for (++i; i < end; ++i) {
+                    if (data[i] == '\\') {
+                        ++i;
+                    } else if (data[i] == '"') {
+                        return i + 1;
+                    }
+                }
+                return end;
+            case '{':
+            case '[':
+                int depth = 0;
+                for (; i < end; ++i) {
+                    switch (data[i]) {
+                        case '"':
+                            i = skipValue(data, i, end) - 1;
+                            break;
+                        case '{':
+                        case '[':
+                            ++depth;
+                            break;
+                        case '}':
+                        case ']':
+                            if (--depth == 0) {
+                                return i + 1;
+                            }
+                            break;
+                    }
+                }
+                return end;
+            default:
+                // Literal: number, `true`, `false` or `null`.
+                while (i < end && data[i] != ',' && data[i] != '}' && data[i] != ']'
+                        && data[i] != ' ' && data[i] != '\n' && data[i] != '\r' && data[i] != '\t') {
+                    ++i;
+                }
+                return i;
+        }
+    }
+}
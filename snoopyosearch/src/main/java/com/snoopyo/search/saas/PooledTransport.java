@@ -0,0 +1,696 @@
+package com.snoopyo.search.saas;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * A {@link Transport} keeping a bounded pool of persistent HTTP/1.1 connections per host.
+ * <p>
+ * Connections are returned to the pool once a response body has been fully read and closed, and are re-used by
+ * subsequent requests to the same host, thus saving the TCP and TLS handshakes. Idle connections are evicted after
+ * a keep-alive duration.
+ * </p>
+ * <p>
+ * NOTE: This transport connects directly to the target host; system proxy settings are not honored.
+ * </p>
+ */
+public class PooledTransport implements Transport {
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    /** Default maximum number of idle connections kept per host. */
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS_PER_HOST = 4;
+
+    /** Default time after which an idle connection is closed (ms). */
+    public static final long DEFAULT_KEEP_ALIVE_DURATION = 60000;
+
+    private static final String CRLF = "\r\n";
+
+    // ----------------------------------------------------------------------
+    // Fields
+    // ----------------------------------------------------------------------
+
+    /** Maximum number of idle connections kept per host. */
+    private final int maxIdleConnectionsPerHost;
+
+    /** Time after which an idle connection is closed (ms). */
+    private final long keepAliveDuration;
+
+    private final @NonNull SSLSocketFactory sslSocketFactory;
+    private final @NonNull HostnameVerifier hostnameVerifier;
+
+    /** Idle connections, by route (scheme, host and port). Most recently used connections come first. */
+    private final Map<String, ArrayDeque<Connection>> idleConnections = new HashMap<>();
+
+    // ----------------------------------------------------------------------
+    // Initialization
+    // ----------------------------------------------------------------------
+
+    /**
+     * Create a new transport with default settings.
+     */
+    public PooledTransport() {
+        this(DEFAULT_MAX_IDLE_CONNECTIONS_PER_HOST, DEFAULT_KEEP_ALIVE_DURATION);
+    }
+
+    /**
+     * Create a new transport.
+     *
+     * @param maxIdleConnectionsPerHost Maximum number of idle connections kept per host.
+     * @param keepAliveDuration         Time after which an idle connection is closed (ms).
+     */
+    public PooledTransport(int maxIdleConnectionsPerHost, long keepAliveDuration) {
+        if (maxIdleConnectionsPerHost < 0 || keepAliveDuration < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.maxIdleConnectionsPerHost = maxIdleConnectionsPerHost;
+        this.keepAliveDuration = keepAliveDuration;
+        this.sslSocketFactory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+        this.hostnameVerifier = HttpsURLConnection.getDefaultHostnameVerifier();
+    }
+
+    // ----------------------------------------------------------------------
+    // Accessors
+    // ----------------------------------------------------------------------
+
+    public int getMaxIdleConnectionsPerHost() {
+        return maxIdleConnectionsPerHost;
+    }
+
+    public long getKeepAliveDuration() {
+        return keepAliveDuration;
+    }
+
+    /**
+     * Count the idle connections currently held by the pool.
+     *
+     * @return The number of idle connections, all hosts included.
+     */
+    public synchronized int getIdleConnectionCount() {
+        int count = 0;
+        for (ArrayDeque<Connection> connections : idleConnections.values()) {
+            count += connections.size();
+        }
+        return count;
+    }
+
+    /**
+     * Close all idle connections.
+     */
+    public void evictAll() {
+        synchronized (this) {
+            for (ArrayDeque<Connection> connections : idleConnections.values()) {
+                for (Connection connection : connections) {
+                    connection.closeQuietly();
+                }
+            }
+            idleConnections.clear();
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Transport
+    // ----------------------------------------------------------------------
+
+    @Override
+    public @NonNull HttpResponse execute(@NonNull HttpRequest request) throws IOException {
+        final String route = routeOf(request.url);
+        Connection connection;
+        while ((connection = acquire(route)) != null && !connection.isHealthy()) {
+            connection.closeQuietly();
+        }
+        if (connection != null) {
+            try {
+                return exchange(connection, request);
+            } catch (IOException e) {
+                // The server may have closed the idle connection in the meantime: retry once on a fresh connection.
+                connection.closeQuietly();
+                if (!canRetry(connection, request, e)) {
+                    throw e;
+                }
+            }
+        }
+        connection = connect(request);
+        try {
+            return exchange(connection, request);
+        } catch (IOException e) {
+            connection.closeQuietly();
+            throw e;
+        }
+    }
+
+    /**
+     * Test whether a failed exchange on a pooled connection may be retried on a fresh connection: only if the server
+     * closed the connection before responding, and the request can safely be sent again.
+     */
+    private static boolean canRetry(Connection connection, HttpRequest request, IOException e) {
+        if (connection.responseStarted || request.isCancelled()) {
+            return false;
+        }
+        // A stale connection fails with an end of stream, a reset or a broken pipe. A timeout means that the server
+        // may be processing the request; retrying would also exceed the request's time budget.
+        if (!(e instanceof EOFException || e instanceof SocketException)) {
+            return false;
+        }
+        // Once sent, only idempotent requests may be replayed: the server may have received and applied the others.
+        return !connection.requestSent || isIdempotent(request.method);
+    }
+
+    private static boolean isIdempotent(String method) {
+        return method.equals("GET") || method.equals("HEAD");
+    }
+
+    /**
+     * Perform one HTTP exchange on a connection.
+     */
+    private HttpResponse exchange(final Connection connection, HttpRequest request) throws IOException {
+        // Closing the socket aborts any pending I/O, unblocking the requesting thread.
+        final Runnable abort = new Runnable() {
+            @Override
+            public void run() {
+                connection.closeQuietly();
+            }
+        };
+        final CancellationToken cancellationToken = request.cancellationToken;
+        if (cancellationToken != null) {
+            cancellationToken.addListener(abort);
+        }
+        try {
+            return exchange(connection, request, abort);
+        } catch (IOException e) {
+            if (cancellationToken != null) {
+                cancellationToken.removeListener(abort);
+            }
+            throw e;
+        }
+    }
+
+    private HttpResponse exchange(final Connection connection, final HttpRequest request, final Runnable abort) throws IOException {
+        connection.socket.setSoTimeout(request.readTimeout);
+        connection.requestSent = false;
+        connection.responseStarted = false;
+        writeRequest(connection.output, request);
+        connection.requestSent = true;
+
+        // Wait for the first byte of the response, telling a connection closed by the server from a truncated response.
+        connection.input.mark(1);
+        if (connection.input.read() == -1) {
+            throw new EOFException("Connection closed by the server");
+        }
+        connection.input.reset();
+        connection.responseStarted = true;
+
+        // Read the status line, skipping any informational (1xx) response.
+        int statusCode;
+        String statusLine;
+        Map<String, String> headers;
+        do {
+            statusLine = readLine(connection.input);
+            statusCode = parseStatusCode(statusLine);
+            headers = readHeaders(connection.input);
+        } while (statusCode / 100 == 1);
+
+        // Determine whether the connection can be re-used after this exchange.
+        boolean reusable = statusLine.startsWith("HTTP/1.1") && !"close".equalsIgnoreCase(headers.get("Connection"));
+
+        // Frame the body.
+        InputStream body;
+        String transferEncoding = headers.get("Transfer-Encoding");
+        String contentLength = headers.get("Content-Length");
+        if (request.method.equals("HEAD") || statusCode == 204 || statusCode == 304) {
+            body = new FixedLengthInputStream(connection.input, 0);
+        } else if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+            body = new ChunkedInputStream(connection.input);
+        } else if (contentLength != null) {
+            try {
+                body = new FixedLengthInputStream(connection.input, Long.parseLong(contentLength.trim()));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid Content-Length: " + contentLength);
+            }
+        } else {
+            // Delimited by the end of the connection.
+            body = connection.input;
+            reusable = false;
+        }
+        final boolean canRecycle = reusable;
+        final String route = routeOf(request.url);
+        return new HttpResponse(statusCode, headers, new ConnectionInputStream(body) {
+            @Override
+            protected void onClose(boolean exhausted) {
+                if (request.cancellationToken != null) {
+                    request.cancellationToken.removeListener(abort);
+                }
+                if (exhausted && canRecycle && !connection.socket.isClosed()) {
+                    release(route, connection);
+                } else {
+                    connection.closeQuietly();
+                }
+            }
+        });
+    }
+
+    private static void writeRequest(OutputStream output, HttpRequest request) throws IOException {
+        URL url = request.url;
+        StringBuilder head = new StringBuilder();
+        head.append(request.method).append(' ').append(url.getFile().isEmpty() ? "/" : url.getFile()).append(" HTTP/1.1").append(CRLF);
+        head.append("Host: ").append(url.getHost());
+        if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+            head.append(':').append(url.getPort());
+        }
+        head.append(CRLF);
+        for (Map.Entry<String, String> entry : request.headers.entrySet()) {
+            if (entry.getValue() != null) {
+                head.append(entry.getKey()).append(": ").append(entry.getValue()).append(CRLF);
+            }
+        }
+        if (request.body != null) {
+            head.append("Content-Length: ").append(request.body.length).append(CRLF);
+        } else if (request.bodyWriter != null) {
+            head.append("Transfer-Encoding: chunked").append(CRLF);
+        } else if (request.method.equals("POST") || request.method.equals("PUT")) {
+            head.append("Content-Length: 0").append(CRLF);
+        }
+        head.append(CRLF);
+        output.write(head.toString().getBytes("UTF-8"));
+        if (request.body != null) {
+            output.write(request.body);
+        } else if (request.bodyWriter != null) {
+            ChunkedOutputStream chunkedOutput = new ChunkedOutputStream(output);
+            request.bodyWriter.writeTo(chunkedOutput);
+            chunkedOutput.finish();
+        }
+        output.flush();
+    }
+
+    private static int parseStatusCode(String statusLine) throws IOException {
+        // Format: `HTTP/1.1 200 OK`
+        if (!statusLine.startsWith("HTTP/") || statusLine.length() < 12) {
+            throw new IOException("Unexpected status line: " + statusLine);
+        }
+        try {
+            return Integer.parseInt(statusLine.substring(9, 12));
+        } catch (NumberFormatException e) {
+            throw new IOException("Unexpected status line: " + statusLine);
+        }
+    }
+
+    private static Map<String, String> readHeaders(InputStream input) throws IOException {
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        String line;
+        while (!(line = readLine(input)).isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue; // ignore invalid header
+            }
+            String name = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            String previous = headers.get(name);
+            headers.put(name, previous == null ? value : previous + ", " + value);
+        }
+        return headers;
+    }
+
+    /**
+     * Read a CRLF-terminated line (without the terminator).
+     */
+    private static String readLine(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int c;
+        while ((c = input.read()) != '\n') {
+            if (c == -1) {
+                throw new EOFException("Unexpected end of stream");
+            }
+            if (c != '\r') {
+                line.write(c);
+            }
+        }
+        return line.toString("UTF-8");
+    }
+
+    // ----------------------------------------------------------------------
+    // Pool management
+    // ----------------------------------------------------------------------
+
+    private static String routeOf(URL url) {
+        return url.getProtocol() + "://" + url.getHost() + ":" + (url.getPort() == -1 ? url.getDefaultPort() : url.getPort());
+    }
+
+    /**
+     * Take an idle connection from the pool, if any.
+     */
+    private synchronized @Nullable Connection acquire(String route) {
+        ArrayDeque<Connection> connections = idleConnections.get(route);
+        if (connections == null) {
+            return null;
+        }
+        final long now = System.currentTimeMillis();
+        Connection connection;
+        while ((connection = connections.pollFirst()) != null) {
+            if (now - connection.idleSince < keepAliveDuration && !connection.socket.isClosed()) {
+                return connection;
+            }
+            connection.closeQuietly();
+        }
+        return null;
+    }
+
+    /**
+     * Return a connection to the pool, or close it if the pool is full.
+     */
+    private void release(String route, Connection connection) {
+        synchronized (this) {
+            ArrayDeque<Connection> connections = idleConnections.get(route);
+            if (connections == null) {
+                connections = new ArrayDeque<>(maxIdleConnectionsPerHost);
+                idleConnections.put(route, connections);
+            }
+            // Evict expired connections.
+            final long now = System.currentTimeMillis();
+            for (Iterator<Connection> iterator = connections.iterator(); iterator.hasNext(); ) {
+                Connection idleConnection = iterator.next();
+                if (now - idleConnection.idleSince >= keepAliveDuration) {
+                    idleConnection.closeQuietly();
+                    iterator.remove();
+                }
+            }
+            if (connections.size() < maxIdleConnectionsPerHost) {
+                connection.idleSince = now;
+                connections.addFirst(connection);
+                return;
+            }
+        }
+        connection.closeQuietly();
+    }
+
+    private Connection connect(HttpRequest request) throws IOException {
+        final URL url = request.url;
+        final String host = url.getHost();
+        final int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        Socket socket = new Socket();
+        final Socket plainSocket = socket;
+        // Closing the socket aborts the connection and handshake, unblocking the requesting thread.
+        final Runnable abort = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    plainSocket.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        };
+        if (request.cancellationToken != null) {
+            request.cancellationToken.addListener(abort);
+        }
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(host, port), request.connectTimeout);
+            socket.setSoTimeout(request.readTimeout);
+            if (url.getProtocol().equals("https")) {
+                SSLSocket sslSocket = (SSLSocket) sslSocketFactory.createSocket(socket, host, port, true /* autoClose */);
+                socket = sslSocket;
+                sslSocket.startHandshake();
+                if (!hostnameVerifier.verify(host, sslSocket.getSession())) {
+                    throw new SSLPeerUnverifiedException("Hostname " + host + " not verified");
+                }
+            }
+            return new Connection(socket);
+        } catch (IOException e) {
+            try {
+                socket.close();
+            } catch (IOException e2) {
+                // ignore
+            }
+            throw e;
+        } finally {
+            if (request.cancellationToken != null) {
+                request.cancellationToken.removeListener(abort);
+            }
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Types
+    // ----------------------------------------------------------------------
+
+    /**
+     * A persistent connection to a host.
+     */
+    private static class Connection {
+        final Socket socket;
+        final InputStream input;
+        final OutputStream output;
+
+        /** Time when this connection was last returned to the pool. */
+        long idleSince;
+
+        /** Whether the current request has been entirely written and flushed. */
+        boolean requestSent;
+
+        /** Whether the server has started responding to the current exchange. */
+        boolean responseStarted;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.input = new BufferedInputStream(socket.getInputStream(), 8192);
+            this.output = new BufferedOutputStream(socket.getOutputStream(), 8192);
+        }
+
+        /**
+         * Test whether this idle connection is still usable, i.e. it has not been closed by the server.
+         */
+        boolean isHealthy() {
+            if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+                return false;
+            }
+            try {
+                int readTimeout = socket.getSoTimeout();
+                try {
+                    // An idle connection has nothing to read: wait for data just long enough to detect the end of
+                    // stream.
+                    socket.setSoTimeout(1);
+                    input.read();
+                    return false; // either closed, or out of sync (unexpected data)
+                } finally {
+                    socket.setSoTimeout(readTimeout);
+                }
+            } catch (SocketTimeoutException e) {
+                return true; // nothing to read
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        void closeQuietly() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Body stream notifying when it is closed, and whether it had been read until the end.
+     */
+    private abstract static class ConnectionInputStream extends InputStream {
+        private final InputStream source;
+        private boolean exhausted = false;
+        private boolean closed = false;
+
+        ConnectionInputStream(InputStream source) {
+            this.source = source;
+        }
+
+        protected abstract void onClose(boolean exhausted);
+
+        @Override
+        public int read() throws IOException {
+            byte[] buffer = new byte[1];
+            int count = read(buffer, 0, 1);
+            return count == -1 ? -1 : buffer[0] & 0xff;
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            int count = source.read(buffer, offset, length);
+            if (count == -1) {
+                exhausted = true;
+            }
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return closed ? 0 : source.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            onClose(exhausted);
+        }
+    }
+
+    /**
+     * Body delimited by a <code>Content-Length</code> header.
+     */
+    private static class FixedLengthInputStream extends InputStream {
+        private final InputStream source;
+        private long remaining;
+
+        FixedLengthInputStream(InputStream source, long length) {
+            this.source = source;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] buffer = new byte[1];
+            int count = read(buffer, 0, 1);
+            return count == -1 ? -1 : buffer[0] & 0xff;
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int count = source.read(buffer, offset, (int) Math.min(length, remaining));
+            if (count == -1) {
+                throw new EOFException("Unexpected end of stream");
+            }
+            remaining -= count;
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(source.available(), remaining);
+        }
+    }
+
+    /**
+     * Body using the chunked transfer encoding.
+     */
+    private static class ChunkedInputStream extends InputStream {
+        private final InputStream source;
+        private long chunkRemaining = 0;
+        private boolean finished = false;
+
+        ChunkedInputStream(InputStream source) {
+            this.source = source;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] buffer = new byte[1];
+            int count = read(buffer, 0, 1);
+            return count == -1 ? -1 : buffer[0] & 0xff;
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+            if (finished) {
+                return -1;
+            }
+            if (chunkRemaining == 0) {
+                String sizeLine = readLine(source);
+                int extension = sizeLine.indexOf(';');
+                if (extension != -1) {
+                    sizeLine = sizeLine.substring(0, extension);
+                }
+                try {
+                    chunkRemaining = Long.parseLong(sizeLine.trim(), 16);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid chunk size: " + sizeLine);
+                }
+                if (chunkRemaining == 0) {
+                    // Skip trailers.
+                    readHeaders(source);
+                    finished = true;
+                    return -1;
+                }
+            }
+            int count = source.read(buffer, offset, (int) Math.min(length, chunkRemaining));
+            if (count == -1) {
+                throw new EOFException("Unexpected end of stream");
+            }
+            chunkRemaining -= count;
+            if (chunkRemaining == 0) {
+                readLine(source); // CRLF after chunk data
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Frames a request body with chunked transfer encoding. Every write becomes one chunk: the underlying stream
+     * should be buffered.
+     */
+    private static class ChunkedOutputStream extends OutputStream {
+        private final OutputStream sink;
+
+        ChunkedOutputStream(OutputStream sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(@NonNull byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return; // an empty chunk would terminate the body
+            }
+            sink.write((Integer.toHexString(length) + CRLF).getBytes("US-ASCII"));
+            sink.write(buffer, offset, length);
+            sink.write(CRLF.getBytes("US-ASCII"));
+        }
+
+        @Override
+        public void flush() throws IOException {
+            sink.flush();
+        }
+
+        /**
+         * Write the last chunk. The underlying stream is left open.
+         */
+        void finish() throws IOException {
+            sink.write(("0" + CRLF + CRLF).getBytes("US-ASCII"));
+        }
+    }
+}
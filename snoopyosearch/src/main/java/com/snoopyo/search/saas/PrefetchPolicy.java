@@ -0,0 +1,17 @@
+package com.snoopyo.search.saas;
+
+/**
+ * Decides whether speculative searches may be sent, e.g. only when the device is on an unmetered network.
+ * <p>
+ * A typical implementation checks <code>ConnectivityManager.isActiveNetworkMetered()</code> and the battery saver
+ * state. It is called on a background thread.
+ * </p>
+ */
+public interface PrefetchPolicy {
+    /**
+     * Decide whether to prefetch now.
+     *
+     * @return true if speculative searches may be sent, false to skip them.
+     */
+    boolean shouldPrefetch();
+}
@@ -0,0 +1,548 @@
+package com.snoopyo.search.saas;
+
+import android.support.annotation.NonNull;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// ----------------------------------------------------------------------
+// IMPLEMENTATION NOTES
+// ----------------------------------------------------------------------
+// Requests started through `call()` notify their completion directly on
+// the thread that completed them, instead of the client's completion
+// executor (the main thread by default). Chained steps therefore start
+// right away from a background thread; only listeners registered by the
+// caller go through the executor of their choice.
+//
+// Cancellation flows upstream: cancelling a future cancels the request
+// or future it is currently waiting for. It also flows downstream, so
+// that dependent futures never hang.
+// ----------------------------------------------------------------------
+
+/**
+ * The pending result of one or several chained requests.
+ * <p>
+ * Any asynchronous method taking a {@link CompletionHandler} can be turned into a future with
+ * {@link #call(AsyncCall)}. Futures can then be chained with {@link #thenCompose(Continuation)} and
+ * {@link #thenApply(Transformation)}, or combined with {@link #allOf(Collection)}. For example:
+ * </p>
+ * <pre>
+ * RequestFuture.call(new RequestFuture.AsyncCall() {
+ *     public Request start(CompletionHandler handler) { return index.searchAsync(query, handler); }
+ * }).thenCompose(new RequestFuture.Continuation&lt;JSONObject, JSONObject&gt;() {
+ *     public RequestFuture&lt;JSONObject&gt; then(JSONObject result) throws SnoopyoException {
+ *         ... // e.g. retrieve objects referenced by the hits
+ *     }
+ * }).addListener(listener, mainThreadExecutor);
+ * </pre>
+ * <p>
+ * Continuations and transformations run on background threads, and must not block.
+ * </p>
+ *
+ * @param <T> Type of the result.
+ */
+public class RequestFuture<T> implements Request, Future<T> {
+    /**
+     * Starts an asynchronous request.
+     */
+    public interface AsyncCall {
+        /**
+         * Start the request.
+         *
+         * @param completionHandler The completion handler to pass to the asynchronous method.
+         * @return The started request.
+         */
+        @NonNull Request start(@NonNull CompletionHandler completionHandler);
+    }
+
+    /**
+     * Starts the next step of a chain, from the result of the previous one.
+     *
+     * @param <T> Type of the previous step's result.
+     * @param <U> Type of the next step's result.
+     */
+    public interface Continuation<T, U> {
+        /**
+         * Start the next step.
+         *
+         * @param result The previous step's result.
+         * @return A future of the next step's result.
+         * @throws SnoopyoException To fail the chain.
+         */
+        @NonNull RequestFuture<U> then(T result) throws SnoopyoException;
+    }
+
+    /**
+     * Transforms the result of a step.
+     *
+     * @param <T> Type of the original result.
+     * @param <U> Type of the transformed result.
+     */
+    public interface Transformation<T, U> {
+        /**
+         * Transform the result.
+         *
+         * @param result The original result.
+         * @return The transformed result.
+         * @throws SnoopyoException To fail the chain.
+         */
+        U apply(T result) throws SnoopyoException;
+    }
+
+    /**
+     * Receives the outcome of a {@link RequestFuture}. This is a generic version of {@link CompletionHandler}.
+     *
+     * @param <T> Type of the result.
+     */
+    public interface Listener<T> {
+        /**
+         * Called when the future has completed, either successfully or failing.
+         *
+         * @param content Result (in case of success).
+         * @param error   Error that was encountered (in case of failure).
+         */
+        void requestCompleted(T content, SnoopyoException error);
+    }
+
+    /** Whether this future has completed or been cancelled. Guarded by `this`. */
+    private boolean done = false;
+
+    /** Whether this future has been cancelled. Guarded by `this`. */
+    private boolean cancelled = false;
+
+    /** Result, in case of success. Guarded by `this`. */
+    private T result;
+
+    /** Error, in case of failure. Guarded by `this`. */
+    private SnoopyoException error;
+
+    /** Callbacks to run on completion, including cancellation. Guarded by `this`; null once done. */
+    private List<Runnable> callbacks = new ArrayList<>();
+
+    /** The request or future this future is currently waiting for, if any. */
+    private volatile Request upstream;
+
+    /**
+     * Construct a new, pending future.
+     */
+    RequestFuture() {
+    }
+
+    // ----------------------------------------------------------------------
+    // Creation
+    // ----------------------------------------------------------------------
+
+    /**
+     * Start an asynchronous request, and get a future of its result.
+     * The request's completion handler is called directly on the thread completing it, regardless of the client's
+     * completion executor.
+     *
+     * @param call Starts the request.
+     * @return A future of the request's result.
+     */
+    public static @NonNull RequestFuture<JSONObject> call(@NonNull AsyncCall call) {
+        final RequestFuture<JSONObject> future = new RequestFuture<>();
+        Executor previous = FutureRequest.setCompletionExecutorOverride(FutureRequest.DIRECT_EXECUTOR);
+        try {
+            future.setUpstream(call.start(new CompletionHandler() {
+                @Override
+                public void requestCompleted(JSONObject content, SnoopyoException error) {
+                    future.complete(content, error);
+                }
+            }));
+        } finally {
+            FutureRequest.setCompletionExecutorOverride(previous);
+        }
+        return future;
+    }
+
+    /**
+     * Get an already completed future.
+     *
+     * @param result The result.
+     * @return A future of this result.
+     */
+    public static @NonNull <T> RequestFuture<T> completed(T result) {
+        RequestFuture<T> future = new RequestFuture<>();
+        future.complete(result, null);
+        return future;
+    }
+
+    /**
+     * Get an already failed future.
+     *
+     * @param error The error.
+     * @return A future failing with this error.
+     */
+    public static @NonNull <T> RequestFuture<T> failed(@NonNull SnoopyoException error) {
+        RequestFuture<T> future = new RequestFuture<>();
+        future.complete(null, error);
+        return future;
+    }
+
+    /**
+     * Combine several futures into a future of all their results.
+     * If one of them fails, the combined future fails with the same error, and the others are cancelled.
+     *
+     * @param futures The futures to combine.
+     * @return A future of the results, in the same order as the futures.
+     */
+    public static @NonNull <T> RequestFuture<List<T>> allOf(@NonNull Collection<? extends RequestFuture<? extends T>> futures) {
+        final List<RequestFuture<? extends T>> inputs = new ArrayList<>(futures);
+        final RequestFuture<List<T>> combined = new RequestFuture<>();
+        if (inputs.isEmpty()) {
+            combined.complete(Collections.<T>emptyList(), null);
+            return combined;
+        }
+        final List<T> results = new ArrayList<>(Collections.<T>nCopies(inputs.size(), null));
+        final AtomicInteger remaining = new AtomicInteger(inputs.size());
+        combined.setUpstream(new Request() {
+            @Override
+            public void cancel() {
+                for (RequestFuture<? extends T> input : inputs) {
+                    input.cancel();
+                }
+            }
+
+            @Override
+            public boolean isFinished() {
+                return remaining.get() == 0;
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return combined.isCancelled();
+            }
+        });
+        for (int i = 0; i < inputs.size(); ++i) {
+            final int index = i;
+            final RequestFuture<? extends T> input = inputs.get(i);
+            input.onDone(new Runnable() {
+                @Override
+                public void run() {
+                    final T result;
+                    final SnoopyoException error;
+                    synchronized (input) {
+                        result = input.result;
+                        error = input.error;
+                    }
+                    if (input.isCancelled()) {
+                        combined.cancel();
+                        return;
+                    }
+                    if (error != null) {
+                        if (combined.complete(null, error)) {
+                            for (RequestFuture<? extends T> other : inputs) {
+                                other.cancel();
+                            }
+                        }
+                        return;
+                    }
+                    synchronized (results) {
+                        results.set(index, result);
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        synchronized (results) {
+                            combined.complete(results, null);
+                        }
+                    }
+                }
+            });
+        }
+        return combined;
+    }
+
+    /**
+     * Combine several futures into a future of all their results.
+     *
+     * @param futures The futures to combine.
+     * @return A future of the results, in the same order as the futures.
+     * @see #allOf(Collection)
+     */
+    @SafeVarargs
+    public static @NonNull <T> RequestFuture<List<T>> allOf(@NonNull RequestFuture<? extends T>... futures) {
+        // Copy rather than wrap the array, so that it never escapes this method.
+        List<RequestFuture<? extends T>> futureList = new ArrayList<>(futures.length);
+        for (RequestFuture<? extends T> future : futures) {
+            futureList.add(future);
+        }
+        return allOf(futureList);
+    }
+
+    // ----------------------------------------------------------------------
+    // Chaining
+    // ----------------------------------------------------------------------
+
+    /**
+     * Chain another step after this one.
+     * The continuation is called on the thread completing this future, only if it succeeds.
+     *
+     * @param continuation Starts the next step from this future's result.
+     * @return A future of the next step's result.
+     */
+    public @NonNull <U> RequestFuture<U> thenCompose(@NonNull final Continuation<? super T, U> continuation) {
+        final RequestFuture<U> next = new RequestFuture<>();
+        next.setUpstream(this);
+        onDone(new Runnable() {
+            @Override
+            public void run() {
+                final T content;
+                synchronized (RequestFuture.this) {
+                    if (cancelled) {
+                        next.cancel();
+                        return;
+                    }
+                    if (error != null) {
+                        next.complete(null, error);
+                        return;
+                    }
+                    content = result;
+                }
+                try {
+                    next.follow(continuation.then(content));
+                } catch (SnoopyoException e) {
+                    next.complete(null, e);
+                }
+            }
+        });
+        return next;
+    }
+
+    /**
+     * Transform the result of this future.
+     * The transformation is called on the thread completing this future, only if it succeeds.
+     *
+     * @param transformation Transforms this future's result.
+     * @return A future of the transformed result.
+     */
+    public @NonNull <U> RequestFuture<U> thenApply(@NonNull final Transformation<? super T, U> transformation) {
+        return thenCompose(new Continuation<T, U>() {
+            @NonNull
+            @Override
+            public RequestFuture<U> then(T result) throws SnoopyoException {
+                return completed(transformation.apply(result));
+            }
+        });
+    }
+
+    /**
+     * Register a listener to be notified of this future's outcome.
+     * The listener is not called if this future is cancelled.
+     *
+     * @param listener The listener.
+     * @param executor Executor on which to call the listener.
+     * @return This instance.
+     */
+    public @NonNull RequestFuture<T> addListener(@NonNull final Listener<? super T> listener, @NonNull final Executor executor) {
+        onDone(new Runnable() {
+            @Override
+            public void run() {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        final T content;
+                        final SnoopyoException exception;
+                        synchronized (RequestFuture.this) {
+                            // NOTE: Cancellation might have intervened before the listener could be called.
+                            if (cancelled) {
+                                return;
+                            }
+                            content = result;
+                            exception = error;
+                        }
+                        listener.requestCompleted(content, exception);
+                    }
+                });
+            }
+        });
+        return this;
+    }
+
+    // ----------------------------------------------------------------------
+    // Request
+    // ----------------------------------------------------------------------
+
+    /**
+     * Cancel this future, and the request it is waiting for.
+     * Listeners will not be called after a future has been cancelled. Dependent futures are cancelled as well.
+     */
+    @Override
+    public void cancel() {
+        cancel(true);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        final List<Runnable> pendingCallbacks;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            done = true;
+            cancelled = true;
+            pendingCallbacks = callbacks;
+            callbacks = null;
+            notifyAll();
+        }
+        Request request = upstream;
+        if (request != null) {
+            request.cancel();
+        }
+        runAll(pendingCallbacks);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isFinished() {
+        return done;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    // ----------------------------------------------------------------------
+    // Future
+    // ----------------------------------------------------------------------
+
+    /**
+     * Wait for the result. Do not call this method on the main thread.
+     *
+     * @return The result.
+     * @throws ExecutionException If the future failed; the cause is a {@link SnoopyoException}.
+     */
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (!done) {
+            wait();
+        }
+        return getResult();
+    }
+
+    /**
+     * Wait for the result, at most for the specified time. Do not call this method on the main thread.
+     *
+     * @return The result.
+     * @throws ExecutionException If the future failed; the cause is a {@link SnoopyoException}.
+     */
+    @Override
+    public synchronized T get(long timeout, @NonNull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!done) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return getResult();
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation
+    // ----------------------------------------------------------------------
+
+    /** Must be called with the lock held, once done. */
+    private T getResult() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        if (error != null) {
+            throw new ExecutionException(error);
+        }
+        return result;
+    }
+
+    /**
+     * Complete this future.
+     *
+     * @return true if completed by this call, false if it was already done or cancelled.
+     */
+    boolean complete(T result, SnoopyoException error) {
+        final List<Runnable> pendingCallbacks;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            done = true;
+            this.result = result;
+            this.error = error;
+            pendingCallbacks = callbacks;
+            callbacks = null;
+            upstream = null;
+            notifyAll();
+        }
+        runAll(pendingCallbacks);
+        return true;
+    }
+
+    /**
+     * Complete this future with the outcome of another one.
+     */
+    private void follow(@NonNull final RequestFuture<? extends T> other) {
+        setUpstream(other);
+        other.onDone(new Runnable() {
+            @Override
+            public void run() {
+                final T result;
+                final SnoopyoException error;
+                synchronized (other) {
+                    result = other.result;
+                    error = other.error;
+                }
+                if (other.isCancelled()) {
+                    cancel();
+                } else {
+                    complete(result, error);
+                }
+            }
+        });
+    }
+
+    /**
+     * Set the request this future is waiting for, cancelling it if this future has already been cancelled.
+     */
+    void setUpstream(@NonNull Request request) {
+        upstream = request;
+        if (isCancelled()) {
+            request.cancel();
+        }
+    }
+
+    /**
+     * Run a callback when this future is done, directly on the completing thread.
+     * Unlike listeners, callbacks also run on cancellation.
+     */
+    private void onDone(@NonNull Runnable callback) {
+        synchronized (this) {
+            if (!done) {
+                callbacks.add(callback);
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    private static void runAll(@NonNull List<Runnable> callbacks) {
+        for (Runnable callback : callbacks) {
+            callback.run();
+        }
+    }
+}
@@ -27,6 +27,17 @@ public class RequestOptions {
     @NonNull
     Map<String, String> urlParameters= new HashMap<>();
 
+    /**
+     * Absolute deadline for the request (ms since the epoch), or 0 if none.
+     */
+    long deadline = 0;
+
+    /**
+     * Minimum size of the request body to be compressed (bytes), or null to use the client's setting.
+     */
+    @Nullable
+    Integer compressionThreshold = null;
+
     /**
      * Set a HTTP header (untyped version).
      * Whenever possible, you should use a typed accessor.
@@ -79,6 +90,73 @@ public class RequestOptions {
         return urlParameters.get(name);
     }
 
+    // Deadline
+    // --------
+
+    /**
+     * Set an absolute deadline for the request.
+     * <p>
+     * The deadline bounds the total time spent on the request, including fallbacks to other hosts: the remaining
+     * time is split across the hosts that remain to be tried. Once the deadline has passed, the request fails with a
+     * {@link SnoopyoTimeoutException}.
+     * </p>
+     *
+     * @param deadline The deadline, as returned by <code>System.currentTimeMillis()</code>, or 0 to remove it.
+     */
+    public RequestOptions setDeadline(long deadline) {
+        this.deadline = deadline;
+        return this;
+    }
+
+    /**
+     * Set a deadline for the request, relative to now.
+     *
+     * @param timeout Maximum total duration of the request (ms).
+     * @see #setDeadline(long)
+     */
+    public RequestOptions setTotalTimeout(long timeout) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
+        return setDeadline(System.currentTimeMillis() + timeout);
+    }
+
+    /**
+     * Get the absolute deadline for the request.
+     *
+     * @return The deadline (ms since the epoch), or 0 if none.
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    // Compression
+    // -----------
+
+    /**
+     * Override the client's request body compression for this request.
+     *
+     * @param compressionThreshold Minimum size of the request body to be compressed (bytes), 0 to never compress it,
+     *                             or null to use the client's setting.
+     * @see AbstractClient#setCompressionThreshold(int)
+     */
+    public RequestOptions setCompressionThreshold(@Nullable Integer compressionThreshold) {
+        if (compressionThreshold != null && compressionThreshold < 0) {
+            throw new IllegalArgumentException("Compression threshold must be positive or zero");
+        }
+        this.compressionThreshold = compressionThreshold;
+        return this;
+    }
+
+    /**
+     * Get the request body compression override for this request.
+     *
+     * @return The compression threshold (bytes), or null if the client's setting is used.
+     */
+    public @Nullable Integer getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
     // Debug
     // -----
 
@@ -105,4 +183,16 @@ public class RequestOptions {
      */
     public RequestOptions() {
     }
+
+    /**
+     * Construct a copy of other request options.
+     *
+     * @param other The options to copy.
+     */
+    RequestOptions(@NonNull RequestOptions other) {
+        this.headers = new HashMap<>(other.headers);
+        this.urlParameters = new HashMap<>(other.urlParameters);
+        this.deadline = other.deadline;
+        this.compressionThreshold = other.compressionThreshold;
+    }
 }
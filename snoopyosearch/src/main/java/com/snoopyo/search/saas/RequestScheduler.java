@@ -0,0 +1,172 @@
+package com.snoopyo.search.saas;
+
+import android.support.annotation.NonNull;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// ----------------------------------------------------------------------
+// IMPLEMENTATION NOTES
+// ----------------------------------------------------------------------
+// Each lane has a thread pool of its own, so that lanes never compete for
+// threads: a burst of uploads or a long polling loop can only delay the
+// requests of its own lane. Idle threads time out, so an unused lane costs
+// nothing.
+//
+// The queue depth is enforced by the lane rather than by the pool's queue,
+// so that limits can be changed at any time.
+// ----------------------------------------------------------------------
+
+/**
+ * Schedules asynchronous requests on separate lanes, each with its own concurrency limit and queue depth.
+ * <p>
+ * Interactive searches have a lane of their own: their latency does not depend on what other requests (bulk
+ * uploads, task polling...) are doing.
+ * </p>
+ */
+public class RequestScheduler {
+    /**
+     * Kinds of requests, each scheduled independently of the others.
+     */
+    public enum Lane {
+        /** Interactive searches, e.g. type-ahead. The most latency-sensitive lane. */
+        SEARCH,
+        /** Other reads: retrieving objects or settings, browsing, background cache loads. */
+        READ,
+        /** Writes: indexing or deleting objects, changing settings, index operations. */
+        WRITE,
+        /** Polling, e.g. waiting for the publication of tasks. */
+        POLLING
+    }
+
+    /** Time after which idle threads are stopped (seconds). */
+    private static final long KEEP_ALIVE_TIME = 30;
+
+    private final Map<Lane, LaneExecutor> lanes = new EnumMap<>(Lane.class);
+
+    /**
+     * Construct a new scheduler with the default limits: 4 concurrent searches, 2 concurrent requests in other
+     * lanes, and unbounded queues.
+     */
+    public RequestScheduler() {
+        for (Lane lane : Lane.values()) {
+            // Interactive searches run at normal priority, other lanes slightly below.
+            int priority = lane == Lane.SEARCH ? Thread.NORM_PRIORITY : Thread.NORM_PRIORITY - 1;
+            lanes.put(lane, new LaneExecutor(lane, lane == Lane.SEARCH ? 4 : 2, Integer.MAX_VALUE, priority));
+        }
+    }
+
+    /**
+     * Set the limits of a lane. Requests already queued are not affected by a lower queue depth.
+     *
+     * @param lane           The lane to configure.
+     * @param maxConcurrency Maximum number of requests of this lane running at the same time.
+     * @param maxQueueDepth  Maximum number of requests of this lane waiting to run. Further requests fail
+     *                       immediately.
+     */
+    public void setLaneLimits(@NonNull Lane lane, int maxConcurrency, int maxQueueDepth) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("Concurrency must be positive");
+        }
+        if (maxQueueDepth < 0) {
+            throw new IllegalArgumentException("Queue depth must be non-negative");
+        }
+        lanes.get(lane).setLimits(maxConcurrency, maxQueueDepth);
+    }
+
+    /**
+     * Get the maximum number of requests of a lane running at the same time.
+     */
+    public int getMaxConcurrency(@NonNull Lane lane) {
+        return lanes.get(lane).pool.getMaximumPoolSize();
+    }
+
+    /**
+     * Get the maximum number of requests of a lane waiting to run.
+     */
+    public int getMaxQueueDepth(@NonNull Lane lane) {
+        return lanes.get(lane).maxQueueDepth;
+    }
+
+    /**
+     * Get the executor of a lane.
+     * Its <code>execute()</code> method throws a <code>RejectedExecutionException</code> when the lane's queue is
+     * full.
+     *
+     * @param lane The lane.
+     * @return The lane's executor.
+     */
+    @NonNull Executor executor(@NonNull Lane lane) {
+        return lanes.get(lane);
+    }
+
+    /**
+     * Executes the tasks of a lane.
+     */
+    private static final class LaneExecutor implements Executor {
+        private final @NonNull Lane lane;
+        private final @NonNull ThreadPoolExecutor pool;
+
+        /** Number of tasks waiting to run. */
+        private final AtomicInteger queueDepth = new AtomicInteger();
+
+        private volatile int maxQueueDepth;
+
+        LaneExecutor(@NonNull final Lane lane, int maxConcurrency, int maxQueueDepth, final int priority) {
+            this.lane = lane;
+            this.maxQueueDepth = maxQueueDepth;
+            this.pool = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, KEEP_ALIVE_TIME, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger threadCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, "snoopyo-" + lane.name().toLowerCase() + "-" + threadCount.incrementAndGet());
+                    thread.setPriority(priority);
+                    return thread;
+                }
+            });
+            this.pool.allowCoreThreadTimeOut(true);
+        }
+
+        synchronized void setLimits(int maxConcurrency, int maxQueueDepth) {
+            // The core size must never exceed the maximum size: change them in the appropriate order.
+            if (maxConcurrency > pool.getMaximumPoolSize()) {
+                pool.setMaximumPoolSize(maxConcurrency);
+                pool.setCorePoolSize(maxConcurrency);
+            } else {
+                pool.setCorePoolSize(maxConcurrency);
+                pool.setMaximumPoolSize(maxConcurrency);
+            }
+            this.maxQueueDepth = maxQueueDepth;
+        }
+
+        @Override
+        public void execute(@NonNull final Runnable task) {
+            // Reject only the tasks that would have to wait while the queue is full (approximately: threads may
+            // start or finish concurrently).
+            if (pool.getActiveCount() >= pool.getMaximumPoolSize() && queueDepth.get() >= maxQueueDepth) {
+                throw new RejectedExecutionException("Too many pending requests in lane " + lane);
+            }
+            queueDepth.incrementAndGet();
+            try {
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        queueDepth.decrementAndGet();
+                        task.run();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                queueDepth.decrementAndGet();
+                throw e;
+            }
+        }
+    }
+}
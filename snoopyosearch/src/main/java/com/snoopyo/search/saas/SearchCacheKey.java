@@ -0,0 +1,132 @@
+package com.snoopyo.search.saas;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Identifies a search response: the index, the query parameters, and the request options that may change the
+ * response (headers and URL parameters). Also used for other cached reads, such as object lookups.
+ * <p>
+ * Unlike the query string, building a key encodes nothing: it only snapshots the parameters, and computes its hash
+ * once, so that cache lookups are cheap. Two keys are equal if and only if they designate identical searches.
+ * </p>
+ */
+final class SearchCacheKey {
+    private static final String[] EMPTY = new String[0];
+
+    private final @NonNull String indexName;
+
+    /** Query parameters, as interleaved names and values, sorted by name. */
+    private final @NonNull String[] parameters;
+
+    /** Request headers, as interleaved names and values, sorted by name. */
+    private final @NonNull String[] headers;
+
+    /** Request URL parameters, as interleaved names and values, sorted by name. */
+    private final @NonNull String[] urlParameters;
+
+    private final int hash;
+
+    /**
+     * Build the key of a search.
+     *
+     * @param indexName      Name of the index.
+     * @param query          The query. Subsequent modifications do not affect the key.
+     * @param requestOptions Request-specific options, if any.
+     */
+    SearchCacheKey(@NonNull String indexName, @NonNull AbstractQuery query, @Nullable RequestOptions requestOptions) {
+        // Query parameters are already sorted, as they are stored in a tree map.
+        this(indexName, query.getParameters(), requestOptions);
+    }
+
+    /**
+     * Build the key of another read request, e.g. an object lookup.
+     *
+     * @param indexName      Name of the index.
+     * @param parameters     The request's parameters. Sorting them by name (e.g. in a tree map) avoids a copy.
+     * @param requestOptions Request-specific options, if any.
+     */
+    SearchCacheKey(@NonNull String indexName, @NonNull Map<String, String> parameters, @Nullable RequestOptions requestOptions) {
+        this.indexName = indexName;
+        this.parameters = flatten(isSortedByName(parameters) ? parameters : new TreeMap<>(parameters));
+        if (requestOptions != null) {
+            this.headers = flatten(requestOptions.headers.isEmpty() ? requestOptions.headers : new TreeMap<>(requestOptions.headers));
+            this.urlParameters = flatten(requestOptions.urlParameters.isEmpty() ? requestOptions.urlParameters : new TreeMap<>(requestOptions.urlParameters));
+        } else {
+            this.headers = EMPTY;
+            this.urlParameters = EMPTY;
+        }
+        int hash = indexName.hashCode();
+        hash = 31 * hash + Arrays.hashCode(this.parameters);
+        hash = 31 * hash + Arrays.hashCode(headers);
+        hash = 31 * hash + Arrays.hashCode(urlParameters);
+        this.hash = hash;
+    }
+
+    private static boolean isSortedByName(@NonNull Map<String, String> map) {
+        return map instanceof TreeMap && ((TreeMap<String, String>) map).comparator() == null;
+    }
+
+    private static @NonNull String[] flatten(@NonNull Map<String, String> sortedMap) {
+        if (sortedMap.isEmpty()) {
+            return EMPTY;
+        }
+        String[] array = new String[sortedMap.size() * 2];
+        int i = 0;
+        for (Map.Entry<String, String> entry : sortedMap.entrySet()) {
+            array[i++] = entry.getKey();
+            array[i++] = entry.getValue();
+        }
+        return array;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof SearchCacheKey)) {
+            return false;
+        }
+        SearchCacheKey that = (SearchCacheKey) other;
+        return hash == that.hash
+                && indexName.equals(that.indexName)
+                && Arrays.equals(parameters, that.parameters)
+                && Arrays.equals(headers, that.headers)
+                && Arrays.equals(urlParameters, that.urlParameters);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Serialize this key into an unambiguous string, e.g. for persistent storage.
+     */
+    @Override
+    public @NonNull String toString() {
+        StringBuilder builder = new StringBuilder(JSONObject.quote(indexName));
+        append(builder, parameters);
+        append(builder, headers);
+        append(builder, urlParameters);
+        return builder.toString();
+    }
+
+    private static void append(@NonNull StringBuilder builder, @NonNull String[] array) {
+        builder.append('[');
+        for (int i = 0; i < array.length; ++i) {
+            if (i != 0) {
+                builder.append(',');
+            }
+            builder.append(JSONObject.quote(array[i]));
+        }
+        builder.append(']');
+    }
+}
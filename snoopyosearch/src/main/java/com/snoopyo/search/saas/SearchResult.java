@@ -0,0 +1,292 @@
+package com.snoopyo.search.saas;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Results of a search query, decoded lazily from the raw response.
+ * <p>
+ * Building a search result only locates the top-level attributes in the raw response; each attribute is decoded on
+ * first access, and each hit is decoded independently of the others. Reading a few attributes out of a large
+ * response is therefore much cheaper than building the equivalent {@link JSONObject}.
+ * </p>
+ * <p>
+ * Accessors follow the semantics of <code>JSONObject.opt*()</code>: they return a default value when an attribute
+ * is missing or has an unexpected type.
+ * </p>
+ */
+public class SearchResult {
+    /** The underlying data. */
+    private final @NonNull LazyJSONObject json;
+
+    /** The raw response. */
+    private final @NonNull byte[] rawResponse;
+
+    /** The hits, built on first access. */
+    private List<Hit> hits;
+
+    /** Whether this result was served from the search cache after its expiration. */
+    private boolean stale = false;
+
+    /**
+     * Create a search result from a raw API response.
+     * <p>
+     * NOTE: The array is not copied, and must not be modified afterwards.
+     * </p>
+     *
+     * @param rawResponse The raw response (UTF-8 encoded JSON).
+     * @throws SnoopyoException If the response is not a JSON object.
+     */
+    public SearchResult(@NonNull byte[] rawResponse) throws SnoopyoException {
+        try {
+            this.json = new LazyJSONObject(rawResponse);
+            this.rawResponse = rawResponse;
+        } catch (JSONException e) {
+            throw new SnoopyoException("JSON decode error:" + e.getMessage());
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Typed accessors
+    // ----------------------------------------------------------------------
+
+    /** Total number of hits matching the query. */
+    public int getNbHits() {
+        return optInt("nbHits", 0);
+    }
+
+    /** Index of the returned page (zero-based). */
+    public int getPage() {
+        return optInt("page", 0);
+    }
+
+    /** Total number of pages. */
+    public int getNbPages() {
+        return optInt("nbPages", 0);
+    }
+
+    /** Maximum number of hits per page. */
+    public int getHitsPerPage() {
+        return optInt("hitsPerPage", 0);
+    }
+
+    /** Time taken by the server to process the query (ms). */
+    public int getProcessingTimeMS() {
+        return optInt("processingTimeMS", 0);
+    }
+
+    /** The query text. */
+    public @Nullable String getQuery() {
+        return optString("query");
+    }
+
+    /** The query parameters, as understood by the server. */
+    public @Nullable String getParams() {
+        return optString("params");
+    }
+
+    /** Facet counts, mapping facet names to value counts. */
+    public @Nullable JSONObject getFacets() {
+        return optJSONObject("facets");
+    }
+
+    /** Facet statistics (for numeric facets). */
+    public @Nullable JSONObject getFacetsStats() {
+        return optJSONObject("facets_stats");
+    }
+
+    /** Cursor to browse the next page, if any (browse responses only). */
+    public @Nullable String getCursor() {
+        return optString("cursor");
+    }
+
+    /**
+     * The hits. Each hit is decoded on first access.
+     *
+     * @return The hits, in ranking order.
+     */
+    public @NonNull List<Hit> getHits() {
+        synchronized (this) {
+            if (hits == null) {
+                List<LazyJSONObject> objects = json.optLazyObjects("hits");
+                List<Hit> list = new ArrayList<>(objects == null ? 0 : objects.size());
+                if (objects != null) {
+                    for (LazyJSONObject object : objects) {
+                        list.add(new Hit(object));
+                    }
+                }
+                hits = Collections.unmodifiableList(list);
+            }
+            return hits;
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Untyped accessors
+    // ----------------------------------------------------------------------
+
+    /**
+     * Get an attribute of the response, in its <code>org.json</code> representation.
+     *
+     * @param name The attribute's name.
+     * @return The attribute's value, or null if absent.
+     */
+    public @Nullable Object opt(@NonNull String name) {
+        return json.opt(name);
+    }
+
+    /**
+     * Test whether the response contains an attribute.
+     *
+     * @param name The attribute's name.
+     * @return true if the attribute exists, false otherwise.
+     */
+    public boolean has(@NonNull String name) {
+        return json.has(name);
+    }
+
+    /**
+     * Test whether this result was served from the search cache after its expiration, in which case a fresh result
+     * is being fetched in the background.
+     *
+     * @return true if the result is stale, false otherwise.
+     * @see Index#setSearchCacheStaleGracePeriod(int)
+     */
+    public boolean isStale() {
+        return stale;
+    }
+
+    void setStale(boolean stale) {
+        this.stale = stale;
+    }
+
+    /**
+     * Get the raw response this result was built from.
+     *
+     * @return The raw response. Must not be modified.
+     */
+    public @NonNull byte[] getRawResponse() {
+        return rawResponse;
+    }
+
+    /**
+     * Decode the whole response.
+     *
+     * @return The response as a regular JSON object.
+     * @throws SnoopyoException If the response is not valid JSON.
+     */
+    public @NonNull JSONObject toJSONObject() throws SnoopyoException {
+        try {
+            return json.toJSONObject();
+        } catch (JSONException e) {
+            throw new SnoopyoException("JSON decode error:" + e.getMessage());
+        }
+    }
+
+    private int optInt(String name, int defaultValue) {
+        Object value = json.opt(name);
+        return value instanceof Number ? ((Number) value).intValue() : defaultValue;
+    }
+
+    private @Nullable String optString(String name) {
+        Object value = json.opt(name);
+        return value instanceof String ? (String) value : null;
+    }
+
+    private @Nullable JSONObject optJSONObject(String name) {
+        Object value = json.opt(name);
+        return value instanceof JSONObject ? (JSONObject) value : null;
+    }
+
+    // ----------------------------------------------------------------------
+    // Types
+    // ----------------------------------------------------------------------
+
+    /**
+     * A hit within {@link SearchResult}, decoded lazily.
+     */
+    public static class Hit {
+        /** The underlying data. */
+        private final @NonNull LazyJSONObject json;
+
+        Hit(@NonNull LazyJSONObject json) {
+            this.json = json;
+        }
+
+        /** The record's unique identifier. */
+        public @Nullable String getObjectID() {
+            Object value = json.opt("objectID");
+            return value instanceof String ? (String) value : null;
+        }
+
+        /** Highlighting information, mapping attribute names to highlight results. */
+        public @Nullable JSONObject getHighlightResult() {
+            Object value = json.opt("_highlightResult");
+            return value instanceof JSONObject ? (JSONObject) value : null;
+        }
+
+        /** Snippeting information, mapping attribute names to snippet results. */
+        public @Nullable JSONObject getSnippetResult() {
+            Object value = json.opt("_snippetResult");
+            return value instanceof JSONObject ? (JSONObject) value : null;
+        }
+
+        /** Ranking information (only when <code>getRankingInfo</code> was requested). */
+        public @Nullable JSONObject getRankingInfo() {
+            Object value = json.opt("_rankingInfo");
+            return value instanceof JSONObject ? (JSONObject) value : null;
+        }
+
+        /**
+         * Get an attribute of the record, in its <code>org.json</code> representation.
+         *
+         * @param name The attribute's name.
+         * @return The attribute's value, or null if absent.
+         */
+        public @Nullable Object opt(@NonNull String name) {
+            return json.opt(name);
+        }
+
+        /**
+         * Get a string attribute of the record.
+         *
+         * @param name The attribute's name.
+         * @return The attribute's value, or null if absent or not a string.
+         */
+        public @Nullable String optString(@NonNull String name) {
+            Object value = json.opt(name);
+            return value instanceof String ? (String) value : null;
+        }
+
+        /**
+         * Test whether the record contains an attribute.
+         *
+         * @param name The attribute's name.
+         * @return true if the attribute exists, false otherwise.
+         */
+        public boolean has(@NonNull String name) {
+            return json.has(name);
+        }
+
+        /**
+         * Decode the whole hit.
+         *
+         * @return The hit as a regular JSON object.
+         * @throws SnoopyoException If the hit is not valid JSON.
+         */
+        public @NonNull JSONObject toJSONObject() throws SnoopyoException {
+            try {
+                return json.toJSONObject();
+            } catch (JSONException e) {
+                throw new SnoopyoException("JSON decode error:" + e.getMessage());
+            }
+        }
+    }
+}
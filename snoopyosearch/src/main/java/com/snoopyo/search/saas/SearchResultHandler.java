@@ -0,0 +1,18 @@
+package com.snoopyo.search.saas;
+
+/**
+ * Handles completion of a search request returning a {@link SearchResult}.
+ */
+public interface SearchResultHandler {
+
+    /**
+     * Called when the request has completed, either successfully or failing.
+     * <p>
+     * NOTE: One and only one of either <code>result</code> or <code>error</code> is guaranteed to be not null.
+     * </p>
+     *
+     * @param result Results returned by the API (in case of success).
+     * @param error Error that was encountered (in case of failure).
+     */
+    void requestCompleted(SearchResult result, SnoopyoException error);
+}
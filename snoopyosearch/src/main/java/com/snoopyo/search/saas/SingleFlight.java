@@ -0,0 +1,234 @@
+package com.snoopyo.search.saas;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// ----------------------------------------------------------------------
+// IMPLEMENTATION NOTES
+// ----------------------------------------------------------------------
+// The first caller for a key (the leader) performs the call on its own
+// thread; callers arriving while it is in flight (the followers) block
+// until it completes and share its outcome.
+//
+// The call runs under a cancellation token of its own, which is only
+// cancelled once *all* participants have been cancelled: cancelling one
+// request must not fail the others. If the leader's own request is
+// cancelled and the call fails because of it (e.g. its thread got
+// interrupted), the followers that are still interested start over.
+//
+// Likewise, the call runs within the leader's deadline. If it times out,
+// followers with more time left start over with their own budget,
+// instead of inheriting a timeout they would not have hit.
+// ----------------------------------------------------------------------
+
+/**
+ * Coalesces identical concurrent calls into a single one ("single flight").
+ */
+class SingleFlight<K, T> {
+    /**
+     * A call that may be shared by several callers.
+     */
+    interface Call<T> {
+        @NonNull T call() throws SnoopyoException;
+    }
+
+    /**
+     * A call in flight, and its participants.
+     */
+    private static class Flight<T> {
+        /** Token cancelling the call. */
+        final @NonNull CancellationToken cancellationToken = new CancellationToken();
+
+        /** Number of participants still interested in the outcome. Guarded by `this`. */
+        int participants = 1;
+
+        /** Whether the call has completed. Guarded by `this`. */
+        boolean done = false;
+
+        /** Whether the call failed while the leader was cancelled. Guarded by `this`. */
+        boolean leaderCancelled = false;
+
+        /** The leader's deadline (ms since the epoch), or 0 if none. */
+        final long deadline;
+
+        T result;
+        SnoopyoException error;
+
+        Flight(long deadline) {
+            this.deadline = deadline;
+        }
+
+        /**
+         * Join this flight as a follower.
+         *
+         * @return true if joined, false if all participants have left (i.e. the call is being cancelled).
+         */
+        synchronized boolean join() {
+            if (participants == 0) {
+                return false;
+            }
+            participants++;
+            return true;
+        }
+
+        /**
+         * Leave this flight. The call is cancelled when the last participant leaves.
+         */
+        void leave() {
+            boolean cancel;
+            synchronized (this) {
+                cancel = --participants == 0 && !done;
+                notifyAll(); // wake up a follower that is being cancelled
+            }
+            if (cancel) {
+                cancellationToken.cancel();
+            }
+        }
+
+        synchronized void complete(@Nullable T result, @Nullable SnoopyoException error, boolean leaderCancelled) {
+            this.result = result;
+            this.error = error;
+            this.leaderCancelled = leaderCancelled;
+            this.done = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * A participant of a flight, leaving it at most once.
+     */
+    private static class Participant implements Runnable {
+        private final @NonNull Flight<?> flight;
+        private final AtomicBoolean left = new AtomicBoolean(false);
+
+        Participant(@NonNull Flight<?> flight) {
+            this.flight = flight;
+        }
+
+        @Override
+        public void run() {
+            if (left.compareAndSet(false, true)) {
+                flight.leave();
+            }
+        }
+    }
+
+    private final ConcurrentMap<K, Flight<T>> flights = new ConcurrentHashMap<>();
+
+    /**
+     * Perform a call, or share the outcome of an identical call already in flight.
+     * <p>
+     * The cancellation token of the calling thread (see {@link FutureRequest#currentCancellationToken()}) is honored.
+     * </p>
+     *
+     * @param key      Key identifying identical calls.
+     * @param deadline Time after which the caller stops waiting for a call in flight (ms since the epoch), or 0 for
+     *                 no deadline.
+     * @param call     The call to perform.
+     * @return The call's result.
+     * @throws SnoopyoException The call's error, or if the caller was cancelled or its deadline exceeded.
+     */
+    @NonNull T execute(@NonNull K key, long deadline, @NonNull Call<T> call) throws SnoopyoException {
+        final CancellationToken callerToken = FutureRequest.currentCancellationToken();
+        while (true) {
+            Flight<T> newFlight = new Flight<>(deadline);
+            Flight<T> flight = flights.putIfAbsent(key, newFlight);
+            if (flight == null) {
+                return lead(key, newFlight, callerToken, call);
+            }
+            if (!flight.join()) {
+                // The flight is being cancelled: replace it.
+                if (flights.replace(key, flight, newFlight)) {
+                    return lead(key, newFlight, callerToken, call);
+                }
+                continue;
+            }
+            Flight<T> completedFlight = follow(flight, callerToken, deadline);
+            synchronized (completedFlight) {
+                if (completedFlight.error == null) {
+                    return completedFlight.result;
+                }
+                boolean leaderTimedOut = completedFlight.error instanceof SnoopyoTimeoutException && outlives(deadline, completedFlight.deadline);
+                if (!completedFlight.leaderCancelled && !leaderTimedOut) {
+                    throw completedFlight.error;
+                }
+            }
+            // The leader gave up, or ran out of time before us: start over.
+        }
+    }
+
+    private @NonNull T lead(@NonNull K key, @NonNull Flight<T> flight, @Nullable CancellationToken callerToken, @NonNull Call<T> call) throws SnoopyoException {
+        final Participant participant = new Participant(flight);
+        if (callerToken != null) {
+            callerToken.addListener(participant);
+        }
+        CancellationToken previousToken = FutureRequest.setCurrentCancellationToken(flight.cancellationToken);
+        T result = null;
+        SnoopyoException error = null;
+        try {
+            result = call.call();
+            return result;
+        } catch (Throwable e) {
+            // Whatever the failure, followers must get an error.
+            error = e instanceof SnoopyoException ? (SnoopyoException) e : new SnoopyoException(e.getMessage(), e);
+            throw e;
+        } finally {
+            FutureRequest.setCurrentCancellationToken(previousToken);
+            if (callerToken != null) {
+                callerToken.removeListener(participant);
+            }
+            // Remove the flight before completing it, so that late callers start a new one.
+            flights.remove(key, flight);
+            flight.complete(result, error, error != null && callerToken != null && callerToken.isCancelled());
+        }
+    }
+
+    /**
+     * Test whether a deadline is later than another one.
+     *
+     * @param deadline      A deadline (ms since the epoch), or 0 if none.
+     * @param otherDeadline Another deadline (ms since the epoch), or 0 if none.
+     */
+    private static boolean outlives(long deadline, long otherDeadline) {
+        return otherDeadline != 0 && (deadline == 0 || deadline > otherDeadline);
+    }
+
+    private @NonNull Flight<T> follow(@NonNull Flight<T> flight, @Nullable CancellationToken callerToken, long deadline) throws SnoopyoException {
+        final Participant participant = new Participant(flight);
+        if (callerToken != null) {
+            callerToken.addListener(participant);
+        }
+        try {
+            synchronized (flight) {
+                while (!flight.done) {
+                    if (callerToken != null && callerToken.isCancelled()) {
+                        throw new SnoopyoException("Request cancelled");
+                    }
+                    long timeout = 0;
+                    if (deadline != 0) {
+                        timeout = deadline - System.currentTimeMillis();
+                        if (timeout <= 0) {
+                            throw new SnoopyoTimeoutException("Request deadline exceeded");
+                        }
+                    }
+                    try {
+                        flight.wait(timeout);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SnoopyoException("Request cancelled", e);
+                    }
+                }
+            }
+            return flight;
+        } finally {
+            if (callerToken != null) {
+                callerToken.removeListener(participant);
+            }
+            participant.run();
+        }
+    }
+}
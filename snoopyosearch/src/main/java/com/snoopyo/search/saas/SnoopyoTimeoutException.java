@@ -0,0 +1,23 @@
+package com.snoopyo.search.saas;
+
+/**
+ * Error raised when a request could not complete before its deadline.
+ *
+ * @see RequestOptions#setDeadline(long)
+ */
+public class SnoopyoTimeoutException extends SnoopyoException {
+    public SnoopyoTimeoutException(String message) {
+        super(message);
+    }
+
+    public SnoopyoTimeoutException(String message, Throwable throwable) {
+        super(message, throwable);
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public boolean isTransient() {
+        return true;
+    }
+}
@@ -0,0 +1,257 @@
+package com.snoopyo.search.saas;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// ----------------------------------------------------------------------
+// IMPLEMENTATION NOTES
+// ----------------------------------------------------------------------
+// Waiting for a task holds no thread. Pending tasks are kept in a map,
+// and a single poll cycle per index is scheduled on the client's timer;
+// only the polls themselves run on the polling lane.
+//
+// The server applies the tasks of an index in order. Tasks are therefore
+// polled in ascending ID order, and a cycle stops at the first task that
+// is not published yet, as later ones cannot be either. Waiting for many
+// tasks costs one request per cycle until the oldest one is published.
+//
+// The delay between cycles doubles up to a maximum, and is reset when a
+// new task is watched.
+// ----------------------------------------------------------------------
+
+/**
+ * Watches the tasks of an index, notifying waiters when they are published.
+ */
+class TaskWatcher {
+    /** Delay before polling again after a task is watched (ms). */
+    private static final long INITIAL_POLL_DELAY = 100;
+
+    /** Maximum delay between two poll cycles (ms). */
+    private static final long MAX_POLL_DELAY = 10000;
+
+    /** Orders task IDs numerically when possible, lexicographically otherwise. */
+    private static final Comparator<String> TASK_ID_ORDER = new Comparator<String>() {
+        @Override
+        public int compare(String lhs, String rhs) {
+            Long lhsNumber = parseTaskID(lhs);
+            Long rhsNumber = parseTaskID(rhs);
+            if (lhsNumber != null && rhsNumber != null) {
+                return lhsNumber.compareTo(rhsNumber);
+            } else if (lhsNumber != null || rhsNumber != null) {
+                return lhsNumber != null ? -1 : 1; // numeric IDs first
+            } else {
+                return lhs.compareTo(rhs);
+            }
+        }
+    };
+
+    private final @NonNull Index index;
+
+    /** Waiters of the pending tasks, by task ID. Guarded by `this`. */
+    private final TreeMap<String, List<Wait>> pendingTasks = new TreeMap<>(TASK_ID_ORDER);
+
+    /** The next poll cycle, if scheduled. Guarded by `this`. */
+    private ScheduledFuture<?> scheduledPoll;
+
+    /** Whether a poll cycle is running. Guarded by `this`. */
+    private boolean polling = false;
+
+    /** Delay before the next poll cycle (ms). Guarded by `this`. */
+    private long pollDelay = INITIAL_POLL_DELAY;
+
+    private final Runnable pollTrigger = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                index.getClient().scheduler.executor(RequestScheduler.Lane.POLLING).execute(pollCycle);
+            } catch (RejectedExecutionException e) {
+                synchronized (TaskWatcher.this) {
+                    polling = false;
+                    scheduleNextPoll();
+                }
+            }
+        }
+    };
+
+    private final Runnable pollCycle = new Runnable() {
+        @Override
+        public void run() {
+            poll();
+        }
+    };
+
+    TaskWatcher(@NonNull Index index) {
+        this.index = index;
+    }
+
+    /**
+     * Wait for the publication of a task.
+     *
+     * @param taskID             Identifier of the task.
+     * @param completionHandler  Notified of the published task's status, or of an error.
+     * @param completionExecutor Executor on which to call the completion handler.
+     * @return A cancellable request.
+     */
+    @NonNull Request watch(@NonNull String taskID, @Nullable CompletionHandler completionHandler, @NonNull Executor completionExecutor) {
+        final Wait wait = new Wait(taskID, completionHandler, completionExecutor);
+        synchronized (this) {
+            List<Wait> waits = pendingTasks.get(taskID);
+            if (waits == null) {
+                waits = new ArrayList<>(1);
+                pendingTasks.put(taskID, waits);
+            }
+            waits.add(wait);
+            pollDelay = INITIAL_POLL_DELAY;
+            // Poll right away, unless a cycle is already running (it will reschedule with the reset delay).
+            if (!polling && (scheduledPoll == null || scheduledPoll.cancel(false))) {
+                schedulePoll(0);
+            }
+        }
+        return wait;
+    }
+
+    /**
+     * Run a poll cycle: poll pending tasks in order, until one is not published.
+     */
+    private void poll() {
+        synchronized (this) {
+            scheduledPoll = null;
+            polling = true;
+        }
+        while (true) {
+            final String taskID;
+            synchronized (this) {
+                if (pendingTasks.isEmpty()) {
+                    break;
+                }
+                taskID = pendingTasks.firstKey();
+            }
+            JSONObject status = null;
+            SnoopyoException error = null;
+            try {
+                status = index.getTaskStatus(taskID);
+                if (!status.getString("status").equals("published")) {
+                    break;
+                }
+            } catch (SnoopyoException e) {
+                error = e;
+            } catch (JSONException e) {
+                error = new SnoopyoException(e.getMessage());
+            }
+            final List<Wait> waits;
+            synchronized (this) {
+                waits = pendingTasks.remove(taskID);
+            }
+            if (waits != null) {
+                for (Wait wait : waits) {
+                    wait.complete(error == null ? status : null, error);
+                }
+            }
+        }
+        synchronized (this) {
+            polling = false;
+            scheduleNextPoll();
+        }
+    }
+
+    /** Schedule the next poll cycle if tasks are pending, backing off. Must be called with the lock held. */
+    private void scheduleNextPoll() {
+        if (pendingTasks.isEmpty()) {
+            pollDelay = INITIAL_POLL_DELAY;
+            return;
+        }
+        schedulePoll(pollDelay);
+        pollDelay = Math.min(pollDelay * 2, MAX_POLL_DELAY);
+    }
+
+    /** Must be called with the lock held. */
+    private void schedulePoll(long delay) {
+        try {
+            scheduledPoll = index.getClient().getTimer().schedule(pollTrigger, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            scheduledPoll = null; // the client is shutting down: nothing to do
+        }
+    }
+
+    private synchronized void remove(@NonNull Wait wait) {
+        List<Wait> waits = pendingTasks.get(wait.taskID);
+        if (waits != null && waits.remove(wait) && waits.isEmpty()) {
+            pendingTasks.remove(wait.taskID);
+            if (pendingTasks.isEmpty() && scheduledPoll != null && scheduledPoll.cancel(false)) {
+                scheduledPoll = null;
+                pollDelay = INITIAL_POLL_DELAY;
+            }
+        }
+    }
+
+    private static @Nullable Long parseTaskID(@NonNull String taskID) {
+        try {
+            return Long.valueOf(taskID);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A wait for the publication of a task.
+     */
+    private final class Wait implements Request {
+        final @NonNull String taskID;
+        private final @Nullable CompletionHandler completionHandler;
+        private final @NonNull Executor completionExecutor;
+        private final AtomicBoolean finished = new AtomicBoolean(false);
+        private volatile boolean cancelled = false;
+
+        Wait(@NonNull String taskID, @Nullable CompletionHandler completionHandler, @NonNull Executor completionExecutor) {
+            this.taskID = taskID;
+            this.completionHandler = completionHandler;
+            this.completionExecutor = completionExecutor;
+        }
+
+        void complete(@Nullable final JSONObject content, @Nullable final SnoopyoException error) {
+            if (!finished.compareAndSet(false, true) || completionHandler == null) {
+                return;
+            }
+            completionExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // NOTE: Cancellation might have intervened after completion.
+                    if (!cancelled) {
+                        completionHandler.requestCompleted(content, error);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            if (finished.compareAndSet(false, true)) {
+                remove(this);
+            }
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished.get();
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
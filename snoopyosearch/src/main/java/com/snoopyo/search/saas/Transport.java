@@ -0,0 +1,29 @@
+package com.snoopyo.search.saas;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * Low-level HTTP transport used by {@link AbstractClient} to perform network calls.
+ * <p>
+ * A transport is only concerned with executing one HTTP exchange against one host. Host selection, retries and
+ * error handling remain the responsibility of the client.
+ * </p>
+ * <p>
+ * Implementations must be thread-safe, as the same transport is shared by all the requests of a client.
+ * </p>
+ */
+public interface Transport {
+    /**
+     * Execute an HTTP request.
+     * <p>
+     * The caller is responsible for closing the returned response, even if it does not read its body.
+     * </p>
+     *
+     * @param request The request to execute.
+     * @return The response returned by the server, whatever its status code.
+     * @throws IOException If the exchange could not be completed (connection failure, timeout...).
+     */
+    @NonNull HttpResponse execute(@NonNull HttpRequest request) throws IOException;
+}
@@ -0,0 +1,132 @@
+package com.snoopyo.search.saas;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Default {@link Transport}, based on the platform's {@link HttpURLConnection}.
+ * <p>
+ * Every request opens a new connection, which is disconnected once the response has been consumed.
+ * </p>
+ */
+public class URLConnectionTransport implements Transport {
+    @Override
+    public @NonNull HttpResponse execute(@NonNull HttpRequest request) throws IOException {
+        // Open connection.
+        final HttpURLConnection connection = (HttpURLConnection) request.url.openConnection();
+        // Disconnecting aborts any pending I/O, unblocking the requesting thread.
+        final Runnable abort = new Runnable() {
+            @Override
+            public void run() {
+                connection.disconnect();
+            }
+        };
+        final CancellationToken cancellationToken = request.cancellationToken;
+        if (cancellationToken != null) {
+            cancellationToken.addListener(abort);
+        }
+        try {
+            //set timeouts
+            connection.setRequestMethod(request.method);
+            connection.setConnectTimeout(request.connectTimeout);
+            connection.setReadTimeout(request.readTimeout);
+
+            // Headers
+            for (Map.Entry<String, String> entry : request.headers.entrySet()) {
+                connection.setRequestProperty(entry.getKey(), entry.getValue());
+            }
+
+            // write entity
+            if (request.body != null) {
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(request.body.length);
+                OutputStream output = connection.getOutputStream();
+                output.write(request.body);
+                output.close();
+            } else if (request.bodyWriter != null) {
+                connection.setDoOutput(true);
+                connection.setChunkedStreamingMode(0 /* default chunk size */);
+                OutputStream output = connection.getOutputStream();
+                request.bodyWriter.writeTo(output);
+                output.close();
+            }
+
+            // read response
+            int code = connection.getResponseCode();
+            final boolean codeIsError = code / 100 != 2;
+            // As per the official Java docs (not the Android docs):
+            // - `getErrorStream()` may return null => the client has to handle this case.
+            //   See <https://docs.oracle.com/javase/7/docs/api/java/net/HttpURLConnection.html#getErrorStream()>.
+            // - `getInputStream()` should never return null... but let's err on the side of caution.
+            //   See <https://docs.oracle.com/javase/7/docs/api/java/net/URLConnection.html#getInputStream()>.
+            InputStream stream = codeIsError ? connection.getErrorStream() : connection.getInputStream();
+
+            Map<String, String> headers = new HashMap<>();
+            for (Map.Entry<String, List<String>> entry : connection.getHeaderFields().entrySet()) {
+                // NOTE: The status line is reported with a null key.
+                if (entry.getKey() != null) {
+                    headers.put(entry.getKey(), join(entry.getValue()));
+                }
+            }
+            return new HttpResponse(code, headers, stream) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        if (cancellationToken != null) {
+                            cancellationToken.removeListener(abort);
+                        }
+                        consumeQuietly(connection);
+                    }
+                }
+            };
+        } catch (IOException e) {
+            if (cancellationToken != null) {
+                cancellationToken.removeListener(abort);
+            }
+            consumeQuietly(connection);
+            throw e;
+        }
+    }
+
+    private static String join(List<String> values) {
+        StringBuilder builder = new StringBuilder();
+        for (String value : values) {
+            if (builder.length() != 0) {
+                builder.append(", ");
+            }
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Ensures that the entity content is fully consumed and the content stream, if exists,
+     * is closed.
+     */
+    private static void consumeQuietly(final HttpURLConnection connection) {
+        try {
+            int read = 0;
+            while (read != -1) {
+                read = connection.getInputStream().read();
+            }
+            connection.getInputStream().close();
+            read = 0;
+            while (read != -1) {
+                read = connection.getErrorStream().read();
+            }
+            connection.getErrorStream().close();
+            connection.disconnect();
+        } catch (IOException e) {
+            // no inputStream to close
+        }
+    }
+}
@@ -6,6 +6,7 @@ import com.snoopyo.search.saas.AbstractClient;
 import com.snoopyo.search.saas.SnoopyoException;
 import com.snoopyo.search.saas.CompletionHandler;
 import com.snoopyo.search.saas.Request;
+import com.snoopyo.search.saas.RequestScheduler;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -77,7 +78,7 @@ public class PlacesClient extends AbstractClient {
      */
     public Request searchAsync(@NonNull PlacesQuery params, @NonNull CompletionHandler completionHandler) {
         final PlacesQuery paramsCopy = new PlacesQuery(params);
-        return new AsyncTaskRequest(completionHandler) {
+        return new AsyncTaskRequest(completionHandler, RequestScheduler.Lane.SEARCH) {
             @Override
             protected @NonNull JSONObject run() throws SnoopyoException {
                 return search(paramsCopy);
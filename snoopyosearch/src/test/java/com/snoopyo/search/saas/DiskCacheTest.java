@@ -0,0 +1,121 @@
+package com.snoopyo.search.saas;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests {@link DiskCache}.
+ */
+public class DiskCacheTest {
+    private static final String KEY = "index/key";
+    private static final byte[] VALUE = {1, 2, 3, 4, 5};
+
+    /** Offset of the key's length in an entry file: after the format version and the expiration time. */
+    private static final int KEY_LENGTH_OFFSET = 4 + 8;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private DiskCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.newFolder("cache");
+        cache = new DiskCache(directory, 1 << 20);
+    }
+
+    @Test
+    public void storesAndRetrievesValues() {
+        cache.put(KEY, VALUE, System.currentTimeMillis() + 60000);
+        assertArrayEquals(VALUE, cache.get(KEY, 0).value);
+        // Entries survive a restart.
+        assertArrayEquals(VALUE, new DiskCache(directory, 1 << 20).get(KEY, 0).value);
+    }
+
+    @Test
+    public void treatsExpiredEntryAsMiss() {
+        cache.put(KEY, VALUE, System.currentTimeMillis() - 1000);
+        assertArrayEquals(VALUE, cache.get(KEY, 10000).value);
+        assertNull(cache.get(KEY, 0));
+        assertEquals(0, entryFiles().length);
+    }
+
+    @Test
+    public void treatsNegativeKeyLengthAsMiss() throws IOException {
+        assertCorruptionIsMiss(KEY_LENGTH_OFFSET, -1);
+    }
+
+    @Test
+    public void treatsHugeKeyLengthAsMiss() throws IOException {
+        assertCorruptionIsMiss(KEY_LENGTH_OFFSET, Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void treatsNegativeValueLengthAsMiss() throws IOException {
+        assertCorruptionIsMiss(valueLengthOffset(), Integer.MIN_VALUE);
+    }
+
+    @Test
+    public void treatsHugeValueLengthAsMiss() throws IOException {
+        assertCorruptionIsMiss(valueLengthOffset(), Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void treatsTruncatedEntryAsMiss() throws IOException {
+        cache.put(KEY, VALUE, System.currentTimeMillis() + 60000);
+        RandomAccessFile file = new RandomAccessFile(entryFiles()[0], "rw");
+        try {
+            file.setLength(file.length() - 1);
+        } finally {
+            file.close();
+        }
+        assertNull(cache.get(KEY, 0));
+        assertEquals(0, entryFiles().length);
+    }
+
+    // ----------------------------------------------------------------------
+    // Helpers
+    // ----------------------------------------------------------------------
+
+    private static int valueLengthOffset() throws IOException {
+        return KEY_LENGTH_OFFSET + 4 + KEY.getBytes("UTF-8").length;
+    }
+
+    /**
+     * Store an entry, overwrite an integer in its file, and check that the entry is a miss and gets removed.
+     */
+    private void assertCorruptionIsMiss(int offset, int value) throws IOException {
+        cache.put(KEY, VALUE, System.currentTimeMillis() + 60000);
+        File[] files = entryFiles();
+        assertEquals(1, files.length);
+        RandomAccessFile file = new RandomAccessFile(files[0], "rw");
+        try {
+            file.seek(offset);
+            file.writeInt(value);
+        } finally {
+            file.close();
+        }
+        assertNull(cache.get(KEY, 0));
+        assertEquals(0, entryFiles().length);
+
+        // The cache still works.
+        cache.put(KEY, VALUE, System.currentTimeMillis() + 60000);
+        assertArrayEquals(VALUE, cache.get(KEY, 0).value);
+    }
+
+    private File[] entryFiles() {
+        File[] files = directory.listFiles();
+        return files != null ? files : new File[0];
+    }
+}
@@ -0,0 +1,279 @@
+package com.snoopyo.search.saas;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link ExpiringCache}.
+ */
+public class ExpiringCacheTest {
+    /** Weighs entries by the length of their value. */
+    private static final ExpiringCache.Weigher<String, String> LENGTH_WEIGHER = new ExpiringCache.Weigher<String, String>() {
+        @Override
+        public int weightOf(@NonNull String key, @NonNull String value) {
+            return value.length();
+        }
+    };
+
+    // ----------------------------------------------------------------------
+    // Bounds
+    // ----------------------------------------------------------------------
+
+    @Test
+    public void evictsByCount() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(60, 3);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        cache.put("d", "4");
+        assertNull(cache.get("a"));
+        assertEquals("4", cache.get("d"));
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.evictionCount());
+    }
+
+    @Test
+    public void evictsByWeight() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(60, 10, LENGTH_WEIGHER, true);
+        cache.put("a", "xxxx");
+        cache.put("b", "xxxx");
+        assertEquals(8, cache.weight());
+        cache.put("c", "xxx");
+        assertNull(cache.get("a"));
+        assertEquals("xxxx", cache.get("b"));
+        assertEquals("xxx", cache.get("c"));
+        assertEquals(7, cache.weight());
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictionCount());
+
+        // Many light entries fit where few heavy ones did.
+        for (int i = 0; i < 10; ++i) {
+            cache.put("light" + i, "x");
+        }
+        assertEquals(10, cache.size());
+        assertEquals(10, cache.weight());
+    }
+
+    @Test
+    public void updatesWeightWhenReplacingEntry() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(60, 10, LENGTH_WEIGHER, true);
+        cache.put("a", "xxxx");
+        assertEquals("xxxx", cache.put("a", "xx"));
+        assertEquals(2, cache.weight());
+        assertEquals(1, cache.size());
+        assertEquals("xx", cache.remove("a"));
+        assertEquals(0, cache.weight());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void doesNotStoreEntryHeavierThanCache() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(60, 10, LENGTH_WEIGHER, true);
+        cache.put("a", "xxxx");
+        cache.put("b", "xxxx");
+        assertEquals("xxxx", cache.put("b", "xxxxxxxxxxx"));
+        assertNull(cache.get("b"));
+        assertEquals("xxxx", cache.get("a"));
+        assertEquals(4, cache.weight());
+        assertEquals(0, cache.evictionCount());
+    }
+
+    @Test
+    public void countsEntriesWhenWeighedButBoundedByCount() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(60, 2, LENGTH_WEIGHER, false);
+        cache.put("a", "xxxx");
+        cache.put("b", "xxxxxxxxxxxxxxxxxxxx");
+        assertEquals(2, cache.size());
+        assertEquals(24, cache.weight());
+        cache.put("c", "x");
+        assertNull(cache.get("a"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requiresWeigherToBoundByWeight() {
+        new ExpiringCache<String, String>(60, 10, null, true);
+    }
+
+    // ----------------------------------------------------------------------
+    // Expiration
+    // ----------------------------------------------------------------------
+
+    @Test
+    public void expiresEntries() throws Exception {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(60, 10);
+        cache.put("expired", "1", System.currentTimeMillis() - 1);
+        cache.put("expiring", "2", System.currentTimeMillis() + 50);
+        cache.put("fresh", "3");
+        assertNull(cache.get("expired"));
+        assertEquals("2", cache.get("expiring"));
+        Thread.sleep(100);
+        assertNull(cache.get("expiring"));
+        assertEquals("3", cache.get("fresh"));
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.expirationCount());
+        assertEquals(0, cache.evictionCount());
+    }
+
+    @Test
+    public void returnsStaleEntriesWithinMaxStaleness() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(60, 10);
+        cache.put("a", "1", System.currentTimeMillis() - 1000);
+        ExpiringCache.Entry<String> entry = cache.getEntry("a", 10000);
+        assertEquals("1", entry.value);
+        assertTrue(entry.isExpired());
+        assertEquals(0, cache.expirationCount());
+
+        assertNull(cache.getEntry("a", 500));
+        assertNull(cache.getEntry("a", 10000));
+        assertEquals(1, cache.expirationCount());
+    }
+
+    // ----------------------------------------------------------------------
+    // LRU order
+    // ----------------------------------------------------------------------
+
+    @Test
+    public void evictsLeastRecentlyRead() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(60, 3);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        // A single read stays in the read buffer until the next write.
+        cache.get("a");
+        cache.put("d", "4");
+        assertNull(cache.get("b"));
+        assertEquals("1", cache.get("a"));
+    }
+
+    @Test
+    public void keepsLruOrderAcrossReadBufferDrains() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(60, 4);
+        for (int i = 0; i < 4; ++i) {
+            cache.put("k" + i, "v" + i);
+        }
+        // Enough reads to drain the buffer several times before the next write.
+        for (int i = 0; i < 100; ++i) {
+            cache.get("k0");
+        }
+        cache.get("k2");
+        cache.get("k1");
+        cache.get("k3");
+
+        // LRU order is now k0, k2, k1, k3.
+        cache.put("k4", "v4");
+        assertNull(cache.get("k0"));
+        cache.put("k5", "v5");
+        assertNull(cache.get("k2"));
+        cache.put("k6", "v6");
+        assertNull(cache.get("k1"));
+        assertEquals("v3", cache.get("k3"));
+        assertEquals(3, cache.evictionCount());
+    }
+
+    @Test
+    public void ignoresBufferedReadsOfRemovedEntries() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(60, 2, LENGTH_WEIGHER, false);
+        cache.put("a", "xx");
+        cache.get("a");
+        cache.remove("a");
+        cache.put("b", "xxx");
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.size());
+        assertEquals(3, cache.weight());
+    }
+
+    @Test
+    public void resetsCache() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(60, 10, LENGTH_WEIGHER, true);
+        cache.put("a", "xx");
+        cache.put("b", "xxx");
+        cache.get("a");
+        cache.reset();
+        assertNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weight());
+        cache.put("c", "x");
+        assertEquals("x", cache.get("c"));
+    }
+
+    // ----------------------------------------------------------------------
+    // Concurrency
+    // ----------------------------------------------------------------------
+
+    @Test
+    public void staysConsistentUnderConcurrentAccess() throws Exception {
+        final int keyCount = 200;
+        final ExpiringCache<String, String> cache = new ExpiringCache<>(60, 100, LENGTH_WEIGHER, true);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Void>> results = new ArrayList<>();
+        for (int t = 0; t < 8; ++t) {
+            final int seed = t;
+            results.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 20000; ++i) {
+                        int key = random.nextInt(keyCount);
+                        int operation = random.nextInt(10);
+                        if (operation < 7) {
+                            String value = cache.get("k" + key);
+                            if (value != null) {
+                                assertEquals(valueOf(key), value);
+                            }
+                        } else if (operation < 9) {
+                            cache.put("k" + key, valueOf(key));
+                        } else {
+                            cache.remove("k" + key);
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> result : results) {
+            result.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertTrue(cache.weight() <= cache.maxSize());
+        int size = 0;
+        long weight = 0;
+        for (int key = 0; key < keyCount; ++key) {
+            String value = cache.get("k" + key);
+            if (value != null) {
+                size += 1;
+                weight += value.length();
+            }
+        }
+        assertEquals(size, cache.size());
+        assertEquals(weight, cache.weight());
+    }
+
+    // ----------------------------------------------------------------------
+    // Helpers
+    // ----------------------------------------------------------------------
+
+    private static String valueOf(int key) {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i <= key % 7; ++i) {
+            value.append(key % 10);
+        }
+        return value.toString();
+    }
+}
@@ -0,0 +1,200 @@
+package com.snoopyo.search.saas;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link HostHealthRegistry}.
+ */
+public class HostHealthRegistryTest {
+    /** A host down delay that never elapses during a test (ms). */
+    private static final long HOST_DOWN_DELAY = 60000;
+
+    private final HostHealthRegistry registry = new HostHealthRegistry();
+
+    // ----------------------------------------------------------------------
+    // Circuit transitions
+    // ----------------------------------------------------------------------
+
+    @Test
+    public void closedCircuitAdmitsAllRequests() {
+        HostHealthRegistry.HostStatus status = registry.getStatus("a");
+        for (int i = 0; i < 3; ++i) {
+            assertTrue(status.tryAcquire(HOST_DOWN_DELAY));
+        }
+        assertEquals(3, status.getOutstandingRequests());
+        status.requestSucceeded(10);
+        status.requestFailed(true); // server error: the host is reachable
+        status.requestAbandoned();
+        assertEquals(HostHealthRegistry.CircuitState.CLOSED, status.getHealth().state);
+        assertEquals(0, status.getOutstandingRequests());
+    }
+
+    @Test
+    public void unreachableHostOpensCircuit() {
+        HostHealthRegistry.HostStatus status = openCircuit("a");
+        assertEquals(HostHealthRegistry.CircuitState.OPEN, status.getHealth().state);
+        assertFalse(status.tryAcquire(HOST_DOWN_DELAY));
+        assertFalse(status.isAvailable(HOST_DOWN_DELAY));
+        assertTrue(status.isDown(HOST_DOWN_DELAY));
+        assertEquals(0, status.getOutstandingRequests());
+    }
+
+    @Test
+    public void admitsSingleProbeOnceDelayElapsed() throws Exception {
+        final HostHealthRegistry.HostStatus status = openCircuit("a");
+        assertTrue(status.isAvailable(0));
+
+        // Many concurrent callers, a single probe.
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 8; ++i) {
+            results.add(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    start.await();
+                    return status.tryAcquire(0);
+                }
+            }));
+        }
+        start.countDown();
+        int admitted = 0;
+        for (Future<Boolean> result : results) {
+            admitted += result.get(1, TimeUnit.SECONDS) ? 1 : 0;
+        }
+        executor.shutdown();
+        assertEquals(1, admitted);
+        assertEquals(1, status.getOutstandingRequests());
+
+        // While the probe is in flight, the host is neither available nor down: its recovery is pending.
+        assertEquals(HostHealthRegistry.CircuitState.HALF_OPEN, status.getHealth().state);
+        assertFalse(status.isAvailable(0));
+        assertFalse(status.isDown(HOST_DOWN_DELAY));
+        assertFalse(status.tryAcquire(0));
+    }
+
+    @Test
+    public void successfulProbeClosesCircuit() {
+        HostHealthRegistry.HostStatus status = openCircuit("a");
+        assertTrue(status.tryAcquire(0));
+        status.requestSucceeded(10);
+        assertEquals(HostHealthRegistry.CircuitState.CLOSED, status.getHealth().state);
+        assertTrue(status.tryAcquire(HOST_DOWN_DELAY));
+        assertTrue(status.tryAcquire(HOST_DOWN_DELAY));
+    }
+
+    @Test
+    public void failedProbeReopensCircuit() {
+        HostHealthRegistry.HostStatus status = openCircuit("a");
+        assertTrue(status.tryAcquire(0));
+        status.requestFailed(false);
+        assertEquals(HostHealthRegistry.CircuitState.OPEN, status.getHealth().state);
+        // The delay starts over.
+        assertFalse(status.tryAcquire(HOST_DOWN_DELAY));
+        assertTrue(status.isDown(HOST_DOWN_DELAY));
+    }
+
+    @Test
+    public void abandonedProbeAllowsAnotherProbeRightAway() {
+        HostHealthRegistry.HostStatus status = openCircuit("a");
+        assertTrue(status.tryAcquire(0));
+        status.requestAbandoned();
+        assertEquals(HostHealthRegistry.CircuitState.OPEN, status.getHealth().state);
+        assertEquals(0, status.getOutstandingRequests());
+        // Even with the full delay, as the abandoned probe said nothing about the host.
+        assertTrue(status.tryAcquire(HOST_DOWN_DELAY));
+        assertEquals(HostHealthRegistry.CircuitState.HALF_OPEN, status.getHealth().state);
+        assertFalse(status.tryAcquire(HOST_DOWN_DELAY));
+    }
+
+    // ----------------------------------------------------------------------
+    // Host lists
+    // ----------------------------------------------------------------------
+
+    @Test
+    public void listsAvailableHosts() {
+        List<String> hosts = Arrays.asList("a", "b", "c");
+        openCircuit("b");
+        assertEquals(Arrays.asList("a", "c"), registry.availableHosts(hosts, HOST_DOWN_DELAY));
+        assertEquals(hosts, registry.availableHosts(hosts, 0));
+    }
+
+    @Test
+    public void hostsAreAllDownOnlyWhenNoneCanBeProbed() {
+        List<String> hosts = Arrays.asList("a", "b");
+        assertFalse(registry.allHostsDown(hosts, HOST_DOWN_DELAY)); // never used
+
+        openCircuit("a");
+        assertFalse(registry.allHostsDown(hosts, HOST_DOWN_DELAY));
+
+        HostHealthRegistry.HostStatus b = openCircuit("b");
+        assertTrue(registry.allHostsDown(hosts, HOST_DOWN_DELAY));
+        assertTrue(registry.availableHosts(hosts, HOST_DOWN_DELAY).isEmpty());
+        assertFalse(registry.allHostsDown(hosts, 0)); // the delay has elapsed
+
+        // A probe in flight means recovery is pending.
+        assertTrue(b.tryAcquire(0));
+        assertTrue(registry.availableHosts(hosts, HOST_DOWN_DELAY).isEmpty());
+        assertFalse(registry.allHostsDown(hosts, HOST_DOWN_DELAY));
+    }
+
+    @Test
+    public void allHostsDownFallbackAdmitsOneProbePerHost() {
+        // Mirrors the client: when all hosts are down, probe early, but only once per host.
+        List<String> hosts = Arrays.asList("a", "b");
+        HostHealthRegistry.HostStatus a = openCircuit("a");
+        HostHealthRegistry.HostStatus b = openCircuit("b");
+        assertTrue(admit(a, hosts));
+        assertFalse(admit(a, hosts)); // a's probe is in flight
+        assertFalse(admit(b, hosts)); // ... so the hosts are no longer all down
+
+        // a is still down: b gets probed in turn.
+        a.requestFailed(false);
+        assertTrue(admit(b, hosts));
+        assertFalse(admit(b, hosts));
+        b.requestSucceeded(10);
+        assertTrue(admit(b, hosts));
+        assertFalse(admit(a, hosts)); // b is up: a waits for its delay
+    }
+
+    @Test
+    public void singleHostIsProbedOneRequestAtATime() {
+        List<String> hosts = Arrays.asList("a");
+        HostHealthRegistry.HostStatus a = openCircuit("a");
+        assertTrue(admit(a, hosts));
+        assertFalse(admit(a, hosts));
+        a.requestFailed(false);
+        assertTrue(admit(a, hosts));
+        assertFalse(admit(a, hosts));
+    }
+
+    // ----------------------------------------------------------------------
+    // Helpers
+    // ----------------------------------------------------------------------
+
+    private HostHealthRegistry.HostStatus openCircuit(String host) {
+        HostHealthRegistry.HostStatus status = registry.getStatus(host);
+        assertTrue(status.tryAcquire(0));
+        status.requestFailed(false);
+        return status;
+    }
+
+    /** Admission rule of {@link AbstractClient}. */
+    private boolean admit(HostHealthRegistry.HostStatus status, List<String> hosts) {
+        return status.tryAcquire(HOST_DOWN_DELAY) || (registry.allHostsDown(hosts, HOST_DOWN_DELAY) && status.tryAcquire(0));
+    }
+}
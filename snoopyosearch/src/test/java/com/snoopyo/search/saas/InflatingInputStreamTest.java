@@ -0,0 +1,284 @@
+package com.snoopyo.search.saas;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link InflatingInputStream}.
+ */
+public class InflatingInputStreamTest {
+    /** Larger than the decoder's buffer, so that decoding takes several reads from the source. */
+    private static final byte[] DATA = sampleData(100 * 1024);
+
+    // ----------------------------------------------------------------------
+    // Round trips
+    // ----------------------------------------------------------------------
+
+    @Test
+    public void decodesGzip() throws Exception {
+        assertArrayEquals(DATA, decode(gzip(DATA), InflatingInputStream.GZIP));
+    }
+
+    @Test
+    public void decodesZlibDeflate() throws Exception {
+        assertArrayEquals(DATA, decode(deflate(DATA, false), InflatingInputStream.DEFLATE));
+    }
+
+    @Test
+    public void decodesRawDeflate() throws Exception {
+        assertArrayEquals(DATA, decode(deflate(DATA, true), InflatingInputStream.DEFLATE));
+    }
+
+    @Test
+    public void decodesEmptyBody() throws Exception {
+        assertEquals(0, decode(gzip(new byte[0]), InflatingInputStream.GZIP).length);
+        assertEquals(0, decode(deflate(new byte[0], false), InflatingInputStream.DEFLATE).length);
+        assertEquals(0, decode(deflate(new byte[0], true), InflatingInputStream.DEFLATE).length);
+    }
+
+    @Test
+    public void skipsOptionalGzipHeaderFields() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        output.write(new byte[]{0x1f, (byte) 0x8b, 8, 2 | 4 | 8 | 16, 0, 0, 0, 0, 0, 3});
+        output.write(new byte[]{3, 0, 'x', 'y', 'z'}); // FEXTRA
+        output.write("name.json\0".getBytes("ISO-8859-1")); // FNAME
+        output.write("comment\0".getBytes("ISO-8859-1")); // FCOMMENT
+        output.write(new byte[]{0x12, 0x34}); // FHCRC
+        output.write(deflate(DATA, true));
+        writeTrailer(output, DATA);
+        assertArrayEquals(DATA, decode(output.toByteArray(), InflatingInputStream.GZIP));
+    }
+
+    @Test
+    public void rejectsNonGzipData() throws Exception {
+        try {
+            InflatingInputStream.obtain(new ByteArrayInputStream(deflate(DATA, false)), InflatingInputStream.GZIP);
+            fail("The header should have been rejected");
+        } catch (ZipException e) {
+            // expected
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // gzip trailer
+    // ----------------------------------------------------------------------
+
+    @Test
+    public void readsTrailerArrivingInSeparateReads() throws Exception {
+        // The inflater only sees one byte at a time, so the trailer is read from the source rather than the buffer.
+        InputStream source = new TricklingInputStream(gzip(DATA));
+        assertArrayEquals(DATA, readFully(InflatingInputStream.obtain(source, InflatingInputStream.GZIP)));
+    }
+
+    @Test
+    public void rejectsInvalidCrc() throws Exception {
+        byte[] compressed = gzip(DATA);
+        compressed[compressed.length - 8] ^= 1;
+        assertDecodingFails(compressed, ZipException.class);
+    }
+
+    @Test
+    public void rejectsInvalidSize() throws Exception {
+        byte[] compressed = gzip(DATA);
+        compressed[compressed.length - 4] ^= 1;
+        assertDecodingFails(compressed, ZipException.class);
+    }
+
+    @Test
+    public void rejectsTruncatedTrailer() throws Exception {
+        byte[] compressed = gzip(DATA);
+        assertDecodingFails(Arrays.copyOf(compressed, compressed.length - 3), EOFException.class);
+    }
+
+    // ----------------------------------------------------------------------
+    // Draining
+    // ----------------------------------------------------------------------
+
+    @Test
+    public void drainsSourceAtEndOfData() throws Exception {
+        // Trailing garbage after the gzip member is ignored, but consumed.
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        output.write(gzip(DATA));
+        output.write("garbage".getBytes("UTF-8"));
+        ByteArrayInputStream source = new ByteArrayInputStream(output.toByteArray());
+        assertArrayEquals(DATA, readFully(InflatingInputStream.obtain(source, InflatingInputStream.GZIP)));
+        assertEquals(0, source.available());
+    }
+
+    @Test
+    public void drainsSourceOnClose() throws Exception {
+        for (byte[] compressed : Arrays.asList(gzip(DATA), deflate(DATA, false), deflate(DATA, true))) {
+            ByteArrayInputStream source = new ByteArrayInputStream(compressed);
+            String encoding = compressed[0] == 0x1f ? InflatingInputStream.GZIP : InflatingInputStream.DEFLATE;
+            InflatingInputStream stream = InflatingInputStream.obtain(source, encoding);
+            byte[] prefix = new byte[DATA.length - 1];
+            readFully(stream, prefix);
+            stream.close();
+            assertEquals(0, source.available());
+        }
+    }
+
+    @Test
+    public void stopsDrainingAfterLimit() throws Exception {
+        ByteArrayInputStream source = new ByteArrayInputStream(gzip(sampleData(1024 * 1024)));
+        InflatingInputStream stream = InflatingInputStream.obtain(source, InflatingInputStream.GZIP);
+        assertTrue(stream.read() != -1);
+        stream.close();
+        assertTrue(source.available() > 0);
+    }
+
+    // ----------------------------------------------------------------------
+    // Pooling
+    // ----------------------------------------------------------------------
+
+    @Test
+    public void reusesDecoderOnceReleased() throws Exception {
+        InflatingInputStream first = InflatingInputStream.obtain(new ByteArrayInputStream(gzip(DATA)), InflatingInputStream.GZIP);
+        InflatingInputStream nested = InflatingInputStream.obtain(new ByteArrayInputStream(gzip(DATA)), InflatingInputStream.GZIP);
+        assertNotSame(first, nested);
+        assertArrayEquals(DATA, readFully(nested));
+        assertArrayEquals(DATA, readFully(first));
+
+        InflatingInputStream second = InflatingInputStream.obtain(new ByteArrayInputStream(gzip(DATA)), InflatingInputStream.GZIP);
+        assertSame(first, second);
+        assertArrayEquals(DATA, readFully(second));
+    }
+
+    @Test
+    public void switchesBetweenZlibAndRawDeflate() throws Exception {
+        for (int i = 0; i < 2; ++i) {
+            assertArrayEquals(DATA, decode(deflate(DATA, false), InflatingInputStream.DEFLATE));
+            assertArrayEquals(DATA, decode(deflate(DATA, true), InflatingInputStream.DEFLATE));
+        }
+    }
+
+    @Test
+    public void rejectsReadAfterClose() throws Exception {
+        InflatingInputStream stream = InflatingInputStream.obtain(new ByteArrayInputStream(gzip(DATA)), InflatingInputStream.GZIP);
+        stream.close();
+        try {
+            stream.read();
+            fail("The stream should be closed");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Helpers
+    // ----------------------------------------------------------------------
+
+    /** Returns at most one byte per read. */
+    private static class TricklingInputStream extends ByteArrayInputStream {
+        TricklingInputStream(byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public synchronized int read(@NonNull byte[] buffer, int offset, int length) {
+            return super.read(buffer, offset, Math.min(length, 1));
+        }
+    }
+
+    /** Somewhat compressible JSON-like text. */
+    private static byte[] sampleData(int length) {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < length) {
+            text.append("{\"objectID\":\"").append(random.nextInt(100000)).append("\",\"name\":\"item\"},");
+        }
+        text.setLength(length);
+        try {
+            return text.toString().getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        GZIPOutputStream stream = new GZIPOutputStream(output);
+        stream.write(data);
+        stream.close();
+        return output.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data, boolean nowrap) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        DeflaterOutputStream stream = new DeflaterOutputStream(output, new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap));
+        stream.write(data);
+        stream.close();
+        return output.toByteArray();
+    }
+
+    private static void writeTrailer(ByteArrayOutputStream output, byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        writeUInt32(output, crc.getValue());
+        writeUInt32(output, data.length);
+    }
+
+    private static void writeUInt32(ByteArrayOutputStream output, long value) {
+        for (int i = 0; i < 4; ++i) {
+            output.write((int) (value >> (8 * i)) & 0xff);
+        }
+    }
+
+    private static byte[] decode(byte[] compressed, String encoding) throws IOException {
+        return readFully(InflatingInputStream.obtain(new ByteArrayInputStream(compressed), encoding));
+    }
+
+    private static void assertDecodingFails(byte[] compressed, Class<? extends IOException> errorClass) throws IOException {
+        try {
+            decode(compressed, InflatingInputStream.GZIP);
+            fail("Decoding should have failed");
+        } catch (IOException e) {
+            assertEquals(errorClass, e.getClass());
+        }
+    }
+
+    /** Read a stream to the end, then close it. */
+    private static byte[] readFully(InputStream stream) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[1000];
+            int count;
+            while ((count = stream.read(buffer)) != -1) {
+                output.write(buffer, 0, count);
+            }
+        } finally {
+            stream.close();
+        }
+        return output.toByteArray();
+    }
+
+    private static void readFully(InputStream stream, byte[] output) throws IOException {
+        int offset = 0;
+        while (offset < output.length) {
+            int count = stream.read(output, offset, output.length - offset);
+            assertTrue(count != -1);
+            offset += count;
+        }
+    }
+}
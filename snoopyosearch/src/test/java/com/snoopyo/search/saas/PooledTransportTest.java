@@ -0,0 +1,340 @@
+package com.snoopyo.search.saas;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link PooledTransport} against a scripted local HTTP server.
+ */
+public class PooledTransportTest {
+    /** Serves one connection. */
+    private interface Script {
+        void serve(int connectionIndex, Socket socket) throws IOException;
+    }
+
+    private ServerSocket serverSocket;
+    private Thread serverThread;
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final List<String> requestLines = Collections.synchronizedList(new ArrayList<String>());
+    private PooledTransport transport;
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0);
+        transport = new PooledTransport();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        transport.evictAll();
+        serverSocket.close();
+        if (serverThread != null) {
+            serverThread.join(1000);
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Parsing and framing
+    // ----------------------------------------------------------------------
+
+    @Test
+    public void parsesStatusLineAndHeaders() throws Exception {
+        serve(new Script() {
+            @Override
+            public void serve(int connectionIndex, Socket socket) throws IOException {
+                readRequest(socket);
+                write(socket, "HTTP/1.1 100 Continue\r\n\r\n"
+                        + "HTTP/1.1 201 Created\r\nX-Value: 1\r\nx-value: 2\r\nContent-Length: 5\r\n\r\nhello");
+            }
+        });
+        HttpResponse response = transport.execute(request("GET"));
+        assertEquals(201, response.statusCode);
+        assertEquals("1, 2", response.getHeader("X-VALUE"));
+        assertEquals("hello", readBody(response));
+    }
+
+    @Test
+    public void decodesChunkedBody() throws Exception {
+        serve(new Script() {
+            @Override
+            public void serve(int connectionIndex, Socket socket) throws IOException {
+                readRequest(socket);
+                write(socket, "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                        + "5;ext=1\r\nhello\r\n7\r\n, world\r\n0\r\nX-Trailer: yes\r\n\r\n");
+            }
+        });
+        HttpResponse response = transport.execute(request("GET"));
+        assertEquals("hello, world", readBody(response));
+        assertEquals(1, transport.getIdleConnectionCount());
+    }
+
+    @Test
+    public void sendsChunkedBodyWhenStreamed() throws Exception {
+        final String[] received = new String[1];
+        serve(new Script() {
+            @Override
+            public void serve(int connectionIndex, Socket socket) throws IOException {
+                received[0] = readRequest(socket);
+                write(socket, "HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n");
+            }
+        });
+        HttpRequest request = new HttpRequest("POST", url(), new HashMap<String, String>(), null, new BodyWriter() {
+            @Override
+            public void writeTo(OutputStream output) throws IOException {
+                output.write("abc".getBytes("UTF-8"));
+                output.write("def".getBytes("UTF-8"));
+            }
+        }, 1000, 1000, null);
+        readBody(transport.execute(request));
+        assertEquals("abcdef", received[0]);
+    }
+
+    // ----------------------------------------------------------------------
+    // Connection reuse
+    // ----------------------------------------------------------------------
+
+    @Test
+    public void reusesConnectionOnceBodyIsConsumed() throws Exception {
+        serve(new Script() {
+            @Override
+            public void serve(int connectionIndex, Socket socket) throws IOException {
+                for (int i = 0; i < 2; ++i) {
+                    readRequest(socket);
+                    write(socket, "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok");
+                }
+            }
+        });
+        assertEquals("ok", readBody(transport.execute(request("GET"))));
+        assertEquals("ok", readBody(transport.execute(request("POST"))));
+        assertEquals(1, connectionCount.get());
+    }
+
+    @Test
+    public void doesNotReuseConnectionMarkedClose() throws Exception {
+        serve(new Script() {
+            @Override
+            public void serve(int connectionIndex, Socket socket) throws IOException {
+                readRequest(socket);
+                write(socket, "HTTP/1.1 200 OK\r\nConnection: close\r\nContent-Length: 2\r\n\r\nok");
+            }
+        });
+        assertEquals("ok", readBody(transport.execute(request("GET"))));
+        assertEquals(0, transport.getIdleConnectionCount());
+        assertEquals("ok", readBody(transport.execute(request("GET"))));
+        assertEquals(2, connectionCount.get());
+    }
+
+    @Test
+    public void discardsIdleConnectionClosedByServer() throws Exception {
+        serve(new Script() {
+            @Override
+            public void serve(int connectionIndex, Socket socket) throws IOException {
+                readRequest(socket);
+                write(socket, "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok");
+                // Close the connection while it is idle in the pool.
+            }
+        });
+        assertEquals("ok", readBody(transport.execute(request("POST"))));
+        Thread.sleep(100);
+        assertEquals("ok", readBody(transport.execute(request("POST"))));
+        assertEquals(2, connectionCount.get());
+        assertEquals(2, requestLines.size());
+    }
+
+    // ----------------------------------------------------------------------
+    // Retry on stale connections
+    // ----------------------------------------------------------------------
+
+    @Test
+    public void retriesIdempotentRequestWhenConnectionClosedBeforeResponse() throws Exception {
+        serve(closeAfterSecondRequest());
+        assertEquals("ok", readBody(transport.execute(request("GET"))));
+        assertEquals("ok", readBody(transport.execute(request("GET"))));
+        assertEquals(2, connectionCount.get());
+        assertEquals(3, requestLines.size());
+    }
+
+    @Test
+    public void doesNotReplayNonIdempotentRequestOnceSent() throws Exception {
+        serve(closeAfterSecondRequest());
+        assertEquals("ok", readBody(transport.execute(request("GET"))));
+        try {
+            transport.execute(request("POST"));
+            fail("The request should have failed");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(1, connectionCount.get());
+        assertEquals(2, requestLines.size());
+    }
+
+    @Test
+    public void doesNotRetryOnTimeout() throws Exception {
+        serve(new Script() {
+            @Override
+            public void serve(int connectionIndex, Socket socket) throws IOException {
+                readRequest(socket);
+                write(socket, "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok");
+                readRequest(socket);
+                try {
+                    Thread.sleep(500); // never answer in time
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        });
+        assertEquals("ok", readBody(transport.execute(request("GET"))));
+        long startTime = System.currentTimeMillis();
+        try {
+            transport.execute(request("GET").withTimeouts(1000, 200));
+            fail("The request should have timed out");
+        } catch (SocketTimeoutException e) {
+            // expected
+        }
+        assertTrue(System.currentTimeMillis() - startTime < 400);
+        assertEquals(1, connectionCount.get());
+        assertEquals(2, requestLines.size());
+    }
+
+    // ----------------------------------------------------------------------
+    // Helpers
+    // ----------------------------------------------------------------------
+
+    /** Answer the first request, then close the connection after receiving the second one. */
+    private Script closeAfterSecondRequest() {
+        return new Script() {
+            @Override
+            public void serve(int connectionIndex, Socket socket) throws IOException {
+                readRequest(socket);
+                write(socket, "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok");
+                if (connectionIndex == 0) {
+                    readRequest(socket);
+                }
+            }
+        };
+    }
+
+    private void serve(final Script script) {
+        serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    Socket socket;
+                    try {
+                        socket = serverSocket.accept();
+                    } catch (IOException e) {
+                        return; // server closed
+                    }
+                    try {
+                        script.serve(connectionCount.getAndIncrement(), socket);
+                    } catch (IOException e) {
+                        // connection aborted by the client
+                    } finally {
+                        try {
+                            socket.close();
+                        } catch (IOException e) {
+                            // ignore
+                        }
+                    }
+                }
+            }
+        });
+        serverThread.start();
+    }
+
+    private URL url() throws IOException {
+        return new URL("http://127.0.0.1:" + serverSocket.getLocalPort() + "/1/test");
+    }
+
+    private HttpRequest request(String method) throws IOException {
+        byte[] body = method.equals("GET") ? null : "{}".getBytes("UTF-8");
+        return new HttpRequest(method, url(), new HashMap<String, String>(), body, 1000, 1000);
+    }
+
+    /**
+     * Read a request, and return its body.
+     */
+    private String readRequest(Socket socket) throws IOException {
+        InputStream input = socket.getInputStream();
+        String requestLine = readLine(input);
+        requestLines.add(requestLine);
+        long contentLength = 0;
+        boolean chunked = false;
+        String line;
+        while (!(line = readLine(input)).isEmpty()) {
+            String lowerCaseLine = line.toLowerCase();
+            if (lowerCaseLine.startsWith("content-length:")) {
+                contentLength = Long.parseLong(line.substring(15).trim());
+            } else if (lowerCaseLine.startsWith("transfer-encoding:") && lowerCaseLine.contains("chunked")) {
+                chunked = true;
+            }
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if (chunked) {
+            long chunkSize;
+            while ((chunkSize = Long.parseLong(readLine(input).trim(), 16)) != 0) {
+                for (long i = 0; i < chunkSize; ++i) {
+                    body.write(input.read());
+                }
+                readLine(input);
+            }
+            readLine(input);
+        } else {
+            for (long i = 0; i < contentLength; ++i) {
+                body.write(input.read());
+            }
+        }
+        return body.toString("UTF-8");
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = input.read()) != '\n') {
+            if (c == -1) {
+                throw new IOException("Connection closed");
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
+    private static void write(Socket socket, String response) throws IOException {
+        socket.getOutputStream().write(response.getBytes("UTF-8"));
+        socket.getOutputStream().flush();
+    }
+
+    private static String readBody(HttpResponse response) throws IOException {
+        InputStream body = response.getBody();
+        assertTrue(body != null);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        int count;
+        while ((count = body.read(buffer)) != -1) {
+            output.write(buffer, 0, count);
+        }
+        response.close();
+        return output.toString("UTF-8");
+    }
+}
@@ -0,0 +1,150 @@
+package com.snoopyo.search.saas;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Tests {@link SearchCacheKey}.
+ */
+public class SearchCacheKeyTest {
+    // ----------------------------------------------------------------------
+    // Equal keys
+    // ----------------------------------------------------------------------
+
+    @Test
+    public void ignoresOrderOfQueryParameters() {
+        Query query1 = new Query("phone").setHitsPerPage(10).setPage(2).set("custom", "x");
+        Query query2 = new Query().set("custom", "x").setPage(2).setQuery("phone").setHitsPerPage(10);
+        assertSameKey(new SearchCacheKey("index", query1, null), new SearchCacheKey("index", query2, null));
+    }
+
+    @Test
+    public void ignoresOrderOfParameterMap() {
+        Map<String, String> forward = new LinkedHashMap<>();
+        Map<String, String> backward = new LinkedHashMap<>();
+        for (int i = 0; i < 20; ++i) {
+            forward.put("p" + i, "v" + i);
+            backward.put("p" + (19 - i), "v" + (19 - i));
+        }
+        assertSameKey(new SearchCacheKey("index", forward, null), new SearchCacheKey("index", backward, null));
+        assertSameKey(new SearchCacheKey("index", forward, null), new SearchCacheKey("index", new TreeMap<>(backward), null));
+    }
+
+    @Test
+    public void ignoresOrderOfRequestOptions() {
+        RequestOptions options1 = new RequestOptions();
+        RequestOptions options2 = new RequestOptions();
+        for (int i = 0; i < 20; ++i) {
+            options1.setHeader("X-Header-" + i, "v" + i).setUrlParameter("param" + i, "v" + i);
+            options2.setUrlParameter("param" + (19 - i), "v" + (19 - i)).setHeader("X-Header-" + (19 - i), "v" + (19 - i));
+        }
+        Query query = new Query("phone");
+        assertSameKey(new SearchCacheKey("index", query, options1), new SearchCacheKey("index", query, options2));
+    }
+
+    @Test
+    public void treatsMissingAndEmptyRequestOptionsAlike() {
+        Query query = new Query("phone");
+        RequestOptions emptied = new RequestOptions().setHeader("X-Header", "v").setHeader("X-Header", null);
+        assertSameKey(new SearchCacheKey("index", query, null), new SearchCacheKey("index", query, new RequestOptions()));
+        assertSameKey(new SearchCacheKey("index", query, null), new SearchCacheKey("index", query, emptied));
+    }
+
+    @Test
+    public void ignoresLaterChangesToQueryAndOptions() {
+        Query query = new Query("phone");
+        RequestOptions options = new RequestOptions().setHeader("X-Header", "v");
+        SearchCacheKey key = new SearchCacheKey("index", query, options);
+        query.setPage(3);
+        options.setHeader("X-Header", "w");
+        assertSameKey(new SearchCacheKey("index", new Query("phone"), new RequestOptions().setHeader("X-Header", "v")), key);
+    }
+
+    // ----------------------------------------------------------------------
+    // Different keys
+    // ----------------------------------------------------------------------
+
+    @Test
+    public void distinguishesIndicesAndQueries() {
+        Query query = new Query("phone");
+        assertDifferentKeys(
+                new SearchCacheKey("index", query, null),
+                new SearchCacheKey("other", query, null),
+                new SearchCacheKey("index", new Query("phones"), null),
+                new SearchCacheKey("index", new Query("phone").setPage(1), null),
+                new SearchCacheKey("index", new Query("phone").set("page", ""), null)
+        );
+    }
+
+    @Test
+    public void distinguishesRequestOptions() {
+        Query query = new Query("phone");
+        assertDifferentKeys(
+                new SearchCacheKey("index", query, null),
+                new SearchCacheKey("index", query, new RequestOptions().setHeader("X-Forwarded-For", "1.2.3.4")),
+                new SearchCacheKey("index", query, new RequestOptions().setHeader("X-Forwarded-For", "5.6.7.8")),
+                new SearchCacheKey("index", query, new RequestOptions().setHeader("X-Other", "1.2.3.4")),
+                new SearchCacheKey("index", query, new RequestOptions().setUrlParameter("X-Forwarded-For", "1.2.3.4")),
+                new SearchCacheKey("index", query, new RequestOptions().setUrlParameter("userToken", "a")),
+                new SearchCacheKey("index", query, new RequestOptions().setUrlParameter("userToken", "b"))
+        );
+    }
+
+    @Test
+    public void distinguishesParametersFromRequestOptions() {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("name", "value");
+        assertDifferentKeys(
+                new SearchCacheKey("index", parameters, null),
+                new SearchCacheKey("index", new HashMap<String, String>(), new RequestOptions().setHeader("name", "value")),
+                new SearchCacheKey("index", new HashMap<String, String>(), new RequestOptions().setUrlParameter("name", "value"))
+        );
+    }
+
+    @Test
+    public void serializesUnambiguously() {
+        // Values containing separators must not collide with separate parameters.
+        Map<String, String> joined = new TreeMap<>();
+        joined.put("a", "1\",\"b\",\"2");
+        Map<String, String> split = new TreeMap<>();
+        split.put("a", "1");
+        split.put("b", "2");
+        assertDifferentKeys(
+                new SearchCacheKey("index", joined, null),
+                new SearchCacheKey("index", split, null),
+                new SearchCacheKey("index\",[\"a", split, null)
+        );
+    }
+
+    // ----------------------------------------------------------------------
+    // Helpers
+    // ----------------------------------------------------------------------
+
+    private static void assertSameKey(SearchCacheKey expected, SearchCacheKey actual) {
+        assertEquals(expected, actual);
+        assertEquals(expected.hashCode(), actual.hashCode());
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    private static void assertDifferentKeys(SearchCacheKey... keys) {
+        List<SearchCacheKey> list = Arrays.asList(keys);
+        for (int i = 0; i < list.size(); ++i) {
+            for (int j = 0; j < list.size(); ++j) {
+                if (i != j) {
+                    assertFalse("keys " + i + " and " + j + " should differ", list.get(i).equals(list.get(j)));
+                    assertNotEquals("keys " + i + " and " + j + " should serialize differently", list.get(i).toString(), list.get(j).toString());
+                }
+            }
+        }
+    }
+}
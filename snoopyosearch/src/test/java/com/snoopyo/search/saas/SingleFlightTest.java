@@ -0,0 +1,211 @@
+package com.snoopyo.search.saas;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link SingleFlight}.
+ */
+public class SingleFlightTest {
+    /** Time for a thread to start waiting on a flight (ms). */
+    private static final long JOIN_DELAY = 100;
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger callCount = new AtomicInteger();
+
+    @Test
+    public void coalescesConcurrentCalls() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 5; ++i) {
+            results.add(execute("key", 0, blockingCall(release, "result")));
+            Thread.sleep(i == 0 ? JOIN_DELAY : 0);
+        }
+        Thread.sleep(JOIN_DELAY);
+        release.countDown();
+        for (Future<String> result : results) {
+            assertEquals("result", result.get(1, TimeUnit.SECONDS));
+        }
+        assertEquals(1, callCount.get());
+    }
+
+    @Test
+    public void doesNotCoalesceDifferentKeysOrSequentialCalls() throws Exception {
+        assertEquals("a", execute("a", 0, immediateCall("a")).get(1, TimeUnit.SECONDS));
+        assertEquals("b", execute("b", 0, immediateCall("b")).get(1, TimeUnit.SECONDS));
+        assertEquals("a", execute("a", 0, immediateCall("a")).get(1, TimeUnit.SECONDS));
+        assertEquals(3, callCount.get());
+    }
+
+    @Test
+    public void propagatesErrorToFollowers() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        SingleFlight.Call<String> failingCall = new SingleFlight.Call<String>() {
+            @NonNull
+            @Override
+            public String call() throws SnoopyoException {
+                callCount.incrementAndGet();
+                await(release);
+                throw new SnoopyoException("boom");
+            }
+        };
+        Future<String> leader = execute("key", 0, failingCall);
+        Thread.sleep(JOIN_DELAY);
+        Future<String> follower = execute("key", 0, failingCall);
+        Thread.sleep(JOIN_DELAY);
+        release.countDown();
+        assertEquals("boom", getError(leader).getMessage());
+        assertEquals("boom", getError(follower).getMessage());
+        assertEquals(1, callCount.get());
+    }
+
+    @Test
+    public void followersGetErrorWhenLeaderThrowsUnchecked() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        SingleFlight.Call<String> crashingCall = new SingleFlight.Call<String>() {
+            @NonNull
+            @Override
+            public String call() throws SnoopyoException {
+                callCount.incrementAndGet();
+                await(release);
+                throw new AssertionError("crash");
+            }
+        };
+        Future<String> leader = execute("key", 0, crashingCall);
+        Thread.sleep(JOIN_DELAY);
+        Future<String> follower = execute("key", 0, crashingCall);
+        Thread.sleep(JOIN_DELAY);
+        release.countDown();
+        assertTrue(getError(leader) instanceof AssertionError);
+        assertTrue(getError(follower) instanceof SnoopyoException);
+        assertEquals(1, callCount.get());
+    }
+
+    @Test
+    public void followerRetriesWhenLeaderIsCancelled() throws Exception {
+        final CountDownLatch leaderCancelled = new CountDownLatch(1);
+        final CancellationToken leaderToken = new CancellationToken();
+        Future<String> leader = executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                FutureRequest.setCurrentCancellationToken(leaderToken);
+                try {
+                    return singleFlight.execute("key", 0, new SingleFlight.Call<String>() {
+                        @NonNull
+                        @Override
+                        public String call() throws SnoopyoException {
+                            callCount.incrementAndGet();
+                            await(leaderCancelled);
+                            throw new SnoopyoException("Request cancelled");
+                        }
+                    });
+                } finally {
+                    FutureRequest.setCurrentCancellationToken(null);
+                }
+            }
+        });
+        Thread.sleep(JOIN_DELAY);
+        Future<String> follower = execute("key", 0, immediateCall("retried"));
+        Thread.sleep(JOIN_DELAY);
+        leaderToken.cancel();
+        leaderCancelled.countDown();
+        assertEquals("Request cancelled", getError(leader).getMessage());
+        assertEquals("retried", follower.get(1, TimeUnit.SECONDS));
+        assertEquals(2, callCount.get());
+    }
+
+    @Test
+    public void followerWithMoreTimeRetriesWhenLeaderTimesOut() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final long leaderDeadline = System.currentTimeMillis() + 10000;
+        Future<String> leader = execute("key", leaderDeadline, new SingleFlight.Call<String>() {
+            @NonNull
+            @Override
+            public String call() throws SnoopyoException {
+                callCount.incrementAndGet();
+                await(release);
+                throw new SnoopyoTimeoutException("Request deadline exceeded");
+            }
+        });
+        Thread.sleep(JOIN_DELAY);
+        Future<String> patientFollower = execute("key", 0, immediateCall("retried"));
+        Future<String> hastyFollower = execute("key", leaderDeadline - 1, immediateCall("unexpected"));
+        Thread.sleep(JOIN_DELAY);
+        release.countDown();
+        assertTrue(getError(leader) instanceof SnoopyoTimeoutException);
+        assertEquals("retried", patientFollower.get(1, TimeUnit.SECONDS));
+        assertTrue(getError(hastyFollower) instanceof SnoopyoTimeoutException);
+        assertEquals(2, callCount.get());
+    }
+
+    // ----------------------------------------------------------------------
+    // Helpers
+    // ----------------------------------------------------------------------
+
+    private Future<String> execute(final String key, final long deadline, final SingleFlight.Call<String> call) {
+        return executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return singleFlight.execute(key, deadline, call);
+            }
+        });
+    }
+
+    private SingleFlight.Call<String> immediateCall(final String result) {
+        return new SingleFlight.Call<String>() {
+            @NonNull
+            @Override
+            public String call() {
+                callCount.incrementAndGet();
+                return result;
+            }
+        };
+    }
+
+    private SingleFlight.Call<String> blockingCall(final CountDownLatch release, final String result) {
+        return new SingleFlight.Call<String>() {
+            @NonNull
+            @Override
+            public String call() throws SnoopyoException {
+                callCount.incrementAndGet();
+                await(release);
+                return result;
+            }
+        };
+    }
+
+    private static void await(CountDownLatch latch) throws SnoopyoException {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new SnoopyoException("Request cancelled", e);
+        }
+    }
+
+    private static Throwable getError(Future<String> future) throws Exception {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            fail("The call should have failed");
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+}